@@ -0,0 +1,247 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.IoSession;
+import org.apache.mina.service.executor.AbstractOrderedHandlerExecutor;
+import org.apache.mina.service.executor.Event;
+import org.apache.mina.service.executor.EventVisitor;
+import org.apache.mina.service.executor.OrderedHandlerExecutor;
+import org.apache.mina.service.executor.OverflowPolicy;
+import org.apache.mina.service.executor.RingBufferHandlerExecutor;
+import org.apache.mina.service.executor.WaitStrategy;
+
+/**
+ * Compare the handoff of the events from the selector loops to the handler workers, between the queue based
+ * {@link OrderedHandlerExecutor} and the {@link RingBufferHandlerExecutor} : a few producer threads, standing for the
+ * selector loops, submit events at a given rate, and the throughput and the latency from the submission to the
+ * execution are measured.<br/>
+ * This is a manual benchmark, not run by the tests : the results depend on the machine (the number of cores above
+ * all), so they must be compared on the same machine. Run the main method with the submission rate and the number of
+ * events as optional arguments (5000000 events/s and 20000000 events by default).
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class HandlerExecutorBenchmark {
+
+    private static final int PRODUCER_COUNT = 2;
+
+    private static final int WORKER_COUNT = 2;
+
+    private static final int SESSION_COUNT = 64;
+
+    private static final int QUEUE_SIZE = 4096;
+
+    private final String executorType;
+
+    private final int eventsPerSecond;
+
+    private final int eventCount;
+
+    private AbstractOrderedHandlerExecutor executor;
+
+    public HandlerExecutorBenchmark(String executorType, int eventsPerSecond, int eventCount) {
+        this.executorType = executorType;
+        this.eventsPerSecond = eventsPerSecond;
+        this.eventCount = eventCount;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int eventsPerSecond = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+        int eventCount = args.length > 1 ? Integer.parseInt(args[1]) : 20000000;
+
+        for (String executorType : new String[] { "queue", "ring-blocking", "ring-yielding", "ring-busy-spin" }) {
+            new HandlerExecutorBenchmark(executorType, eventsPerSecond, eventCount).run();
+        }
+    }
+
+    private void run() throws InterruptedException {
+        executor = createExecutor();
+
+        try {
+            benchmark();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void benchmark() throws InterruptedException {
+
+        IoSession[] sessions = new IoSession[SESSION_COUNT];
+
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            sessions[i] = createSession(i);
+        }
+
+        long[] latencies = new long[eventCount];
+        CountDownLatch executed = new CountDownLatch(eventCount);
+        Thread[] producers = new Thread[PRODUCER_COUNT];
+        long start = System.nanoTime();
+
+        for (int i = 0; i < PRODUCER_COUNT; i++) {
+            producers[i] = new Producer(i, sessions, latencies, executed, start);
+            producers[i].start();
+        }
+
+        boolean completed = executed.await(2, TimeUnit.MINUTES);
+        long duration = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        System.out.println("-------------- " + executorType + " executor, " + eventCount + " events submitted at "
+                + eventsPerSecond + " events/s");
+        System.out.println("Executed events per second : " + (eventCount * 1000000000L / duration));
+        System.out.println("Latency (us) : p50 " + micros(latencies, 0.5) + ", p99 " + micros(latencies, 0.99)
+                + ", p99.9 " + micros(latencies, 0.999) + ", max " + (latencies[eventCount - 1] / 1000));
+        System.out.println("Spilled events : " + executor.getSpilledEventCount());
+
+        if (!completed) {
+            System.out.println("Still " + executed.getCount() + " events to execute after 2 minutes");
+        }
+    }
+
+    private AbstractOrderedHandlerExecutor createExecutor() {
+        // all the events are kept, the saturation shows up in the latency
+        if ("queue".equals(executorType)) {
+            return new OrderedHandlerExecutor(WORKER_COUNT, QUEUE_SIZE, OverflowPolicy.SPILL);
+        } else if ("ring-blocking".equals(executorType)) {
+            return new RingBufferHandlerExecutor(WORKER_COUNT, QUEUE_SIZE, WaitStrategy.BLOCKING, OverflowPolicy.SPILL);
+        } else if ("ring-yielding".equals(executorType)) {
+            return new RingBufferHandlerExecutor(WORKER_COUNT, QUEUE_SIZE, WaitStrategy.YIELDING, OverflowPolicy.SPILL);
+        } else {
+            return new RingBufferHandlerExecutor(WORKER_COUNT, QUEUE_SIZE, WaitStrategy.BUSY_SPIN,
+                    OverflowPolicy.SPILL);
+        }
+    }
+
+    private static long micros(long[] latencies, double percentile) {
+        return latencies[(int) ((latencies.length - 1) * percentile)] / 1000;
+    }
+
+    /**
+     * A session only able to give its id, the only thing the executors need
+     */
+    private static IoSession createSession(final long id) {
+        return (IoSession) Proxy.newProxyInstance(IoSession.class.getClassLoader(), new Class[] { IoSession.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getId".equals(method.getName())) {
+                            return id;
+                        } else if ("hashCode".equals(method.getName())) {
+                            return (int) id;
+                        } else if ("equals".equals(method.getName())) {
+                            return proxy == args[0];
+                        }
+
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * A thread submitting events at a fixed rate, like a selector loop
+     */
+    private class Producer extends Thread {
+        private final int index;
+
+        private final IoSession[] sessions;
+
+        private final long[] latencies;
+
+        private final CountDownLatch executed;
+
+        private final long start;
+
+        Producer(int index, IoSession[] sessions, long[] latencies, CountDownLatch executed, long start) {
+            this.index = index;
+            this.sessions = sessions;
+            this.latencies = latencies;
+            this.executed = executed;
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            double eventsPerNano = eventsPerSecond / 1e9 / PRODUCER_COUNT;
+            int submitted = 0;
+            int quota = eventCount / PRODUCER_COUNT;
+
+            while (submitted < quota) {
+                long due = Math.min(quota, (long) ((System.nanoTime() - start) * eventsPerNano));
+
+                while (submitted < due) {
+                    int slot = submitted * PRODUCER_COUNT + index;
+                    executor.execute(new LatencyEvent(sessions[slot % SESSION_COUNT], latencies, slot, executed));
+                    submitted++;
+                }
+            }
+        }
+    }
+
+    /**
+     * An event recording the time between its submission and its execution
+     */
+    private static class LatencyEvent implements Event {
+        private final IoSession session;
+
+        private final long[] latencies;
+
+        private final int slot;
+
+        private final CountDownLatch executed;
+
+        private final long submissionTime = System.nanoTime();
+
+        LatencyEvent(IoSession session, long[] latencies, int slot, CountDownLatch executed) {
+            this.session = session;
+            this.latencies = latencies;
+            this.slot = slot;
+            this.executed = executed;
+        }
+
+        @Override
+        public IoSession getSession() {
+            return session;
+        }
+
+        @Override
+        public void visit(EventVisitor visitor) {
+            latencies[slot] = System.nanoTime() - submissionTime;
+            executed.countDown();
+        }
+
+        @Override
+        public boolean isLifecycleEvent() {
+            return false;
+        }
+
+        @Override
+        public void discard() {
+            // nothing to give back
+        }
+    }
+}
@@ -86,6 +86,10 @@ public class Mina3TcpBenchmarkClient implements BenchmarkClient {
             public void messageSent(IoSession session, Object message) {
             }
 
+            @Override
+            public void sessionWritabilityChanged(IoSession session, boolean writable) {
+            }
+
             @Override
             public void serviceActivated(IoService service) {
             }
@@ -138,6 +138,10 @@ public class Mina3TcpBenchmarkServer implements BenchmarkServer {
                 CounterFilter.messageSent.getAndIncrement();
             }
 
+            @Override
+            public void sessionWritabilityChanged(IoSession session, boolean writable) {
+            }
+
             @Override
             public void serviceActivated(IoService service) {
             }
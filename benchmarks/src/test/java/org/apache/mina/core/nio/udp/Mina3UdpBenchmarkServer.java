@@ -144,6 +144,10 @@ public class Mina3UdpBenchmarkServer implements BenchmarkServer {
                 //System.out.println("Server message sent :" + message);
             }
 
+            @Override
+            public void sessionWritabilityChanged(IoSession session, boolean writable) {
+            }
+
             @Override
             public void serviceActivated(IoService service) {
             }
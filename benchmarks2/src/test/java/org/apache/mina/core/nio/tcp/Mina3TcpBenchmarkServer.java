@@ -135,6 +135,10 @@ public class Mina3TcpBenchmarkServer implements BenchmarkServer {
             public void messageSent(IoSession session, Object message) {
             }
 
+            @Override
+            public void sessionWritabilityChanged(IoSession session, boolean writable) {
+            }
+
             @Override
             public void serviceActivated(IoService service) {
             }
@@ -0,0 +1,61 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.api;
+
+import java.nio.channels.FileChannel;
+
+/**
+ * A region of a file to be sent through an {@link IoSession}. Writing a file region instead of a buffer lets the
+ * transport push the file content directly into the socket (using {@link FileChannel#transferTo(long, long,
+ * java.nio.channels.WritableByteChannel)}), without copying it in the user space.
+ * <p>
+ * The region keeps track of the transfer progress. The file channel is not closed by the session once the region is
+ * written.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface FileRegion {
+    /**
+     * @return the channel of the file to send
+     */
+    FileChannel getFileChannel();
+
+    /**
+     * @return the position in the file of the next byte to send
+     */
+    long getPosition();
+
+    /**
+     * @return the number of bytes already sent
+     */
+    long getWrittenBytes();
+
+    /**
+     * @return the number of bytes still to be sent
+     */
+    long getRemainingBytes();
+
+    /**
+     * Update the progress of the transfer
+     * 
+     * @param amount the number of bytes which have just been sent
+     */
+    void update(long amount);
+}
@@ -71,6 +71,16 @@ public interface IoHandler {
      */
     void messageSent(IoSession session, Object message);
 
+    /**
+     * Invoked when the writability of a session changed : a session is not writable anymore when too many bytes are
+     * pending in its write queue, and becomes writable again once the queue is drained.
+     * 
+     * @param session {@link IoSession} associated with the invocation
+     * @param writable <code>true</code> if the session became writable, <code>false</code> otherwise
+     * @see IoSession#isWritable()
+     */
+    void sessionWritabilityChanged(IoSession session, boolean writable);
+
     /**
      * Invoked when a new service is activated by an {@link IoService}.
      * 
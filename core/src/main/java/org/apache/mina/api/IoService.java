@@ -21,7 +21,9 @@ package org.apache.mina.api;
 
 import java.util.Map;
 
+import org.apache.mina.buffer.BufferAllocator;
 import org.apache.mina.service.executor.IoHandlerExecutor;
+import org.apache.mina.service.slowconsumer.SlowConsumerPolicy;
 
 /**
  * Base interface for all {@link IoServer}s and {@link IoClient}s that provide I/O service and manage {@link IoSession}
@@ -58,6 +60,20 @@ public interface IoService {
      */
     IoHandlerExecutor getIoHandlerExecutor();
 
+    /**
+     * Get the {@link BufferAllocator} used for allocating the direct buffers of the sessions of this service.
+     * 
+     * @return the buffer allocator of this service
+     */
+    BufferAllocator getBufferAllocator();
+
+    /**
+     * Get the policy applied to the sessions of this service which peer doesn't read the messages fast enough.
+     * 
+     * @return the slow consumer policy, or <code>null</code> if the write queues are not bounded
+     */
+    SlowConsumerPolicy getSlowConsumerPolicy();
+
     /**
      * Get the list of filters installed on this service
      * 
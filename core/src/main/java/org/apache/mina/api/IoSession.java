@@ -22,6 +22,7 @@ package org.apache.mina.api;
 import java.net.SocketAddress;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLContext;
 
@@ -211,6 +212,22 @@ public interface IoSession {
      */
     boolean isWriteSuspended();
 
+    /**
+     * Tells if the session accepts more writes without growing its write queue above the configured high watermark.
+     * A producer should stop writing when the session is not writable, and wait for the
+     * {@link IoHandler#sessionWritabilityChanged(IoSession, boolean)} event before writing again.
+     * 
+     * @return <code>true</code> if the write queue is below the high watermark
+     */
+    boolean isWritable();
+
+    /**
+     * The number of bytes written to this session and not yet sent to the peer.
+     * 
+     * @return the number of bytes pending in the write queue
+     */
+    long getWriteQueueBytes();
+
     /* BASIC STATS */
     /**
      * Gets the total number of bytes read for this session since it was created.
@@ -304,6 +321,20 @@ public interface IoSession {
      */
     <T> T setAttribute(AttributeKey<? extends T> key, T value);
 
+    /**
+     * Sets a user-defined attribute if there is no attribute with the specified key yet. The check and the update are
+     * atomic, so that concurrent callers all get the same value.
+     * 
+     * @param key the attribute's key, must not be <code>null</code>
+     * @param value the attribute's value, must not be <code>null</code>
+     * @return the current attribute's value if there is one, otherwise <code>null</code> and the value has been set
+     * @exception IllegalArgumentException if <code>key==null</code>, <code>value==null</code> or if
+     *            <code>value</code> is not an instance of type that is specified in by the given <code>key</code>
+     * 
+     * @see #setAttribute(AttributeKey, Object)
+     */
+    <T> T setAttributeIfAbsent(AttributeKey<? extends T> key, T value);
+
     /**
      * Returns an unmodifiable {@link Set} of all Keys of this {@link IoSession}. If this {@link IoSession} contains no
      * attributes an empty {@link Set} will be returned.
@@ -352,6 +383,52 @@ public interface IoSession {
      */
     IoFuture<Void> writeWithFuture(Object message);
 
+    /**
+     * Same as {@link IoSession#write(Object)}, with a priority : the pending messages are sent in priority order. The
+     * messages written by {@link IoSession#write(Object)} have the {@link WritePriority#NORMAL} priority.
+     * 
+     * @param message the message to be processed and written
+     * @param priority the priority of the message
+     */
+    void write(Object message, WritePriority priority);
+
+    /**
+     * Same as {@link IoSession#write(Object, WritePriority)}, but provide a {@link IoFuture} for tracking the
+     * completion of this write.
+     * 
+     * @param message the message to be processed and written
+     * @param priority the priority of the message
+     * @return the {@link IoFuture} for tracking this asynchronous operation
+     */
+    IoFuture<Void> writeWithFuture(Object message, WritePriority priority);
+
+    /**
+     * Same as {@link IoSession#writeWithFuture(Object)}, with a deadline : if the message transmission has not started
+     * when the timeout expires, the message is dropped and the future is failed with a
+     * {@link org.apache.mina.session.WriteTimeoutException}.
+     * 
+     * @param message the message to be processed and written
+     * @param timeout the maximum time before the message transmission starts
+     * @param unit the unit of the timeout
+     * @return the {@link IoFuture} for tracking this asynchronous operation
+     */
+    IoFuture<Void> writeWithFuture(Object message, long timeout, TimeUnit unit);
+
+    /**
+     * Flush the messages written to this session. The written messages may be staged by the session, so that many
+     * small messages can be pushed into the socket with a single system call : they are flushed once the
+     * {@link SelectorLoop} has processed all the ready sessions, or when this method is called. This method wont block
+     * !
+     */
+    void flush();
+
+    /**
+     * Same as {@link IoSession#write(Object)}, followed by a {@link IoSession#flush()}.
+     * 
+     * @param message the message to be processed and written
+     */
+    void writeAndFlush(Object message);
+
     /**
      * Internal method for enqueue write request after filter chain processing
      * 
@@ -0,0 +1,45 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.api;
+
+/**
+ * The priority of a message written to an {@link IoSession}. The pending messages are sent in priority order, so a
+ * control message can overtake a bulk transfer, but the lower priorities are still given a share of the writes, so
+ * they can't be starved. The messages of a given priority are sent in the order they have been written.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public enum WritePriority {
+    HIGH("high"), NORMAL("normal"), LOW("low");
+
+    private final String description;
+
+    WritePriority(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Returns the string representation of this priority.
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+}
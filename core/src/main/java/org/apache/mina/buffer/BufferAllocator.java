@@ -0,0 +1,62 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An allocator for the direct {@link ByteBuffer}s used by the I/O layer. The buffers obtained from
+ * {@link #allocate(int)} must be given back with {@link #release(ByteBuffer)} once they are not used anymore, so that
+ * an implementation can recycle them.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface BufferAllocator {
+    /**
+     * Get a direct buffer able to store at least <code>size</code> bytes. The returned buffer position is 0 and its
+     * limit is <code>size</code>. Its capacity may be bigger.
+     * 
+     * @param size the number of bytes the buffer must be able to store
+     * @return a direct buffer
+     */
+    ByteBuffer allocate(int size);
+
+    /**
+     * Give back a buffer obtained from {@link #allocate(int)}. The buffer must not be used by the caller anymore.
+     * 
+     * @param buffer the buffer to release
+     */
+    void release(ByteBuffer buffer);
+
+    /**
+     * @return the number of bytes currently held by the allocator and available for new allocations
+     */
+    long getPooledBytes();
+
+    /**
+     * @return the total number of bytes handed out by the allocator since it was created
+     */
+    long getBorrowedBytes();
+
+    /**
+     * @return the number of bytes handed out by the allocator and not released yet
+     */
+    long getOutstandingBytes();
+}
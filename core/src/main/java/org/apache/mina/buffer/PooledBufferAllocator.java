@@ -0,0 +1,547 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.buffer;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The default {@link BufferAllocator}. The buffers are sorted in size classes (powers of two, from 512 bytes to 64Kb by
+ * default), and carved from bigger direct buffers (slabs), so that we don't create one direct buffer (and its Cleaner)
+ * per allocation.<br/>
+ * The threads which called {@link #enableThreadCache()}, like the selector loops, first keep the buffers they release
+ * in a small per-thread cache, so that they can recycle them without any contention. When this cache is full, or for
+ * the other threads, the buffers are pushed back in the shared free list of their size class. The caches of the
+ * threads which are not running anymore are given back to the free lists before a new slab is carved.<br/>
+ * A free list holds a bounded number of bytes : the buffers released beyond are dropped, and the memory of a slab is
+ * reclaimed by the GC once all its buffers have been dropped.<br/>
+ * Requests bigger than the biggest size class are not pooled : a new direct buffer is allocated, and forgotten when
+ * released. Only the buffers carved by an allocator are taken back by its {@link #release(ByteBuffer)}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PooledBufferAllocator implements BufferAllocator {
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger(PooledBufferAllocator.class);
+
+    /** The default smallest size class : 512 bytes */
+    public static final int DEFAULT_MIN_SIZE = 512;
+
+    /** The default biggest size class : 64Kb */
+    public static final int DEFAULT_MAX_SIZE = 64 * 1024;
+
+    /** The default number of buffers per size class kept in each thread cache */
+    public static final int DEFAULT_THREAD_CACHE_SIZE = 32;
+
+    /** The default number of bytes held by the free list of each size class : 4Mb */
+    public static final int DEFAULT_MAX_FREE_BYTES = 4 * 1024 * 1024;
+
+    /** The number of buffers carved from each slab */
+    private static final int BUFFERS_PER_SLAB = 16;
+
+    /** Tells if the current thread keeps a cache of the buffers it releases */
+    private static final ThreadLocal<Boolean> CACHING_THREAD = new ThreadLocal<Boolean>();
+
+    /** The allocator shared by all the services not configured with a specific one */
+    private static final PooledBufferAllocator DEFAULT = new PooledBufferAllocator();
+
+    /** log2 of the smallest size class */
+    private final int minSizeShift;
+
+    /** The biggest pooled size */
+    private final int maxSize;
+
+    /** The size classes, from the smallest to the biggest */
+    private final SizeClass[] sizeClasses;
+
+    /** The maximum number of buffers per size class kept in each thread cache */
+    private final int threadCacheSize;
+
+    /** The maximum number of bytes held by the free list of each size class */
+    private final int maxFreeBytes;
+
+    /** The cache of the threads which must not keep buffers : always empty, and never filled */
+    private final ThreadCache noCache;
+
+    /** The per thread caches */
+    private final ThreadLocal<ThreadCache> threadCaches = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            if ((threadCacheSize == 0) || !Boolean.TRUE.equals(CACHING_THREAD.get())) {
+                return noCache;
+            }
+
+            ThreadCache cache = new ThreadCache(Thread.currentThread(), sizeClasses.length, threadCacheSize);
+            liveCaches.add(cache);
+
+            return cache;
+        }
+    };
+
+    /** The caches of the threads, reclaimed once their thread is not running anymore */
+    private final Queue<ThreadCache> liveCaches = new ConcurrentLinkedQueue<ThreadCache>();
+
+    /** The buffers carved from the slabs, and not dropped */
+    private final OwnedBuffers ownedBuffers = new OwnedBuffers();
+
+    /** The number of bytes allocated for the slabs */
+    private final AtomicLong slabBytes = new AtomicLong();
+
+    /** The number of bytes handed out since the creation of this allocator */
+    private final AtomicLong borrowedBytes = new AtomicLong();
+
+    /** The number of pooled bytes handed out and not yet released */
+    private final AtomicLong outstandingPooledBytes = new AtomicLong();
+
+    /** The number of unpooled bytes handed out and not yet released */
+    private final AtomicLong outstandingUnpooledBytes = new AtomicLong();
+
+    /**
+     * Create an allocator with the default size classes and thread cache size
+     */
+    public PooledBufferAllocator() {
+        this(DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_THREAD_CACHE_SIZE);
+    }
+
+    /**
+     * Create an allocator, which free lists hold up to {@link #DEFAULT_MAX_FREE_BYTES} bytes per size class
+     * 
+     * @param minSize the smallest size class, must be a power of two
+     * @param maxSize the biggest size class, must be a power of two
+     * @param threadCacheSize the number of buffers per size class kept in each thread cache (0 for no thread cache)
+     */
+    public PooledBufferAllocator(int minSize, int maxSize, int threadCacheSize) {
+        this(minSize, maxSize, threadCacheSize, DEFAULT_MAX_FREE_BYTES);
+    }
+
+    /**
+     * Create an allocator
+     * 
+     * @param minSize the smallest size class, must be a power of two
+     * @param maxSize the biggest size class, must be a power of two
+     * @param threadCacheSize the number of buffers per size class kept in each thread cache (0 for no thread cache)
+     * @param maxFreeBytes the number of bytes held by the free list of each size class, at least a slab is kept
+     */
+    public PooledBufferAllocator(int minSize, int maxSize, int threadCacheSize, int maxFreeBytes) {
+        if ((minSize <= 0) || (Integer.bitCount(minSize) != 1)) {
+            throw new IllegalArgumentException("minSize: " + minSize + " (expected: a positive power of two)");
+        }
+
+        if ((maxSize < minSize) || (Integer.bitCount(maxSize) != 1)) {
+            throw new IllegalArgumentException("maxSize: " + maxSize + " (expected: a power of two >= " + minSize
+                    + ")");
+        }
+
+        if (threadCacheSize < 0) {
+            throw new IllegalArgumentException("threadCacheSize: " + threadCacheSize + " (expected: 0+)");
+        }
+
+        if (maxFreeBytes < 0) {
+            throw new IllegalArgumentException("maxFreeBytes: " + maxFreeBytes + " (expected: 0+)");
+        }
+
+        this.minSizeShift = Integer.numberOfTrailingZeros(minSize);
+        this.maxSize = maxSize;
+        this.threadCacheSize = threadCacheSize;
+        this.maxFreeBytes = maxFreeBytes;
+
+        int count = Integer.numberOfTrailingZeros(maxSize) - minSizeShift + 1;
+        sizeClasses = new SizeClass[count];
+
+        for (int i = 0; i < count; i++) {
+            sizeClasses[i] = new SizeClass(minSize << i);
+        }
+
+        noCache = new ThreadCache(null, count, 0);
+    }
+
+    /**
+     * @return the allocator shared by all the services not configured with a specific one
+     */
+    public static PooledBufferAllocator getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Let the calling thread keep a cache of the buffers it releases, in all the allocators. To be called by the long
+     * lived threads allocating and releasing most of the buffers, like the selector loops, before they use an
+     * allocator. The other threads, like the handler workers, the virtual threads or the application threads writing
+     * messages, give their buffers back to the shared free lists.
+     */
+    public static void enableThreadCache() {
+        CACHING_THREAD.set(Boolean.TRUE);
+    }
+
+    /**
+     * Give the buffers cached by the threads which are not running anymore back to the free lists
+     */
+    private void reclaimThreadCaches() {
+        for (Iterator<ThreadCache> it = liveCaches.iterator(); it.hasNext();) {
+            ThreadCache cache = it.next();
+
+            if (!cache.isOwnerAlive()) {
+                // the thread termination makes its cache visible
+                it.remove();
+
+                for (int index = 0; index < sizeClasses.length; index++) {
+                    ByteBuffer buffer;
+
+                    while ((buffer = cache.poll(index)) != null) {
+                        sizeClasses[index].offer(buffer);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the index of the smallest size class able to store <code>size</code> bytes
+     */
+    private int sizeClassIndex(int size) {
+        if (size <= (1 << minSizeShift)) {
+            return 0;
+        }
+
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - minSizeShift;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer allocate(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size: " + size + " (expected: 0+)");
+        }
+
+        if (size > maxSize) {
+            // Too big to be pooled
+            borrowedBytes.addAndGet(size);
+            outstandingUnpooledBytes.addAndGet(size);
+
+            return ByteBuffer.allocateDirect(size);
+        }
+
+        int index = sizeClassIndex(size);
+        ByteBuffer buffer = threadCaches.get().poll(index);
+
+        if (buffer == null) {
+            buffer = sizeClasses[index].poll();
+        }
+
+        buffer.clear();
+        buffer.limit(size);
+
+        borrowedBytes.addAndGet(buffer.capacity());
+        outstandingPooledBytes.addAndGet(buffer.capacity());
+
+        return buffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void release(ByteBuffer buffer) {
+        if ((buffer == null) || !buffer.isDirect()) {
+            // Not one of ours
+            return;
+        }
+
+        int capacity = buffer.capacity();
+
+        if (capacity > maxSize) {
+            // Unpooled buffer, the GC will get rid of it
+            outstandingUnpooledBytes.addAndGet(-capacity);
+            return;
+        }
+
+        int index = sizeClassIndex(capacity);
+
+        if ((sizeClasses[index].size != capacity) || !ownedBuffers.contains(buffer)) {
+            LOG.warn("Trying to release a buffer of {} bytes which has not been allocated by this allocator",
+                    capacity);
+            return;
+        }
+
+        outstandingPooledBytes.addAndGet(-capacity);
+
+        if (!threadCaches.get().offer(index, buffer)) {
+            sizeClasses[index].offer(buffer);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getPooledBytes() {
+        return slabBytes.get() - outstandingPooledBytes.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBorrowedBytes() {
+        return borrowedBytes.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getOutstandingBytes() {
+        return outstandingPooledBytes.get() + outstandingUnpooledBytes.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "PooledBufferAllocator[pooled=" + getPooledBytes() + ", borrowed=" + getBorrowedBytes()
+                + ", outstanding=" + getOutstandingBytes() + "]";
+    }
+
+    /**
+     * The shared free list of the buffers of a given size.
+     */
+    private class SizeClass {
+        /** The size of the buffers of this class */
+        private final int size;
+
+        /** The free buffers, the most recently released first */
+        private final Deque<ByteBuffer> freeBuffers = new ConcurrentLinkedDeque<ByteBuffer>();
+
+        /** The number of buffers in the free list */
+        private final AtomicInteger freeCount = new AtomicInteger();
+
+        /** The maximum number of buffers in the free list */
+        private final int maxFreeCount;
+
+        SizeClass(int size) {
+            this.size = size;
+            this.maxFreeCount = Math.max(BUFFERS_PER_SLAB, maxFreeBytes / size);
+        }
+
+        /**
+         * Get a free buffer, carving a new slab if the free list is empty
+         */
+        ByteBuffer poll() {
+            ByteBuffer buffer = pollFree();
+
+            if (buffer != null) {
+                return buffer;
+            }
+
+            // the buffers may be held by the cache of a dead thread
+            reclaimThreadCaches();
+            buffer = pollFree();
+
+            if (buffer != null) {
+                return buffer;
+            }
+
+            ByteBuffer slab = ByteBuffer.allocateDirect(size * BUFFERS_PER_SLAB);
+            slabBytes.addAndGet(slab.capacity());
+
+            for (int i = 0; i < BUFFERS_PER_SLAB; i++) {
+                slab.limit((i + 1) * size);
+                slab.position(i * size);
+                ByteBuffer slice = slab.slice();
+                ownedBuffers.add(slice);
+
+                if (buffer == null) {
+                    buffer = slice;
+                } else {
+                    freeCount.incrementAndGet();
+                    freeBuffers.offerLast(slice);
+                }
+            }
+
+            return buffer;
+        }
+
+        private ByteBuffer pollFree() {
+            ByteBuffer buffer = freeBuffers.pollFirst();
+
+            if (buffer != null) {
+                freeCount.decrementAndGet();
+            }
+
+            return buffer;
+        }
+
+        void offer(ByteBuffer buffer) {
+            if (freeCount.incrementAndGet() > maxFreeCount) {
+                // enough free buffers : drop this one
+                freeCount.decrementAndGet();
+                ownedBuffers.remove(buffer);
+                slabBytes.addAndGet(-size);
+
+                return;
+            }
+
+            // a recycled buffer is more likely to be in the CPU caches than a never used one
+            freeBuffers.offerFirst(buffer);
+        }
+    }
+
+    /**
+     * The buffers carved from the slabs, so that the foreign buffers of the same size are not taken. The buffers are
+     * compared by identity, as their equals() compares their content.
+     */
+    private static class OwnedBuffers {
+        /** The buffers, by identity hash code */
+        private final ConcurrentHashMap<Integer, ByteBuffer[]> buffers = new ConcurrentHashMap<Integer, ByteBuffer[]>();
+
+        void add(ByteBuffer buffer) {
+            Integer key = System.identityHashCode(buffer);
+
+            for (;;) {
+                ByteBuffer[] current = buffers.get(key);
+
+                if (current == null) {
+                    if (buffers.putIfAbsent(key, new ByteBuffer[] { buffer }) == null) {
+                        return;
+                    }
+                } else {
+                    ByteBuffer[] added = new ByteBuffer[current.length + 1];
+                    System.arraycopy(current, 0, added, 0, current.length);
+                    added[current.length] = buffer;
+
+                    if (buffers.replace(key, current, added)) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        void remove(ByteBuffer buffer) {
+            Integer key = System.identityHashCode(buffer);
+
+            for (;;) {
+                ByteBuffer[] current = buffers.get(key);
+
+                if ((current == null) || (indexOf(current, buffer) < 0)) {
+                    return;
+                }
+
+                if (current.length == 1) {
+                    if (buffers.remove(key, current)) {
+                        return;
+                    }
+                } else {
+                    ByteBuffer[] removed = new ByteBuffer[current.length - 1];
+                    int index = indexOf(current, buffer);
+                    System.arraycopy(current, 0, removed, 0, index);
+                    System.arraycopy(current, index + 1, removed, index, removed.length - index);
+
+                    if (buffers.replace(key, current, removed)) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        boolean contains(ByteBuffer buffer) {
+            ByteBuffer[] current = buffers.get(System.identityHashCode(buffer));
+
+            return (current != null) && (indexOf(current, buffer) >= 0);
+        }
+
+        private static int indexOf(ByteBuffer[] array, ByteBuffer buffer) {
+            for (int i = 0; i < array.length; i++) {
+                if (array[i] == buffer) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+    }
+
+    /**
+     * A per thread stack of free buffers for each size class. Only accessed by its own thread, until it's reclaimed.
+     */
+    private static class ThreadCache {
+        /** The thread owning this cache, null for the shared empty cache */
+        private final WeakReference<Thread> owner;
+
+        private final ByteBuffer[][] buffers;
+
+        private final int[] counts;
+
+        ThreadCache(Thread owner, int sizeClassCount, int cacheSize) {
+            this.owner = new WeakReference<Thread>(owner);
+            buffers = new ByteBuffer[sizeClassCount][cacheSize];
+            counts = new int[sizeClassCount];
+        }
+
+        /**
+         * @return <code>true</code> if the owner thread is still running
+         */
+        boolean isOwnerAlive() {
+            Thread thread = owner.get();
+
+            return (thread != null) && thread.isAlive();
+        }
+
+        ByteBuffer poll(int index) {
+            int count = counts[index];
+
+            if (count == 0) {
+                return null;
+            }
+
+            count--;
+            ByteBuffer buffer = buffers[index][count];
+            buffers[index][count] = null;
+            counts[index] = count;
+
+            return buffer;
+        }
+
+        boolean offer(int index, ByteBuffer buffer) {
+            int count = counts[index];
+
+            if (count == buffers[index].length) {
+                return false;
+            }
+
+            buffers[index][count] = buffer;
+            counts[index] = count + 1;
+
+            return true;
+        }
+    }
+}
@@ -27,7 +27,11 @@ import org.apache.mina.api.IoHandler;
 import org.apache.mina.api.IoService;
 import org.apache.mina.api.IoSession;
 import org.apache.mina.api.IoSessionConfig;
+import org.apache.mina.buffer.BufferAllocator;
+import org.apache.mina.buffer.PooledBufferAllocator;
 import org.apache.mina.service.executor.IoHandlerExecutor;
+import org.apache.mina.service.slowconsumer.SlowConsumerPolicy;
+import org.apache.mina.util.Assert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,6 +63,12 @@ public abstract class AbstractIoService implements IoService {
     /** used for executing IoHandler event in another pool of thread (not in the low level I/O one) */
     protected final IoHandlerExecutor ioHandlerExecutor;
 
+    /** The allocator for the direct buffers of the sessions, shared with the other services by default */
+    private BufferAllocator bufferAllocator = PooledBufferAllocator.getDefault();
+
+    /** the policy applied to the slow consumer sessions */
+    private volatile SlowConsumerPolicy slowConsumerPolicy;
+
     /**
      * The Service states
      */
@@ -121,6 +131,42 @@ public abstract class AbstractIoService implements IoService {
         return ioHandlerExecutor;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BufferAllocator getBufferAllocator() {
+        return bufferAllocator;
+    }
+
+    /**
+     * Set the {@link BufferAllocator} used by the sessions of this service. Must be called before the service is
+     * bound/connected.
+     * 
+     * @param bufferAllocator the buffer allocator
+     */
+    public void setBufferAllocator(BufferAllocator bufferAllocator) {
+        Assert.assertNotNull(bufferAllocator, "bufferAllocator");
+        this.bufferAllocator = bufferAllocator;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    /**
+     * Set the policy applied to the sessions of this service which peer doesn't read the messages fast enough.
+     * 
+     * @param slowConsumerPolicy the slow consumer policy, <code>null</code> for unbounded write queues
+     */
+    public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
     /**
      * @return true if the IoService is active
      */
@@ -0,0 +1,129 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+import org.apache.mina.api.IoHandler;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.util.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class for the executors running the {@link IoHandler} events of a session in order and on the same thread :
+ * the sessions are spread over a fixed set of workers.
+ * <p>
+ * The events are submitted by the selector loops, so the submission never waits : when a worker is saturated, the
+ * event is handled according to the {@link OverflowPolicy} of the executor.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public abstract class AbstractOrderedHandlerExecutor implements IoHandlerExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractOrderedHandlerExecutor.class);
+
+    private final OrderedWorker[] workers;
+
+    private final OverflowPolicy overflowPolicy;
+
+    /* No qualifier */AbstractOrderedHandlerExecutor(OverflowPolicy overflowPolicy, OrderedWorker[] workers) {
+        Assert.assertNotNull(overflowPolicy, "overflowPolicy");
+        this.overflowPolicy = overflowPolicy;
+        this.workers = workers;
+
+        for (OrderedWorker worker : workers) {
+            worker.start();
+        }
+
+        LOG.debug("workers started");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Event event) {
+        int workerIndex = (int) (event.getSession().getId() % workers.length);
+        LOG.debug("executing event {} in worker {}", event, workerIndex);
+        workers[workerIndex].enqueue(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean executesInline(IoSession session) {
+        return false;
+    }
+
+    /**
+     * Stop the workers. The pending events are not executed.
+     */
+    public void shutdown() {
+        for (OrderedWorker worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * @return the policy applied to the events which don't fit in the workers
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @return the number of events dropped because their worker was saturated
+     */
+    public long getRejectedEventCount() {
+        long count = 0;
+
+        for (OrderedWorker worker : workers) {
+            count += worker.rejectedEventCount.get();
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the number of events stored in an overflow queue because their worker was saturated
+     */
+    public long getSpilledEventCount() {
+        long count = 0;
+
+        for (OrderedWorker worker : workers) {
+            count += worker.spilledEventCount.get();
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the number of times the reads of a session have been suspended because its worker was saturated
+     */
+    public long getSuspendedReadCount() {
+        long count = 0;
+
+        for (OrderedWorker worker : workers) {
+            count += worker.suspendedReadCount.get();
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.api.IoHandler;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.session.AttributeKey;
+import org.apache.mina.util.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An executor calling the {@link IoHandler} in the selector loop while it's cheap, and offloading it to another
+ * executor when it gets expensive. The cost of the handler calls is measured for each session, as a moving average :
+ * <ul>
+ * <li>a session which calls cost more than the budget is migrated to the offload executor</li>
+ * <li>an offloaded session which calls cost less than half the budget is migrated back to the selector loop, once all
+ * its offloaded events have been executed, so its events are never reordered</li>
+ * </ul>
+ * The offload executor must execute the events of a session in order, like the {@link OrderedHandlerExecutor}.
+ * <p>
+ * The events of a session must be submitted by a single thread, its selector loop : the NIO sessions hand their idle
+ * events, detected by any loop, to their own loop.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class AdaptiveHandlerExecutor implements IoHandlerExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveHandlerExecutor.class);
+
+    private static final HandlerCaller CALLER = new HandlerCaller();
+
+    /** the weight of the last call in the moving average of the cost, as a shift : 1/8 */
+    private static final int COST_SHIFT = 3;
+
+    private static final AttributeKey<SessionCost> SESSION_COST = new AttributeKey<SessionCost>(SessionCost.class,
+            "internal_sessionCost");
+
+    private final IoHandlerExecutor offloadExecutor;
+
+    private final long budget;
+
+    private final AtomicLong offloadCount = new AtomicLong();
+
+    private final AtomicLong inlineCount = new AtomicLong();
+
+    /**
+     * Create an adaptive executor.
+     * 
+     * @param offloadExecutor the executor for the sessions which handler calls are too expensive for the selector
+     *        loop, executing the events of a session in order
+     * @param budget the average cost of the handler calls of a session above which they are offloaded
+     * @param unit the unit of the budget
+     */
+    public AdaptiveHandlerExecutor(IoHandlerExecutor offloadExecutor, long budget, TimeUnit unit) {
+        Assert.assertNotNull(offloadExecutor, "offloadExecutor");
+        Assert.assertNotNull(unit, "unit");
+
+        if (budget <= 0) {
+            throw new IllegalArgumentException("budget must be positive : " + budget);
+        }
+
+        this.offloadExecutor = offloadExecutor;
+        this.budget = unit.toNanos(budget);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Event event) {
+        IoSession session = event.getSession();
+        SessionCost cost = getSessionCost(session);
+
+        if (cost.offloaded) {
+            if ((cost.averageCost.get() < budget / 2) && (cost.pendingCount.get() == 0)) {
+                LOG.debug("migrating session {} back to the selector loop", session);
+                cost.offloaded = false;
+                inlineCount.incrementAndGet();
+            } else {
+                cost.pendingCount.incrementAndGet();
+                offloadExecutor.execute(new OffloadedEvent(event, cost));
+
+                return;
+            }
+        }
+
+        cost.execute(event);
+
+        if (cost.averageCost.get() > budget) {
+            LOG.debug("offloading session {}", session);
+            cost.offloaded = true;
+            offloadCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean executesInline(IoSession session) {
+        SessionCost cost = session.getAttribute(SESSION_COST);
+
+        return (cost == null) || !cost.offloaded
+                || ((cost.averageCost.get() < budget / 2) && (cost.pendingCount.get() == 0));
+    }
+
+    /**
+     * @return the number of times a session has been migrated to the offload executor
+     */
+    public long getOffloadCount() {
+        return offloadCount.get();
+    }
+
+    /**
+     * @return the number of times a session has been migrated back to the selector loop
+     */
+    public long getInlineCount() {
+        return inlineCount.get();
+    }
+
+    private static SessionCost getSessionCost(IoSession session) {
+        SessionCost cost = session.getAttribute(SESSION_COST);
+
+        if (cost == null) {
+            SessionCost newCost = new SessionCost();
+            cost = session.setAttributeIfAbsent(SESSION_COST, newCost);
+
+            if (cost == null) {
+                cost = newCost;
+            }
+        }
+
+        return cost;
+    }
+
+    /**
+     * The cost of the handler calls of a session, and where they are executed
+     */
+    private static class SessionCost {
+        /** the moving average of the handler calls cost, in nanoseconds */
+        private final AtomicLong averageCost = new AtomicLong();
+
+        /** <code>true</code> if the events are offloaded, only modified by the selector loop */
+        private volatile boolean offloaded;
+
+        /** the number of offloaded events not executed yet */
+        private final AtomicInteger pendingCount = new AtomicInteger();
+
+        /**
+         * Execute an event, and account its cost. The events of a session are never executed concurrently.
+         */
+        void execute(Event event) {
+            long start = System.nanoTime();
+            event.visit(CALLER);
+            long callCost = System.nanoTime() - start;
+
+            for (;;) {
+                long current = averageCost.get();
+
+                if (averageCost.compareAndSet(current, current + ((callCost - current) >> COST_SHIFT))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * An event submitted to the offload executor
+     */
+    private static class OffloadedEvent implements Event {
+        private final Event event;
+
+        private final SessionCost cost;
+
+        OffloadedEvent(Event event, SessionCost cost) {
+            this.event = event;
+            this.cost = cost;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public IoSession getSession() {
+            return event.getSession();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isLifecycleEvent() {
+            return event.isLifecycleEvent();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void discard() {
+            try {
+                event.discard();
+            } finally {
+                cost.pendingCount.decrementAndGet();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void visit(EventVisitor visitor) {
+            try {
+                cost.execute(event);
+            } finally {
+                cost.pendingCount.decrementAndGet();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return event.toString();
+        }
+    }
+}
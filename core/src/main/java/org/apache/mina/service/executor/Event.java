@@ -45,4 +45,17 @@ public interface Event {
      * @param visitor the vistor to call
      */
     void visit(EventVisitor visitor);
+
+    /**
+     * Tells if this event opens or closes the session. Such an event must be executed even by a saturated executor,
+     * dropping the other events.
+     * 
+     * @return <code>true</code> for the session opening and closing events
+     */
+    boolean isLifecycleEvent();
+
+    /**
+     * Called instead of {@link #visit(EventVisitor)} when the event is dropped, to give back the resources it holds.
+     */
+    void discard();
 }
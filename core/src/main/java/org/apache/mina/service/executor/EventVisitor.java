@@ -35,4 +35,6 @@ public interface EventVisitor {
     void visit(SentEvent event);
 
     void visit(IdleEvent event);
+
+    void visit(WritabilityEvent event);
 }
@@ -65,10 +65,14 @@ class HandlerCaller implements EventVisitor {
     @Override
     public void visit(ReceiveEvent event) {
         IoSession session = event.getSession();
+        event.lend();
+
         try {
             session.getService().getIoHandler().messageReceived(session, event.getMessage());
         } catch (Exception e) {
             session.getService().getIoHandler().exceptionCaught(session, e);
+        } finally {
+            event.release();
         }
     }
 
@@ -81,4 +85,14 @@ class HandlerCaller implements EventVisitor {
             session.getService().getIoHandler().exceptionCaught(session, e);
         }
     }
+
+    @Override
+    public void visit(WritabilityEvent event) {
+        IoSession session = event.getSession();
+        try {
+            session.getService().getIoHandler().sessionWritabilityChanged(session, event.isWritable());
+        } catch (Exception e) {
+            session.getService().getIoHandler().exceptionCaught(session, e);
+        }
+    }
 }
\ No newline at end of file
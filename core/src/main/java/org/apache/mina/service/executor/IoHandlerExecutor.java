@@ -20,6 +20,7 @@
 package org.apache.mina.service.executor;
 
 import org.apache.mina.api.IoHandler;
+import org.apache.mina.api.IoSession;
 
 /**
  * A class in charge of executing {@link IoHandler} related events.
@@ -34,4 +35,14 @@ public interface IoHandlerExecutor {
      * @param event the event to execute
      */
     void execute(Event event);
+
+    /**
+     * Tells if the next event of a session will be executed at once by the calling thread, before
+     * {@link #execute(Event)} returns. If so, the event can reference data which will be reused once the event has been
+     * submitted.
+     * 
+     * @param session the session
+     * @return <code>true</code> if the next event of the session is executed inline
+     */
+    boolean executesInline(IoSession session);
 }
@@ -45,4 +45,20 @@ public class OpenEvent implements Event {
     public void visit(EventVisitor visitor) {
         visitor.visit(this);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isLifecycleEvent() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void discard() {
+        // nothing to give back
+    }
 }
@@ -29,64 +29,69 @@ import org.slf4j.LoggerFactory;
 /**
  * Use this executor if you want the {@link IoHandler} events of a session to be executed in order and on the same
  * thread. In your {@link IoHandler} code you don't need to care about session level concurrency.
+ * <p>
+ * The events are submitted by the selector loops, so the submission never waits : when the queue of a worker is full,
+ * the event is handled according to the {@link OverflowPolicy} of the executor.
  * 
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
-public final class OrderedHandlerExecutor implements IoHandlerExecutor {
+public final class OrderedHandlerExecutor extends AbstractOrderedHandlerExecutor {
 
     private static final Logger LOG = LoggerFactory.getLogger(OrderedHandlerExecutor.class);
 
-    private Worker[] workers;
-
     /**
-     * Create an {@link OrderedHandlerExecutor} with a given number of thread and a given queue size.
+     * Create an {@link OrderedHandlerExecutor} with a given number of thread and a given queue size. The reads of a
+     * session are suspended when the queue of its worker is full.
      * 
      * @param workerThreadCount the worker thread count
      * @param queueSize the size of the queue for each worker thread
      */
     public OrderedHandlerExecutor(int workerThreadCount, int queueSize) {
-        LOG.debug("creating OrderedHandlerExecutor workerThreadCount = {} queueSize = {}", workerThreadCount, queueSize);
-        workers = new Worker[workerThreadCount];
-
-        for (int i = 0; i < workerThreadCount; i++) {
-            workers[i] = new Worker(i, queueSize);
-        }
-        for (int i = 0; i < workerThreadCount; i++) {
-            workers[i].start();
-        }
-        LOG.debug("workers started");
+        this(workerThreadCount, queueSize, OverflowPolicy.SUSPEND_READ);
     }
 
     /**
-     * {@inheritDoc}
+     * Create an {@link OrderedHandlerExecutor} with a given number of thread, a given queue size and a given policy
+     * for the events which don't fit in the queues.
+     * 
+     * @param workerThreadCount the worker thread count
+     * @param queueSize the size of the queue for each worker thread
+     * @param overflowPolicy what to do with an event when the queue of its worker is full
      */
-    @Override
-    public void execute(Event event) {
-        try {
-            int workerIndex = (int) (event.getSession().getId() % workers.length);
-            LOG.debug("executing event {} in worker {}", event, workerIndex);
-            workers[workerIndex].enqueue(event);
-        } catch (InterruptedException e) {
-            // interrupt the world
-            return;
+    public OrderedHandlerExecutor(int workerThreadCount, int queueSize, OverflowPolicy overflowPolicy) {
+        super(overflowPolicy, createWorkers(workerThreadCount, queueSize, overflowPolicy));
+    }
+
+    private static OrderedWorker[] createWorkers(int workerThreadCount, int queueSize, OverflowPolicy overflowPolicy) {
+        LOG.debug("creating OrderedHandlerExecutor workerThreadCount = {} queueSize = {} overflowPolicy = {}",
+                new Object[] { workerThreadCount, queueSize, overflowPolicy });
+        OrderedWorker[] workers = new OrderedWorker[workerThreadCount];
+
+        for (int i = 0; i < workerThreadCount; i++) {
+            workers[i] = new Worker(i, queueSize, overflowPolicy);
         }
+
+        return workers;
     }
 
     /** thread in charge of gathering events from a queue and running them */
-    private static class Worker extends Thread {
-
-        private static HandlerCaller caller = new HandlerCaller();
+    private static class Worker extends OrderedWorker {
 
         private final BlockingQueue<Event> queue;
 
-        public Worker(int index, int queueSize) {
-            super("IoHandlerWorker " + index);
+        public Worker(int index, int queueSize, OverflowPolicy overflowPolicy) {
+            super("IoHandlerWorker " + index, overflowPolicy);
             queue = new LinkedBlockingQueue<Event>(queueSize);
         }
 
-        public void enqueue(Event event) throws InterruptedException {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected boolean offer(Event event) {
             LOG.debug("enqueing event : {}", event);
-            queue.put(event);
+
+            return queue.offer(event);
         }
 
         /**
@@ -99,7 +104,8 @@ public final class OrderedHandlerExecutor implements IoHandlerExecutor {
 
                     Event e = queue.take();
                     LOG.debug("dequeing event {}", e);
-                    e.visit(caller);
+                    e.visit(CALLER);
+                    refill();
 
                 } catch (InterruptedException e) {
                     // end this thread
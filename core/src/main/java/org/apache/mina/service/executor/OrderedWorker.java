@@ -0,0 +1,175 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.api.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A thread executing in order the events of the sessions it's in charge of, pushed in a bounded structure by the
+ * selector loops. The submission never waits : the events which don't fit are handled according to the
+ * {@link OverflowPolicy}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+abstract class OrderedWorker extends Thread {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OrderedWorker.class);
+
+    /** the visitor calling the handler */
+    protected static final HandlerCaller CALLER = new HandlerCaller();
+
+    private final OverflowPolicy overflowPolicy;
+
+    /** the events which didn't fit, guarded by itself */
+    private final Queue<Event> overflow = new ArrayDeque<Event>();
+
+    /** <code>true</code> while the overflow queue is not empty : the events must not overtake the spilled ones */
+    private volatile boolean overflowing;
+
+    /** the sessions which reads have been suspended by this worker, guarded by the overflow queue */
+    private final List<IoSession> suspendedSessions = new ArrayList<IoSession>();
+
+    /* No qualifier */final AtomicLong rejectedEventCount = new AtomicLong();
+
+    /* No qualifier */final AtomicLong spilledEventCount = new AtomicLong();
+
+    /* No qualifier */final AtomicLong suspendedReadCount = new AtomicLong();
+
+    protected OrderedWorker(String name, OverflowPolicy overflowPolicy) {
+        super(name);
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Push an event in the bounded structure of the worker, if there is room for it.
+     * 
+     * @param event the event to push
+     * @return <code>true</code> if the event has been pushed
+     */
+    protected abstract boolean offer(Event event);
+
+    /**
+     * Push an event, without ever waiting. Called by the selector loops.
+     * 
+     * @param event the event to execute
+     */
+    public void enqueue(Event event) {
+        if (!overflowing && offer(event)) {
+            return;
+        }
+
+        synchronized (overflow) {
+            // the worker may have drained the overflow queue meanwhile
+            if (overflow.isEmpty() && offer(event)) {
+                return;
+            }
+
+            if ((overflowPolicy == OverflowPolicy.REJECT) && !event.isLifecycleEvent()) {
+                reject(event);
+
+                return;
+            }
+
+            overflow.add(event);
+            overflowing = true;
+            spilledEventCount.incrementAndGet();
+
+            if (overflowPolicy == OverflowPolicy.SUSPEND_READ) {
+                suspendRead(event.getSession());
+            }
+
+            // the worker may have emptied its queue and checked the overflow queue before it was flagged : it would
+            // wait forever, so the spilled events are moved to the queue now if there is room
+            drainOverflow();
+        }
+    }
+
+    /**
+     * Drop an event, giving back the resources it holds
+     */
+    private void reject(Event event) {
+        LOG.debug("worker saturated, rejecting event : {}", event);
+        rejectedEventCount.incrementAndGet();
+
+        event.discard();
+    }
+
+    /**
+     * Suspend the reads of a session until the overflow queue is drained, unless they were suspended already. Called
+     * with the overflow queue lock held, as the reads are resumed with it.
+     */
+    private void suspendRead(IoSession session) {
+        if (suspendedSessions.contains(session) || session.isReadSuspended()) {
+            return;
+        }
+
+        LOG.debug("worker saturated, suspending the reads of session {}", session);
+        suspendedSessions.add(session);
+        suspendedReadCount.incrementAndGet();
+        session.suspendRead();
+    }
+
+    /**
+     * Move the spilled events back as room is made, and resume the suspended reads once they all fit. To be called
+     * by the worker after having executed some events.
+     */
+    protected void refill() {
+        if (!overflowing) {
+            return;
+        }
+
+        synchronized (overflow) {
+            drainOverflow();
+        }
+    }
+
+    /**
+     * Move the spilled events to the bounded structure while there is room, and resume the suspended reads if they
+     * all fit. Called with the overflow queue lock held.
+     */
+    private void drainOverflow() {
+        Event event;
+
+        while (((event = overflow.peek()) != null) && offer(event)) {
+            overflow.poll();
+        }
+
+        if (!overflow.isEmpty()) {
+            return;
+        }
+
+        overflowing = false;
+
+        for (IoSession session : suspendedSessions) {
+            LOG.debug("worker drained, resuming the reads of session {}", session);
+            session.resumeRead();
+        }
+
+        suspendedSessions.clear();
+    }
+}
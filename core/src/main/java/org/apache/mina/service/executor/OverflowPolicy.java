@@ -0,0 +1,59 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+/**
+ * What an {@link OrderedHandlerExecutor} does with an event when the queue of the worker in charge of its session is
+ * full. The events are submitted by the selector loops, which must never wait for a worker : the event is handled at
+ * once whatever the policy.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public enum OverflowPolicy {
+    /**
+     * The event is stored in the unbounded overflow queue of the worker, and the reads of its session are suspended
+     * until the worker has drained its overflow queue, so the peer is slowed down by the TCP flow control.
+     */
+    SUSPEND_READ("suspend read"),
+
+    /**
+     * The event is dropped and counted. The session opening and closing events are never dropped : they are spilled.
+     */
+    REJECT("reject"),
+
+    /**
+     * The event is stored in the unbounded overflow queue of the worker.
+     */
+    SPILL("spill");
+
+    private final String description;
+
+    OverflowPolicy(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Returns the string representation of this policy.
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -19,7 +19,10 @@
  */
 package org.apache.mina.service.executor;
 
+import java.nio.ByteBuffer;
+
 import org.apache.mina.api.IoSession;
+import org.apache.mina.buffer.BufferAllocator;
 
 /**
  * A {@link IoSession} received a message {@link Event}.
@@ -27,13 +30,34 @@ import org.apache.mina.api.IoSession;
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 public class ReceiveEvent implements Event {
+    /** The pooled buffer lent to the handler running in the current thread */
+    private static final ThreadLocal<ByteBuffer> LENT_BUFFER = new ThreadLocal<ByteBuffer>();
+
     private final IoSession session;
 
     private final Object message;
 
+    /** the allocator the message buffer is given back to once handled, <code>null</code> if not pooled */
+    private final BufferAllocator allocator;
+
     public ReceiveEvent(final IoSession session, final Object message) {
         this.session = session;
         this.message = message;
+        this.allocator = null;
+    }
+
+    /**
+     * Create an event for a pooled buffer : the ownership of the buffer is transferred to the event, which gives it
+     * back to the allocator once the message has been handled.
+     * 
+     * @param session the session which received the message
+     * @param message the received buffer
+     * @param allocator the allocator the buffer was borrowed from
+     */
+    public ReceiveEvent(final IoSession session, final ByteBuffer message, final BufferAllocator allocator) {
+        this.session = session;
+        this.message = message;
+        this.allocator = allocator;
     }
 
     /**
@@ -48,8 +72,59 @@ public class ReceiveEvent implements Event {
         return message;
     }
 
+    /**
+     * Lend the message buffer to the handler about to be called by the current thread, if it's a pooled buffer, so
+     * that it's copied if the handler writes it. To be called before the message is handled.
+     */
+    public void lend() {
+        if (allocator != null) {
+            LENT_BUFFER.set((ByteBuffer) message);
+        }
+    }
+
+    /**
+     * Give back the message buffer to its allocator, if it's a pooled buffer. To be called once the message has been
+     * handled : the buffer must not be used anymore.
+     */
+    public void release() {
+        if (allocator != null) {
+            if (LENT_BUFFER.get() == message) {
+                LENT_BUFFER.remove();
+            }
+
+            allocator.release((ByteBuffer) message);
+        }
+    }
+
+    /**
+     * Tells if a message is a pooled buffer lent to the handler running in the current thread : it's given back to its
+     * allocator once the handler returns, so it has to be copied to be kept longer (e.g. when it's written).
+     * 
+     * @param message the message
+     * @return <code>true</code> if the message is the lent buffer
+     */
+    public static boolean isLent(Object message) {
+        return (message != null) && (LENT_BUFFER.get() == message);
+    }
+
     @Override
     public void visit(EventVisitor visitor) {
         visitor.visit(this);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isLifecycleEvent() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void discard() {
+        release();
+    }
 }
@@ -0,0 +1,228 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.mina.api.IoHandler;
+import org.apache.mina.util.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An executor running the {@link IoHandler} events of a session in order and on the same thread, like the
+ * {@link OrderedHandlerExecutor}, but handing the events to the workers through preallocated ring buffers instead of
+ * linked queues : the submission is lock free and allocates nothing, and a worker executes all the events available
+ * in a batch.
+ * <p>
+ * Each worker has its own ring buffer, written by all the selector loops. When a ring buffer is full, the event is
+ * handled according to the {@link OverflowPolicy} of the executor. The way the idle workers wait for the events is
+ * given by a {@link WaitStrategy}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public final class RingBufferHandlerExecutor extends AbstractOrderedHandlerExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RingBufferHandlerExecutor.class);
+
+    /** the number of idle loops a yielding worker spins before yielding */
+    private static final int SPIN_TRIES = 100;
+
+    /**
+     * Create a {@link RingBufferHandlerExecutor} with blocking workers, suspending the reads of a session when the
+     * ring buffer of its worker is full.
+     * 
+     * @param workerThreadCount the worker thread count
+     * @param bufferSize the number of slots of each worker ring buffer, rounded up to a power of two
+     */
+    public RingBufferHandlerExecutor(int workerThreadCount, int bufferSize) {
+        this(workerThreadCount, bufferSize, WaitStrategy.BLOCKING, OverflowPolicy.SUSPEND_READ);
+    }
+
+    /**
+     * Create a {@link RingBufferHandlerExecutor}
+     * 
+     * @param workerThreadCount the worker thread count
+     * @param bufferSize the number of slots of each worker ring buffer, rounded up to a power of two
+     * @param waitStrategy how the idle workers wait for the events
+     * @param overflowPolicy what to do with an event when the ring buffer of its worker is full
+     */
+    public RingBufferHandlerExecutor(int workerThreadCount, int bufferSize, WaitStrategy waitStrategy,
+            OverflowPolicy overflowPolicy) {
+        super(overflowPolicy, createWorkers(workerThreadCount, bufferSize, waitStrategy, overflowPolicy));
+    }
+
+    private static OrderedWorker[] createWorkers(int workerThreadCount, int bufferSize, WaitStrategy waitStrategy,
+            OverflowPolicy overflowPolicy) {
+        Assert.assertNotNull(waitStrategy, "waitStrategy");
+
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive : " + bufferSize);
+        }
+
+        int slotCount = Integer.highestOneBit(bufferSize);
+
+        if (slotCount < bufferSize) {
+            slotCount <<= 1;
+        }
+
+        LOG.debug("creating RingBufferHandlerExecutor workerThreadCount = {} bufferSize = {} waitStrategy = {}",
+                new Object[] { workerThreadCount, slotCount, waitStrategy });
+        OrderedWorker[] workers = new OrderedWorker[workerThreadCount];
+
+        for (int i = 0; i < workerThreadCount; i++) {
+            workers[i] = new Worker(i, slotCount, waitStrategy, overflowPolicy);
+        }
+
+        return workers;
+    }
+
+    /**
+     * A thread executing the events of a ring buffer. The producers claim a sequence number, store the event in the
+     * slot of the sequence, then publish the sequence in the slot so the worker knows the event is readable.
+     */
+    private static class Worker extends OrderedWorker {
+
+        private final Event[] slots;
+
+        /** the sequence published in each slot, -1 when the slot has never been published */
+        private final AtomicLongArray published;
+
+        private final int mask;
+
+        private final WaitStrategy waitStrategy;
+
+        /** the last sequence claimed by a producer */
+        private final AtomicLong claimed = new AtomicLong(-1L);
+
+        /** the last sequence executed by the worker, so the slots up to it can be reused */
+        private final AtomicLong consumed = new AtomicLong(-1L);
+
+        /** <code>true</code> when a blocking worker is parked, or about to be */
+        private volatile boolean parked;
+
+        public Worker(int index, int slotCount, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy) {
+            super("IoHandlerRingWorker " + index, overflowPolicy);
+            slots = new Event[slotCount];
+            published = new AtomicLongArray(slotCount);
+            mask = slotCount - 1;
+            this.waitStrategy = waitStrategy;
+
+            for (int i = 0; i < slotCount; i++) {
+                published.set(i, -1L);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected boolean offer(Event event) {
+            long sequence;
+
+            do {
+                sequence = claimed.get() + 1;
+
+                if (sequence - slots.length > consumed.get()) {
+                    // the slot is still used by an event not executed yet
+                    return false;
+                }
+            } while (!claimed.compareAndSet(sequence - 1, sequence));
+
+            int slot = (int) sequence & mask;
+            slots[slot] = event;
+            published.set(slot, sequence);
+
+            if (parked) {
+                LockSupport.unpark(this);
+            }
+
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            long next = 0L;
+            int idleCount = 0;
+
+            while (!isInterrupted()) {
+                if (published.get((int) next & mask) != next) {
+                    waitForEvent(next, idleCount++);
+                    continue;
+                }
+
+                idleCount = 0;
+
+                // execute all the events published so far in one batch
+                long last = next;
+
+                while (published.get((int) (last + 1) & mask) == last + 1) {
+                    last++;
+                }
+
+                for (long sequence = next; sequence <= last; sequence++) {
+                    int slot = (int) sequence & mask;
+                    Event event = slots[slot];
+                    slots[slot] = null;
+                    event.visit(CALLER);
+                }
+
+                // a full write : a producer failing to offer must see the room made before the worker checks its
+                // overflow queue
+                consumed.set(last);
+                next = last + 1;
+                refill();
+            }
+        }
+
+        /**
+         * Wait for the given sequence to be published, according to the wait strategy.
+         */
+        private void waitForEvent(long sequence, int idleCount) {
+            switch (waitStrategy) {
+            case BUSY_SPIN:
+                break;
+            case YIELDING:
+                if (idleCount >= SPIN_TRIES) {
+                    Thread.yield();
+                }
+
+                break;
+            case BLOCKING:
+                parked = true;
+
+                // check again, a producer may have published before seeing the flag
+                if (published.get((int) sequence & mask) != sequence) {
+                    LockSupport.park(this);
+                }
+
+                parked = false;
+                break;
+            default:
+                throw new IllegalStateException("not implemented wait strategy : " + waitStrategy);
+            }
+        }
+    }
+}
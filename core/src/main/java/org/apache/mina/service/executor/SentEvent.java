@@ -52,4 +52,20 @@ public class SentEvent implements Event {
     public void visit(EventVisitor visitor) {
         visitor.visit(this);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isLifecycleEvent() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void discard() {
+        // nothing to give back
+    }
 }
@@ -0,0 +1,190 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.mina.api.IoHandler;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.util.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An executor running the {@link IoHandler} events of a session in order, without pinning the session to a thread :
+ * each session has its own queue of events, which is scheduled on any thread of a shared pool only while it has
+ * pending events. A busy session can't starve the sessions which would share its thread with a fixed assignment, and
+ * the idle threads of the pool pick up the work.
+ * <p>
+ * A session queue executes a bounded number of events per run, then is rescheduled behind the other sessions, so the
+ * threads are shared fairly between the sessions. A {@link ForkJoinPool} in asynchronous mode is a good fit, as its
+ * work stealing spreads the rescheduled queues over the idle threads.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SessionOrderedHandlerExecutor implements IoHandlerExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionOrderedHandlerExecutor.class);
+
+    /** the default number of events executed in a row for a session */
+    private static final int DEFAULT_EVENTS_PER_RUN = 16;
+
+    private static final HandlerCaller CALLER = new HandlerCaller();
+
+    private final Executor executor;
+
+    private final int eventsPerRun;
+
+    /** the queues of the sessions which have received events */
+    private final ConcurrentMap<IoSession, SessionQueue> sessionQueues = new ConcurrentHashMap<IoSession, SessionQueue>();
+
+    /**
+     * Create an executor running the events on a new {@link ForkJoinPool} with as many threads as processors.
+     */
+    public SessionOrderedHandlerExecutor() {
+        this(new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true));
+    }
+
+    /**
+     * Create an executor running the events on the given pool.
+     * 
+     * @param executor the pool running the session queues
+     */
+    public SessionOrderedHandlerExecutor(Executor executor) {
+        this(executor, DEFAULT_EVENTS_PER_RUN);
+    }
+
+    /**
+     * Create an executor running the events on the given pool.
+     * 
+     * @param executor the pool running the session queues
+     * @param eventsPerRun the maximum number of events of a session executed before letting the other sessions run
+     */
+    public SessionOrderedHandlerExecutor(Executor executor, int eventsPerRun) {
+        Assert.assertNotNull(executor, "executor");
+
+        if (eventsPerRun <= 0) {
+            throw new IllegalArgumentException("eventsPerRun must be positive : " + eventsPerRun);
+        }
+
+        this.executor = executor;
+        this.eventsPerRun = eventsPerRun;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Event event) {
+        IoSession session = event.getSession();
+        SessionQueue sessionQueue = sessionQueues.get(session);
+
+        if (sessionQueue == null) {
+            SessionQueue newQueue = new SessionQueue(session);
+            sessionQueue = sessionQueues.putIfAbsent(session, newQueue);
+
+            if (sessionQueue == null) {
+                sessionQueue = newQueue;
+            }
+        }
+
+        sessionQueue.add(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean executesInline(IoSession session) {
+        return false;
+    }
+
+    /**
+     * @return the number of sessions which have a queue, i.e. the sessions not closed yet which have received events
+     */
+    public int getSessionCount() {
+        return sessionQueues.size();
+    }
+
+    /**
+     * The pending events of a session, executed by a single thread of the pool at a time.
+     */
+    private class SessionQueue implements Runnable {
+        private final IoSession session;
+
+        private final Queue<Event> events = new ConcurrentLinkedQueue<Event>();
+
+        /** <code>true</code> while the queue is submitted to the pool or running */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        SessionQueue(IoSession session) {
+            this.session = session;
+        }
+
+        void add(Event event) {
+            events.add(event);
+
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            for (int i = 0; i < eventsPerRun; i++) {
+                Event event = events.poll();
+
+                if (event == null) {
+                    break;
+                }
+
+                LOG.debug("executing event {}", event);
+                event.visit(CALLER);
+            }
+
+            if (!events.isEmpty()) {
+                // let the other sessions run, we'll be back
+                executor.execute(this);
+
+                return;
+            }
+
+            scheduled.set(false);
+
+            // an event may have been added before the flag was reset
+            if (!events.isEmpty() && scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            } else if (session.isClosed()) {
+                // the close event has been executed, the session won't receive anything else
+                sessionQueues.remove(session, this);
+            }
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.mina.service.executor;
 
 import java.util.concurrent.Executor;
 
+import org.apache.mina.api.IoSession;
 import org.apache.mina.util.Assert;
 
 /**
@@ -43,6 +44,14 @@ public class UnorderHandlerExecutor implements IoHandlerExecutor {
         executor.execute(new EventRunner(event));
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean executesInline(IoSession session) {
+        return false;
+    }
+
     private static class EventRunner implements Runnable {
 
         private final Event event;
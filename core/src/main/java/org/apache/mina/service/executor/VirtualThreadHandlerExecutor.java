@@ -0,0 +1,154 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import org.apache.mina.api.IoHandler;
+import org.apache.mina.api.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An executor for the {@link IoHandler} doing blocking calls (JDBC, files...) : the events of a session are executed
+ * in order by a virtual thread, created only while the session has pending events, so a blocked handler holds no
+ * platform thread. The number of sessions running at the same time is bounded by a semaphore.
+ * <p>
+ * The virtual threads are looked up at runtime, as MINA is built for older JVMs : when they are not available (before
+ * Java 21), the events are executed by a fixed pool of platform threads, of the maximum concurrency size.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class VirtualThreadHandlerExecutor implements IoHandlerExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadHandlerExecutor.class);
+
+    /** the factory method of the JDK virtual thread executor, null if the JVM has no virtual threads */
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutorFactory();
+
+    /** the executor running the session queues */
+    private final ExecutorService threads;
+
+    private final SessionOrderedHandlerExecutor sessionExecutor;
+
+    /**
+     * Create an executor running the events of at most the given number of sessions at the same time.
+     * 
+     * @param maxConcurrency the maximum number of sessions which events are executed at the same time
+     */
+    public VirtualThreadHandlerExecutor(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive : " + maxConcurrency);
+        }
+
+        if (NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+            threads = newVirtualThreadExecutor();
+            sessionExecutor = new SessionOrderedHandlerExecutor(new BoundedExecutor(threads, maxConcurrency));
+        } else {
+            LOG.info("no virtual threads in this JVM, using a pool of {} threads", maxConcurrency);
+            threads = Executors.newFixedThreadPool(maxConcurrency);
+            sessionExecutor = new SessionOrderedHandlerExecutor(threads);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the JVM supports the virtual threads
+     */
+    public static boolean isVirtualThreadSupported() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Event event) {
+        sessionExecutor.execute(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean executesInline(IoSession session) {
+        return false;
+    }
+
+    /**
+     * Stop the executor : the pending events are executed, but no new events are accepted.
+     */
+    public void shutdown() {
+        threads.shutdown();
+    }
+
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+        } catch (Exception e) {
+            throw new IllegalStateException("cannot create the virtual thread executor", e);
+        }
+    }
+
+    /**
+     * Start a thread per task, the tasks waiting for a permit before running : waiting costs nothing to a virtual
+     * thread.
+     */
+    private static class BoundedExecutor implements Executor {
+        private final Executor executor;
+
+        private final Semaphore permits;
+
+        BoundedExecutor(Executor executor, int maxConcurrency) {
+            this.executor = executor;
+            this.permits = new Semaphore(maxConcurrency, true);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void execute(final Runnable task) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    permits.acquireUninterruptibly();
+
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+        }
+    }
+}
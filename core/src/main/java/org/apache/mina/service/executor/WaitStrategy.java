@@ -0,0 +1,59 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+/**
+ * How a {@link RingBufferHandlerExecutor} worker waits for events when its ring buffer is empty : a trade-off between
+ * the latency of the events and the CPU burnt by the idle workers.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public enum WaitStrategy {
+    /**
+     * The worker is parked, and woken up by the next submitted event. No CPU is used while idle, but the submission
+     * pays for the wake up.
+     */
+    BLOCKING("blocking"),
+
+    /**
+     * The worker spins for a while, then yields its CPU between two checks.
+     */
+    YIELDING("yielding"),
+
+    /**
+     * The worker spins : the lowest latency, but each worker keeps a CPU busy. Use it only with fewer workers than
+     * free cores.
+     */
+    BUSY_SPIN("busy spin");
+
+    private final String description;
+
+    WaitStrategy(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Returns the string representation of this strategy.
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -22,9 +22,14 @@
  * <p>
  * Classes in charge of decoupling IoHandler event of the low level read/write/accept I/O threads ( {@link org.apache.mina.transport.nio.SelectorLoop} ).
  * <p>
- * Two kind of {@link org.apache.mina.service.executor.IoHandlerExecutor} are available :
+ * Several kinds of {@link org.apache.mina.service.executor.IoHandlerExecutor} are available :
  * <ul>
- * <li>in order, which will execute events for one session in order (the same thread of the pool will be picked)
+ * <li>in order, which will execute events for one session in order (the same thread of the pool will be picked), the
+ * events being handed to the threads through queues or ring buffers
+ * <li>in order on a shared pool, which will execute events for one session in order, on any thread of the pool, or on
+ * virtual threads for the blocking handlers
+ * <li>adaptive, which will execute events in the I/O thread while they are cheap, and offload the sessions which events
+ * get expensive to another executor
  * <li> out of order, which will execute events for one session with no order consideration (can change of thread for events of the same session)
  * </ul>
  * 
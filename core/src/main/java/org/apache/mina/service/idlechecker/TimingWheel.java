@@ -0,0 +1,329 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.mina.service.idlechecker;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timing wheel : the timeouts are hashed by their deadline in a ring of buckets, each bucket covering one
+ * tick. Advancing the wheel only visits the buckets of the elapsed ticks, so scheduling and expiring a timeout are
+ * O(1), whatever the number of pending timeouts. Deadlines longer than a wheel revolution are handled by counting the
+ * remaining rounds.<br>
+ * <br>
+ * The wheel has no thread of its own : it's advanced by the selector loops it's attached to (see
+ * {@link org.apache.mina.transport.nio.SelectorLoop#addTimingWheel(TimingWheel)}), or by anyone calling
+ * {@link #advance(long)}. Timeouts can be scheduled from any thread, they are queued and moved into their bucket by
+ * the next advance. Only one thread advances the wheel at a time, the other callers just return.<br>
+ * <br>
+ * A timeout never expires before its deadline, but it may expire up to one tick (plus the loop latency) after it.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TimingWheel {
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheel.class);
+
+    /** The default tick duration, in milliseconds */
+    public static final long DEFAULT_TICK_DURATION_IN_MS = 100L;
+
+    /** The default number of buckets in the wheel */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /** The duration of a tick, in ms */
+    private final long tickDurationInMs;
+
+    /** The buckets, each one being a linked list of timeouts */
+    private final Bucket[] wheel;
+
+    /** The mask used to compute the bucket of a tick (the wheel size is a power of 2) */
+    private final int mask;
+
+    /** The time origin of the ticks */
+    private final long startTimeInMs;
+
+    /** The next tick to process. Only modified by the advancing thread */
+    private long tick;
+
+    /** The timeouts scheduled since the last advance */
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+    /** Tells if a thread is currently advancing the wheel */
+    private final AtomicBoolean advancing = new AtomicBoolean();
+
+    /**
+     * Lazy holder of the wheel shared by the services
+     */
+    private static final class SharedHolder {
+        private static final TimingWheel INSTANCE = new TimingWheel();
+    }
+
+    /**
+     * Creates a timing wheel with a tick of {@link #DEFAULT_TICK_DURATION_IN_MS} and {@link #DEFAULT_WHEEL_SIZE}
+     * buckets
+     */
+    public TimingWheel() {
+        this(DEFAULT_TICK_DURATION_IN_MS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Creates a timing wheel
+     * 
+     * @param tickDurationInMs the duration of a tick, in milliseconds
+     * @param wheelSize the number of buckets in the wheel, rounded up to the next power of 2
+     */
+    public TimingWheel(long tickDurationInMs, int wheelSize) {
+        if (tickDurationInMs <= 0) {
+            throw new IllegalArgumentException("The tick duration must be positive : " + tickDurationInMs);
+        }
+
+        if ((wheelSize <= 0) || (wheelSize > (1 << 30))) {
+            throw new IllegalArgumentException("Invalid wheel size : " + wheelSize);
+        }
+
+        int size = 1;
+
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+
+        this.tickDurationInMs = tickDurationInMs;
+        this.wheel = new Bucket[size];
+        this.mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+
+        this.startTimeInMs = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the timing wheel shared by all the services which don't provide their own
+     */
+    public static TimingWheel getSharedInstance() {
+        return SharedHolder.INSTANCE;
+    }
+
+    /**
+     * @return the duration of a tick, in milliseconds
+     */
+    public long getTickDuration() {
+        return tickDurationInMs;
+    }
+
+    /**
+     * @return the number of buckets of the wheel
+     */
+    public int getWheelSize() {
+        return wheel.length;
+    }
+
+    /**
+     * Schedule a task to be run at the given time. This method can be called from any thread.
+     * 
+     * @param task the task to run when the timeout expires
+     * @param deadlineInMs the expiration time (unix time in ms)
+     * @return the timeout, which can be cancelled
+     */
+    public Timeout schedule(TimerTask task, long deadlineInMs) {
+        Timeout timeout = new Timeout(task, deadlineInMs);
+        pendingTimeouts.add(timeout);
+
+        return timeout;
+    }
+
+    /**
+     * Advance the wheel up to the given time, running the tasks of the expired timeouts. If another thread is already
+     * advancing the wheel, this method returns immediately.
+     * 
+     * @param nowInMs the current time (unix time in ms)
+     * @return the number of expired timeouts
+     */
+    public int advance(long nowInMs) {
+        if (!advancing.compareAndSet(false, true)) {
+            return 0;
+        }
+
+        try {
+            long lastTick = (nowInMs - startTimeInMs) / tickDurationInMs;
+            int expired = 0;
+
+            while (tick <= lastTick) {
+                transferPendingTimeouts();
+                expired += wheel[(int) (tick & mask)].expire(nowInMs);
+                tick++;
+            }
+
+            return expired;
+        } finally {
+            advancing.set(false);
+        }
+    }
+
+    /**
+     * Move the newly scheduled timeouts into their bucket
+     */
+    private void transferPendingTimeouts() {
+        Timeout timeout;
+
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+
+            // the first tick starting after the deadline, so that we never expire a timeout too early
+            long deadlineTick = (timeout.deadlineInMs - startTimeInMs + tickDurationInMs - 1) / tickDurationInMs;
+
+            if (deadlineTick < tick) {
+                // already expired : process it with the current tick
+                deadlineTick = tick;
+            }
+
+            timeout.remainingRounds = (deadlineTick - tick) / wheel.length;
+            wheel[(int) (deadlineTick & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * The task to run when a timeout expires
+     */
+    public interface TimerTask {
+        /**
+         * Called by the thread advancing the wheel when the timeout expires
+         * 
+         * @param timeout the expired timeout
+         * @param nowInMs the current time
+         */
+        void expired(Timeout timeout, long nowInMs);
+    }
+
+    /**
+     * A scheduled task
+     */
+    public static final class Timeout {
+        private final TimerTask task;
+
+        private final long deadlineInMs;
+
+        /** the number of wheel revolutions before expiration */
+        private long remainingRounds;
+
+        private volatile boolean cancelled;
+
+        /** the next timeout in the bucket */
+        private Timeout next;
+
+        private Timeout(TimerTask task, long deadlineInMs) {
+            this.task = task;
+            this.deadlineInMs = deadlineInMs;
+        }
+
+        /**
+         * @return the expiration time of this timeout
+         */
+        public long getDeadline() {
+            return deadlineInMs;
+        }
+
+        /**
+         * Cancel this timeout. The task won't be run, and the timeout will be removed from the wheel when its bucket
+         * is visited.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * @return <code>true</code> if the timeout has been cancelled
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * A bucket of the wheel : a singly linked list of timeouts, only accessed by the advancing thread
+     */
+    private static final class Bucket {
+        private Timeout head;
+
+        private void add(Timeout timeout) {
+            timeout.next = head;
+            head = timeout;
+        }
+
+        /**
+         * Expire the timeouts of the current round, and remove the cancelled ones
+         */
+        private int expire(long nowInMs) {
+            Timeout expired = null;
+            Timeout previous = null;
+            Timeout timeout = head;
+
+            while (timeout != null) {
+                Timeout next = timeout.next;
+
+                if (timeout.cancelled || (timeout.remainingRounds <= 0)) {
+                    // unlink it
+                    if (previous == null) {
+                        head = next;
+                    } else {
+                        previous.next = next;
+                    }
+
+                    if (!timeout.cancelled) {
+                        timeout.next = expired;
+                        expired = timeout;
+                    } else {
+                        timeout.next = null;
+                    }
+                } else {
+                    timeout.remainingRounds--;
+                    previous = timeout;
+                }
+
+                timeout = next;
+            }
+
+            // run the tasks once the bucket is consistent, as they may schedule new timeouts
+            int count = 0;
+
+            while (expired != null) {
+                Timeout next = expired.next;
+                expired.next = null;
+                count++;
+
+                try {
+                    expired.task.expired(expired, nowInMs);
+                } catch (Exception e) {
+                    LOG.error("Unexpected exception while running the timer task " + expired.task + " : ", e);
+                }
+
+                expired = next;
+            }
+
+            return count;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.mina.service.idlechecker;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.apache.mina.api.IdleStatus;
+import org.apache.mina.service.idlechecker.TimingWheel.Timeout;
+import org.apache.mina.service.idlechecker.TimingWheel.TimerTask;
+import org.apache.mina.session.AbstractIoSession;
+import org.apache.mina.session.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link IdleChecker} based on a {@link TimingWheel}, driven by the selector loops the wheel is attached to.<br>
+ * <br>
+ * The read and write events are lazily taken into account : they only record the time of the last event, and schedule
+ * a timeout if none is pending. When the timeout expires, we check the last event time : if the session has been
+ * active since, the timeout is simply scheduled again for the new deadline, otherwise the idle event is fired. An
+ * active session hence costs a time update per I/O event, and a single timeout reschedule per idle period.<br>
+ * <br>
+ * As with the {@link IndexedIdleChecker}, an idle event is fired once, a new one will be fired after the next read or
+ * write event.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TimingWheelIdleChecker implements IdleChecker {
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelIdleChecker.class);
+
+    // A speedup for logs
+    private static final boolean IS_DEBUG = LOG.isDebugEnabled();
+
+    /** The idle state of a session */
+    private static final AttributeKey<IdleState> IDLE_STATE = AttributeKey.createKey(IdleState.class, "idle.state");
+
+    /** The updaters of the pending timeouts of the sessions' idle states */
+    private static final AtomicReferenceFieldUpdater<IdleState, Timeout> READ_TIMEOUT_UPDATER = AtomicReferenceFieldUpdater
+            .newUpdater(IdleState.class, Timeout.class, "readTimeout");
+
+    private static final AtomicReferenceFieldUpdater<IdleState, Timeout> WRITE_TIMEOUT_UPDATER = AtomicReferenceFieldUpdater
+            .newUpdater(IdleState.class, Timeout.class, "writeTimeout");
+
+    /** The wheel used to schedule the idle timeouts */
+    private final TimingWheel timingWheel;
+
+    /** The number of idle events fired, only modified by the thread advancing the wheel */
+    private int idleEventCount;
+
+    /**
+     * Creates an idle checker using the shared {@link TimingWheel}
+     */
+    public TimingWheelIdleChecker() {
+        this(TimingWheel.getSharedInstance());
+    }
+
+    /**
+     * Creates an idle checker using the given {@link TimingWheel}
+     * 
+     * @param timingWheel the timing wheel
+     */
+    public TimingWheelIdleChecker(TimingWheel timingWheel) {
+        this.timingWheel = timingWheel;
+    }
+
+    /**
+     * @return the timing wheel used by this idle checker
+     */
+    public TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sessionRead(AbstractIoSession session, long timeInMs) {
+        IdleState state = getIdleState(session);
+        state.lastReadTime = timeInMs;
+
+        if (state.readTimeout == null) {
+            schedule(state, IdleStatus.READ_IDLE, timeInMs);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sessionWritten(AbstractIoSession session, long timeInMs) {
+        IdleState state = getIdleState(session);
+        state.lastWriteTime = timeInMs;
+
+        if (state.writeTimeout == null) {
+            schedule(state, IdleStatus.WRITE_IDLE, timeInMs);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * Advance the timing wheel, if it's not already done by another thread.
+     */
+    @Override
+    public int processIdleSession(long timeInMs) {
+        int before = idleEventCount;
+        timingWheel.advance(timeInMs);
+
+        return idleEventCount - before;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * Nothing to do, the timing wheel is driven by the selector loops.
+     */
+    @Override
+    public void start() {
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * Nothing to do, the pending timeouts of closed sessions are dropped when they expire.
+     */
+    @Override
+    public void destroy() {
+    }
+
+    private IdleState getIdleState(AbstractIoSession session) {
+        IdleState state = session.getAttribute(IDLE_STATE);
+
+        if (state == null) {
+            state = new IdleState(session);
+            session.setAttribute(IDLE_STATE, state);
+        }
+
+        return state;
+    }
+
+    /**
+     * Schedule an idle timeout for the session, if idle detection is enabled and no timeout is pending
+     */
+    private void schedule(IdleState state, IdleStatus status, long lastEventTimeInMs) {
+        long idleTimeInMs = state.session.getConfig().getIdleTimeInMillis(status);
+
+        if (idleTimeInMs <= 0L) {
+            return;
+        }
+
+        IdleTimerTask task = status == IdleStatus.READ_IDLE ? state.readTask : state.writeTask;
+        Timeout timeout = timingWheel.schedule(task, lastEventTimeInMs + idleTimeInMs);
+
+        if (!task.updater.compareAndSet(state, null, timeout)) {
+            // another thread has scheduled a timeout meanwhile
+            timeout.cancel();
+        } else if (IS_DEBUG) {
+            LOG.debug("{} timeout scheduled for session {} at {}", new Object[] { status, state.session,
+                                    timeout.getDeadline() });
+        }
+    }
+
+    /**
+     * The idle detection state of a session. The timeout fields are not private, as they are modified through field
+     * updaters.
+     */
+    /* No qualifier */final class IdleState {
+        private final AbstractIoSession session;
+
+        private volatile long lastReadTime;
+
+        private volatile long lastWriteTime;
+
+        /** The pending read idle timeout, if any */
+        /* No qualifier */volatile Timeout readTimeout;
+
+        /** The pending write idle timeout, if any */
+        /* No qualifier */volatile Timeout writeTimeout;
+
+        private final IdleTimerTask readTask;
+
+        private final IdleTimerTask writeTask;
+
+        private IdleState(AbstractIoSession session) {
+            this.session = session;
+            this.readTask = new IdleTimerTask(this, IdleStatus.READ_IDLE, READ_TIMEOUT_UPDATER);
+            this.writeTask = new IdleTimerTask(this, IdleStatus.WRITE_IDLE, WRITE_TIMEOUT_UPDATER);
+        }
+    }
+
+    /**
+     * The task run when an idle timeout of a session expires
+     */
+    private final class IdleTimerTask implements TimerTask {
+        private final IdleState state;
+
+        private final IdleStatus status;
+
+        /** The updater of the pending timeout field of the state */
+        private final AtomicReferenceFieldUpdater<IdleState, Timeout> updater;
+
+        private IdleTimerTask(IdleState state, IdleStatus status, AtomicReferenceFieldUpdater<IdleState, Timeout> updater) {
+            this.state = state;
+            this.status = status;
+            this.updater = updater;
+        }
+
+        private long getLastEventTime() {
+            return status == IdleStatus.READ_IDLE ? state.lastReadTime : state.lastWriteTime;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void expired(Timeout timeout, long nowInMs) {
+            AbstractIoSession session = state.session;
+            long idleTimeInMs = session.getConfig().getIdleTimeInMillis(status);
+
+            if (session.isClosing() || session.isClosed() || (idleTimeInMs <= 0L)) {
+                // drop the timeout. If the idle detection is enabled again, the next event will schedule a new one
+                updater.compareAndSet(state, timeout, null);
+                return;
+            }
+
+            long lastEventTimeInMs = getLastEventTime();
+            long deadlineInMs = lastEventTimeInMs + idleTimeInMs;
+
+            if (deadlineInMs > nowInMs) {
+                // The session has been active since the timeout was scheduled : just move the timeout. We own the
+                // pending timeout field, the I/O threads only set it when it's null
+                updater.set(state, timingWheel.schedule(this, deadlineInMs));
+                return;
+            }
+
+            updater.compareAndSet(state, timeout, null);
+            idleEventCount++;
+
+            if (IS_DEBUG) {
+                LOG.debug("session {} is {}", session, status);
+            }
+
+            session.processSessionIdle(status);
+
+            // an event may have been recorded while we were clearing the pending timeout, without scheduling a new one
+            long newEventTimeInMs = getLastEventTime();
+
+            if ((newEventTimeInMs != lastEventTimeInMs)
+                    && ((status == IdleStatus.READ_IDLE ? state.readTimeout : state.writeTimeout) == null)) {
+                schedule(state, status, newEventTimeInMs);
+            }
+        }
+    }
+}
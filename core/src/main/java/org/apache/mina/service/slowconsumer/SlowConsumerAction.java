@@ -0,0 +1,39 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.slowconsumer;
+
+/**
+ * The action taken by a {@link SlowConsumerPolicy} on a session which has too many pending bytes in its write queue.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public enum SlowConsumerAction {
+    /** drop the oldest queued messages until the pending bytes are back under the limit */
+    DROP_OLDEST,
+
+    /** reject the new messages until the pending bytes are back under the limit */
+    DROP_NEW,
+
+    /** drop all the queued messages but the most recent one, which is the up to date state for the peer */
+    CONFLATE,
+
+    /** close the session immediately */
+    CLOSE
+}
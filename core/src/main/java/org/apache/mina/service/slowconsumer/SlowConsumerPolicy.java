@@ -0,0 +1,189 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.slowconsumer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.mina.api.IoSession;
+
+/**
+ * The policy applied to the sessions of a service which peer doesn't read the messages as fast as they are written.
+ * When the number of bytes pending in the write queue of a session goes above the limit, its selector loop checks the
+ * session at each check interval, and takes the policy {@link SlowConsumerAction} while the session is still above the
+ * limit.<br/>
+ * The messages dropped from the write queue of an SSL/TLS session can't be skipped, as they are already encrypted :
+ * such a session is closed instead.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SlowConsumerPolicy {
+    /** The default time between two checks of a session above the limit, in milliseconds */
+    public static final int DEFAULT_CHECK_INTERVAL = 100;
+
+    /** the number of pending bytes above which a session is a slow consumer */
+    private final long maxPendingBytes;
+
+    /** the action taken on the slow consumers */
+    private final SlowConsumerAction action;
+
+    private volatile int checkInterval = DEFAULT_CHECK_INTERVAL;
+
+    private volatile SlowConsumerListener listener;
+
+    /** the number of times each action has been taken */
+    private final AtomicLongArray actionCounts = new AtomicLongArray(SlowConsumerAction.values().length);
+
+    /** the number of messages dropped or rejected */
+    private final AtomicLong droppedMessages = new AtomicLong();
+
+    /** the number of bytes dropped or rejected */
+    private final AtomicLong droppedBytes = new AtomicLong();
+
+    /**
+     * Create a policy
+     * 
+     * @param maxPendingBytes the number of pending bytes above which a session is a slow consumer
+     * @param action the action taken on the slow consumers
+     */
+    public SlowConsumerPolicy(long maxPendingBytes, SlowConsumerAction action) {
+        if (maxPendingBytes < 0) {
+            throw new IllegalArgumentException("maxPendingBytes must be positive, was " + maxPendingBytes);
+        }
+
+        if (action == null) {
+            throw new IllegalArgumentException("action must not be null");
+        }
+
+        this.maxPendingBytes = maxPendingBytes;
+        this.action = action;
+    }
+
+    /**
+     * @return the number of pending bytes above which a session is a slow consumer
+     */
+    public long getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    /**
+     * @return the action taken on the slow consumers
+     */
+    public SlowConsumerAction getAction() {
+        return action;
+    }
+
+    /**
+     * @return the time between two checks of a session above the limit, in milliseconds
+     */
+    public int getCheckInterval() {
+        return checkInterval;
+    }
+
+    /**
+     * @param checkInterval the time between two checks of a session above the limit, in milliseconds (at least 1)
+     */
+    public void setCheckInterval(int checkInterval) {
+        if (checkInterval < 1) {
+            throw new IllegalArgumentException("checkInterval must be at least 1, was " + checkInterval);
+        }
+
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * @return the listener informed of the actions taken, or <code>null</code>
+     */
+    public SlowConsumerListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @param listener the listener informed of the actions taken, <code>null</code> for none
+     */
+    public void setListener(SlowConsumerListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param action an action
+     * @return the number of times this action has been taken on a session
+     */
+    public long getActionCount(SlowConsumerAction action) {
+        return actionCounts.get(action.ordinal());
+    }
+
+    /**
+     * @return the number of messages dropped from the write queues, or rejected
+     */
+    public long getDroppedMessageCount() {
+        return droppedMessages.get();
+    }
+
+    /**
+     * @return the number of bytes dropped from the write queues, or rejected
+     */
+    public long getDroppedBytes() {
+        return droppedBytes.get();
+    }
+
+    /**
+     * Record an action taken on a session, and inform the listener. Called by the selector loop of the session.
+     * 
+     * @param session the slow consumer session
+     * @param action the action taken
+     * @param pendingBytes the number of bytes pending in the session write queue
+     */
+    public void actionTaken(IoSession session, SlowConsumerAction action, long pendingBytes) {
+        actionCounts.incrementAndGet(action.ordinal());
+
+        SlowConsumerListener listener = this.listener;
+
+        if (listener != null) {
+            listener.actionTaken(session, action, pendingBytes);
+        }
+    }
+
+    /**
+     * Record a message dropped from a write queue, or rejected
+     * 
+     * @param bytes the size of the message
+     */
+    public void messageDropped(long bytes) {
+        droppedMessages.incrementAndGet();
+        droppedBytes.addAndGet(bytes);
+    }
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("SlowConsumerPolicy[maxPendingBytes=").append(maxPendingBytes);
+        sb.append(", action=").append(action);
+        sb.append(", dropped=").append(droppedMessages.get());
+        sb.append(", droppedBytes=").append(droppedBytes.get());
+        sb.append("]");
+
+        return sb.toString();
+    }
+}
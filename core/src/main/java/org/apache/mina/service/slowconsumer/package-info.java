@@ -0,0 +1,33 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+/**
+ * <p>
+ * The protection against the slow consumers : the sessions which peer doesn't read the messages as fast as they are
+ * written, and which write queue keeps growing.
+ * <p>
+ * A {@link org.apache.mina.service.slowconsumer.SlowConsumerPolicy} set on a service is evaluated by the selector loop
+ * of each session accumulating pending bytes, and takes one of the
+ * {@link org.apache.mina.service.slowconsumer.SlowConsumerAction}s on the sessions above its limit.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+package org.apache.mina.service.slowconsumer;
+
@@ -22,10 +22,9 @@ package org.apache.mina.session;
 import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import javax.net.ssl.SSLContext;
 
@@ -37,6 +36,8 @@ import org.apache.mina.api.IoServer;
 import org.apache.mina.api.IoService;
 import org.apache.mina.api.IoSession;
 import org.apache.mina.api.IoSessionConfig;
+import org.apache.mina.api.WritePriority;
+import org.apache.mina.buffer.BufferAllocator;
 import org.apache.mina.filterchain.ReadFilterChainController;
 import org.apache.mina.filterchain.WriteFilterChainController;
 import org.apache.mina.service.executor.CloseEvent;
@@ -45,9 +46,11 @@ import org.apache.mina.service.executor.IoHandlerExecutor;
 import org.apache.mina.service.executor.OpenEvent;
 import org.apache.mina.service.executor.ReceiveEvent;
 import org.apache.mina.service.executor.SentEvent;
+import org.apache.mina.service.executor.WritabilityEvent;
 import org.apache.mina.service.idlechecker.IdleChecker;
 import org.apache.mina.transport.nio.SelectorLoop;
 import org.apache.mina.transport.nio.SslHelper;
+import org.apache.mina.util.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -104,17 +107,15 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
     // Session state
     // ------------------------------------------------------------------------
 
-    /** The session's state : one of CREATED, CONNECTED, CLOSING, CLOSED, SECURING, CONNECTED_SECURED */
+    /**
+     * The session's state : one of CREATED, CONNECTED, CLOSING, CLOSED, SECURING, CONNECTED_SECURED. It's read with a
+     * plain volatile load, and modified with a CAS (see {@link #changeState(SessionState)}).
+     */
     protected volatile SessionState state;
 
-    /** A lock to protect the access to the session's state */
-    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
-
-    /** A Read lock on the reentrant session's state lock */
-    private final Lock stateReadLock = stateLock.readLock();
-
-    /** A Write lock on the reentrant session's state lock */
-    private final Lock stateWriteLock = stateLock.writeLock();
+    /** The atomic updater of the session's state, so we don't need a lock nor an atomic reference per session */
+    private static final AtomicReferenceFieldUpdater<AbstractIoSession, SessionState> STATE_UPDATER = AtomicReferenceFieldUpdater
+            .newUpdater(AbstractIoSession.class, SessionState.class, "state");
 
     /** Tells if the session is secured or not */
     protected volatile boolean secured;
@@ -164,13 +165,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public boolean isClosed() {
-        try {
-            stateReadLock.lock();
-
-            return state == SessionState.CLOSED;
-        } finally {
-            stateReadLock.unlock();
-        }
+        return state == SessionState.CLOSED;
     }
 
     /**
@@ -178,13 +173,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public boolean isClosing() {
-        try {
-            stateReadLock.lock();
-
-            return state == SessionState.CLOSING;
-        } finally {
-            stateReadLock.unlock();
-        }
+        return state == SessionState.CLOSING;
     }
 
     /**
@@ -192,13 +181,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public boolean isConnected() {
-        try {
-            stateReadLock.lock();
-
-            return state == SessionState.CONNECTED;
-        } finally {
-            stateReadLock.unlock();
-        }
+        return state == SessionState.CONNECTED;
     }
 
     /**
@@ -206,13 +189,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public boolean isCreated() {
-        try {
-            stateReadLock.lock();
-
-            return state == SessionState.CREATED;
-        } finally {
-            stateReadLock.unlock();
-        }
+        return state == SessionState.CREATED;
     }
 
     /**
@@ -220,13 +197,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public boolean isSecuring() {
-        try {
-            stateReadLock.lock();
-
-            return state == SessionState.SECURING;
-        } finally {
-            stateReadLock.unlock();
-        }
+        return state == SessionState.SECURING;
     }
 
     /**
@@ -234,13 +205,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public boolean isConnectedSecured() {
-        try {
-            stateReadLock.lock();
-
-            return state == SessionState.SECURED;
-        } finally {
-            stateReadLock.unlock();
-        }
+        return state == SessionState.SECURED;
     }
 
     /**
@@ -248,77 +213,58 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public void changeState(SessionState to) {
-        try {
-            stateWriteLock.lock();
-
-            switch (state) {
-            case CREATED:
-                switch (to) {
-                case CONNECTED:
-                case SECURING:
-                case CLOSING:
-                    state = to;
-                    break;
-
-                default:
-                    throw new IllegalStateException("Cannot transit from " + state + " to " + to);
-                }
+        for (;;) {
+            SessionState from = state;
 
-                break;
-
-            case CONNECTED:
-                switch (to) {
-                case SECURING:
-                case CLOSING:
-                    state = to;
-                    break;
-
-                default:
-                    throw new IllegalStateException("Cannot transit from " + state + " to " + to);
-                }
+            if (from == SessionState.CLOSED) {
+                throw new IllegalStateException("The session is already closed. cannot switch to " + to);
+            }
 
-                break;
+            if (!isTransitionAllowed(from, to)) {
+                throw new IllegalStateException("Cannot transit from " + from + " to " + to);
+            }
 
-            case SECURING:
-                switch (to) {
-                case SECURED:
-                case CLOSING:
-                    state = to;
-                    break;
+            if (STATE_UPDATER.compareAndSet(this, from, to)) {
+                return;
+            }
 
-                default:
-                    throw new IllegalStateException("Cannot transit from " + state + " to " + to);
-                }
+            // the state has been concurrently modified, check the transition again
+        }
+    }
 
-                break;
+    /**
+     * Atomically change the session state, if it's in the expected state
+     * 
+     * @param expected the expected current state
+     * @param to the new state
+     * @return <code>true</code> if the state has been changed
+     */
+    protected final boolean compareAndSetState(SessionState expected, SessionState to) {
+        return STATE_UPDATER.compareAndSet(this, expected, to);
+    }
 
-            case SECURED:
-                switch (to) {
-                case CONNECTED:
-                case SECURING:
-                case CLOSING:
-                    state = to;
-                    break;
+    /**
+     * The session state transition table
+     */
+    private static boolean isTransitionAllowed(SessionState from, SessionState to) {
+        switch (from) {
+        case CREATED:
+            return (to == SessionState.CONNECTED) || (to == SessionState.SECURING) || (to == SessionState.CLOSING);
 
-                default:
-                    throw new IllegalStateException("Cannot transit from " + state + " to " + to);
-                }
+        case CONNECTED:
+            return (to == SessionState.SECURING) || (to == SessionState.CLOSING);
 
-                break;
-            case CLOSING:
-                if (to != SessionState.CLOSED) {
-                    throw new IllegalStateException("Cannot transit from " + state + " to " + to);
-                }
+        case SECURING:
+            return (to == SessionState.SECURED) || (to == SessionState.CLOSING);
 
-                state = to;
+        case SECURED:
+            return (to == SessionState.CONNECTED) || (to == SessionState.SECURING) || (to == SessionState.CLOSING);
 
-                break;
+        case CLOSING:
+            return to == SessionState.CLOSED;
 
-            case CLOSED:
-                throw new IllegalStateException("The session is already closed. cannot switch to " + to);
-            }
-        } finally {
-            stateWriteLock.unlock();
+        default:
+            return false;
         }
     }
 
@@ -465,6 +411,17 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
         return attributes.setAttribute(key, value);
     };
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @exception IllegalArgumentException if <code>key==null</code> or <code>value==null</code>
+     * @see #setAttribute(AttributeKey, Object)
+     */
+    @Override
+    public final <T> T setAttributeIfAbsent(AttributeKey<? extends T> key, T value) {
+        return attributes.setAttributeIfAbsent(key, value);
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -494,7 +451,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public void write(Object message) {
-        doWriteWithFuture(message, null);
+        doWriteWithFuture(message, null, WritePriority.NORMAL, 0L);
     }
 
     /**
@@ -503,12 +460,61 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
     @Override
     public IoFuture<Void> writeWithFuture(Object message) {
         IoFuture<Void> future = new DefaultWriteFuture();
-        doWriteWithFuture(message, future);
+        doWriteWithFuture(message, future, WritePriority.NORMAL, 0L);
 
         return future;
     }
 
-    private void doWriteWithFuture(Object message, IoFuture<Void> future) {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(Object message, WritePriority priority) {
+        doWriteWithFuture(message, null, priority, 0L);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IoFuture<Void> writeWithFuture(Object message, WritePriority priority) {
+        IoFuture<Void> future = new DefaultWriteFuture();
+        doWriteWithFuture(message, future, priority, 0L);
+
+        return future;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IoFuture<Void> writeWithFuture(Object message, long timeout, TimeUnit unit) {
+        IoFuture<Void> future = new DefaultWriteFuture();
+        doWriteWithFuture(message, future, WritePriority.NORMAL, Clock.currentTimeMillis() + unit.toMillis(timeout));
+
+        return future;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The messages are not staged by default, so there is nothing to flush.
+     */
+    @Override
+    public void flush() {
+        // nothing to flush
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeAndFlush(Object message) {
+        write(message);
+        flush();
+    }
+
+    private void doWriteWithFuture(Object message, IoFuture<Void> future, WritePriority priority, long deadline) {
         if (IS_DEBUG) {
             LOG.debug("writing message {} to session {}", message, this);
         }
@@ -519,6 +525,8 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
         }
 
         WriteRequest writeRequest = new DefaultWriteRequest(message);
+        writeRequest.setPriority(priority);
+        writeRequest.setDeadline(deadline);
 
         // process the queue
         processMessageWriting(writeRequest, future);
@@ -635,29 +643,97 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
         }
     }
 
-    /** for knowing if the message buffer is the selector loop one */
-    static ThreadLocal<ByteBuffer> tl = new ThreadLocal<ByteBuffer>() {
-        @Override
-        protected ByteBuffer initialValue() {
-            return null;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isWritable() {
+        // no write queue bound by default
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getWriteQueueBytes() {
+        // no write queue by default
+        return 0L;
+    }
+
+    /**
+     * process session writability changed event. To be called by the session {@link SelectorLoop} .
+     * 
+     * @param writable <code>true</code> if the session became writable
+     */
+    public void processWritabilityChanged(boolean writable) {
+        if (IS_DEBUG) {
+            LOG.debug("processing writability changed to {} event for session {}", writable, this);
         }
-    };
+
+        try {
+            IoHandler handler = getService().getIoHandler();
+
+            if (handler != null) {
+                IoHandlerExecutor executor = getService().getIoHandlerExecutor();
+
+                if (executor != null) {
+                    // asynchronous event
+                    executor.execute(new WritabilityEvent(this, writable));
+                } else {
+                    // synchronous call (in the I/O loop)
+                    handler.sessionWritabilityChanged(this, writable);
+                }
+            }
+        } catch (RuntimeException e) {
+            processException(e);
+        }
+    }
+
+    /** the buffer being received, for knowing if a message is the read buffer (used by the selector loop only) */
+    private ByteBuffer receivedBuffer;
+
+    /** the allocator of the buffer being received, <code>null</code> if it's not a pooled buffer */
+    private BufferAllocator receivedBufferAllocator;
+
+    /** has the ownership of the buffer being received been transferred to the executor */
+    private boolean receivedBufferTransferred;
 
     /**
      * process session message received event using the filter chain. To be called by the session {@link SelectorLoop} .
+     * The message buffer will be reused by the loop, so it's copied if it has to be pushed to the executor.
      * 
      * @param message the received message
      */
     public void processMessageReceived(ByteBuffer message) {
+        processMessageReceived(message, null);
+    }
+
+    /**
+     * process session message received event using the filter chain. To be called by the session {@link SelectorLoop} .
+     * If the message buffer has been borrowed from an allocator, its ownership can be transferred to the
+     * {@link IoHandlerExecutor} without any copy : the buffer is given back to the allocator once the message has been
+     * handled.
+     * 
+     * @param message the received message
+     * @param allocator the allocator the message buffer was borrowed from, <code>null</code> if the buffer can't be
+     *        transferred
+     * @return <code>true</code> if the ownership of the buffer has been transferred, so the caller must not release nor
+     *         reuse it
+     */
+    public boolean processMessageReceived(ByteBuffer message, BufferAllocator allocator) {
         if (IS_DEBUG) {
             LOG.debug("processing message '{}' received event for session {}", message, this);
         }
 
-        tl.set(message);
+        receivedBuffer = message;
+        receivedBufferAllocator = allocator;
+        receivedBufferTransferred = false;
+
         try {
             // save basic statistics
             readBytes += message.remaining();
-            lastReadTime = System.currentTimeMillis();
+            lastReadTime = Clock.currentTimeMillis();
 
             if (chain.length < 1) {
                 if (IS_DEBUG) {
@@ -671,19 +747,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
 
                     if (executor != null) {
                         // asynchronous event
-                        // copy the bytebuffer
-                        if (IS_DEBUG) {
-                            LOG.debug("copying bytebuffer before pushing to the executor");
-                        }
-
-                        ByteBuffer original = message;
-                        ByteBuffer clone = ByteBuffer.allocate(original.capacity());
-                        // copy from the beginning
-                        original.rewind();
-                        clone.put(original);
-                        original.rewind();
-                        clone.flip();
-                        executor.execute(new ReceiveEvent(this, clone));
+                        executeMessageReceived(executor, message);
                     } else {
                         // synchronous call (in the I/O loop)
                         handler.messageReceived(this, message);
@@ -697,8 +761,41 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
             }
         } catch (RuntimeException e) {
             processException(e);
+        } finally {
+            receivedBuffer = null;
+            receivedBufferAllocator = null;
         }
 
+        return receivedBufferTransferred;
+    }
+
+    /**
+     * Push a received message to the executor. If the message is the buffer being received, its ownership is
+     * transferred to the executor if possible, otherwise it's copied as the loop will reuse it, unless the executor
+     * handles it at once.
+     */
+    private void executeMessageReceived(IoHandlerExecutor executor, Object message) {
+        if ((message != receivedBuffer) || (message == null)) {
+            // a message produced by the filters, we can give it away
+            executor.execute(new ReceiveEvent(this, message));
+        } else if (executor.executesInline(this)) {
+            // handled at once by the loop, the buffer can be lent
+            executor.execute(new ReceiveEvent(this, message));
+        } else if ((receivedBufferAllocator != null) && !receivedBufferTransferred) {
+            // hand the pooled buffer to the executor, it will be released once handled
+            receivedBufferTransferred = true;
+            executor.execute(new ReceiveEvent(this, receivedBuffer, receivedBufferAllocator));
+        } else {
+            // copy the bytebuffer
+            if (IS_DEBUG) {
+                LOG.debug("copying bytebuffer before pushing to the executor");
+            }
+
+            ByteBuffer copy = ByteBuffer.allocate(receivedBuffer.remaining());
+            copy.put(receivedBuffer.duplicate());
+            copy.flip();
+            executor.execute(new ReceiveEvent(this, copy));
+        }
     }
 
     /**
@@ -711,9 +808,12 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
             LOG.debug("processing message '{}' writing event for session {}", writeRequest, this);
         }
 
-        try {
-            // lastWriteRequest = null;
+        // put the future in the write request before it's enqueued, it may be written at once
+        if (future != null) {
+            writeRequest.setFuture(future);
+        }
 
+        try {
             if (chain.length < 1) {
                 enqueueWriteRequest(writeRequest);
             } else {
@@ -723,11 +823,6 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
                 IoFilter nextFilter = chain[position];
                 nextFilter.messageWriting(this, writeRequest, this);
             }
-
-            // put the future in the last write request
-            if (future != null) {
-                writeRequest.setFuture(future);
-            }
         } catch (RuntimeException e) {
             processException(e);
         }
@@ -804,23 +899,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
 
                 if (executor != null) {
                     // asynchronous event
-                    if (message == tl.get()) {
-                        // copy the bytebuffer
-                        if (IS_DEBUG) {
-                            LOG.debug("copying bytebuffer before pushing to the executor");
-                        }
-
-                        ByteBuffer original = (ByteBuffer) message;
-                        ByteBuffer clone = ByteBuffer.allocate(original.capacity());
-                        // copy from the beginning
-                        original.rewind();
-                        clone.put(original);
-                        original.rewind();
-                        clone.flip();
-                        executor.execute(new ReceiveEvent(this, clone));
-                    } else {
-                        executor.execute(new ReceiveEvent(this, message));
-                    }
+                    executeMessageReceived(executor, message);
                 } else {
                     // synchronous call (in the I/O loop)
                     handler.messageReceived(this, message);
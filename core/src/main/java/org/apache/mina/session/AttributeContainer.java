@@ -89,6 +89,24 @@ interface AttributeContainer {
      */
     <T> T setAttribute(AttributeKey<? extends T> key, T value);
 
+    /**
+     * Sets the value of the user-defined attribute for the given <code>key</code>, if there is no value yet. The check
+     * and the update are atomic.
+     * 
+     * @param key
+     *            the attribute's key, must not be <code>null</code>
+     * @param value
+     *            the attribute's value, must not be <code>null</code>
+     * @return The current attribute's value, or <code>null</code> if there
+     *         was none and the given value has been set
+     * @exception IllegalArgumentException
+     *                if {@code value==null} or not an instance of type that is
+     *                specified in the key (see {@link AttributeKey#getType()})
+     * 
+     * @see #setAttribute(AttributeKey, Object)
+     */
+    <T> T setAttributeIfAbsent(AttributeKey<? extends T> key, T value);
+
     /**
      * Returns an unmodifiable {@link Set} including all Keys of this container. If
      * this container contains no key's an empty {@link Set} will be returned.
@@ -21,6 +21,9 @@ package org.apache.mina.session;
 
 import static org.apache.mina.util.Assert.assertNotNull;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.apache.mina.api.IoSession;
 
 /**
@@ -43,6 +46,15 @@ public final class AttributeKey<T> {
     /** the cached hash code of this instance */
     private final int hashCode;
 
+    /** the global index of this key, used as a slot index in the session's attribute container */
+    private final int index;
+
+    /** The index of every key created so far. Equal keys share the same index */
+    private static final ConcurrentMap<AttributeKey<?>, Integer> INDEXES = new ConcurrentHashMap<AttributeKey<?>, Integer>();
+
+    /** The keys, by index */
+    private static volatile AttributeKey<?>[] keys = new AttributeKey<?>[0];
+
     /**
      * Creates a new {@link AttributeKey} with the given parameters. A
      * {@link IllegalArgumentException} will be thrown if any parameter is
@@ -62,6 +74,7 @@ public final class AttributeKey<T> {
         this.attributeName = assertNotNull(attributeName, "attributeName");
 
         this.hashCode = createHashCode();
+        this.index = indexOf(this);
     }
 
     /**
@@ -83,6 +96,50 @@ public final class AttributeKey<T> {
         return new AttributeKey<T>(attributeType, attributeName);
     }
 
+    /**
+     * Gets the global index of the given key, assigning a new one if no equal key has been created before. Keys are
+     * expected to be long lived constants, so the indexes are never reclaimed.
+     */
+    private static int indexOf(AttributeKey<?> key) {
+        Integer index = INDEXES.get(key);
+
+        if (index != null) {
+            return index;
+        }
+
+        synchronized (INDEXES) {
+            index = INDEXES.get(key);
+
+            if (index == null) {
+                AttributeKey<?>[] newKeys = new AttributeKey<?>[keys.length + 1];
+                System.arraycopy(keys, 0, newKeys, 0, keys.length);
+                index = keys.length;
+                newKeys[index] = key;
+                keys = newKeys;
+                INDEXES.put(key, index);
+            }
+
+            return index;
+        }
+    }
+
+    /**
+     * @return the number of distinct keys created so far
+     */
+    /* No qualifier */static int getKeyCount() {
+        return keys.length;
+    }
+
+    /**
+     * Gets the first key created with the given index
+     * 
+     * @param index the index of the key
+     * @return the key
+     */
+    /* No qualifier */static AttributeKey<?> getKey(int index) {
+        return keys[index];
+    }
+
     /**
      * Creates the hash code for this instance
      * 
@@ -105,6 +162,16 @@ public final class AttributeKey<T> {
         return attributeName;
     }
 
+    /**
+     * Returns the global index of this key. All the keys equal to this one share the same index, which is used as a
+     * slot in the session attribute containers.
+     * 
+     * @return the index of this key
+     */
+    public int getIndex() {
+        return index;
+    }
+
     /**
      * Returns the type of this key.
      * 
@@ -23,27 +23,65 @@ import static java.util.Collections.unmodifiableSet;
 import static org.apache.mina.util.Assert.assertNotNull;
 
 import java.util.Collections;
-import java.util.Map;
+import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * An {@link AttributeContainer} provides type-safe access to attribute values, using {@link AttributeKey}' s which as
  * reference-key to an attribute value. <br>
  * <br>
+ * The values are stored in an array, using the {@link AttributeKey#getIndex()} global index of their key as a slot,
+ * so that a lookup is a simple array access. The array is lazily created and grown on the first write of a key.
+ * Reads are lock free, writes are serialized on the container (they are mostly done by the session's own I/O
+ * thread, so the lock is not contended).<br>
+ * <br>
  * This class is Thread-Safe !
  * 
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 final class DefaultAttributeContainer implements AttributeContainer {
+    /** The attribute values, indexed by their key's index. <code>null</code> until the first attribute is set */
+    private volatile AtomicReferenceArray<Object> slots;
+
+    /**
+     * Gets the value stored in the slot of the given key, if any
+     */
+    private Object get(AttributeKey<?> key) {
+        AtomicReferenceArray<Object> current = slots;
+        int index = key.getIndex();
+
+        if ((current == null) || (index >= current.length())) {
+            return null;
+        }
+
+        return current.get(index);
+    }
+
     /**
-     * Contains all attributes
-     * <ul>
-     * <li>Key: the typesafe attribute key
-     * <li>Value: the attribute value
-     * </ul>
+     * Grows the slot array if it can't hold the given index. Must be called while holding the container's lock.
      */
-    private final Map<AttributeKey<?>, Object> attributes = new ConcurrentHashMap<AttributeKey<?>, Object>();
+    private AtomicReferenceArray<Object> ensureCapacity(int index) {
+        AtomicReferenceArray<Object> current = slots;
+
+        if ((current != null) && (index < current.length())) {
+            return current;
+        }
+
+        // Make room for all the keys known so far, so that we don't grow the array for each new key
+        AtomicReferenceArray<Object> newSlots = new AtomicReferenceArray<Object>(Math.max(index + 1,
+                AttributeKey.getKeyCount()));
+
+        if (current != null) {
+            for (int i = 0; i < current.length(); i++) {
+                newSlots.lazySet(i, current.get(i));
+            }
+        }
+
+        slots = newSlots;
+
+        return newSlots;
+    }
 
     /**
      * Returns the value of the user-defined attribute for the given <code>key</code>.
@@ -58,7 +96,7 @@ final class DefaultAttributeContainer implements AttributeContainer {
     public <T> T getAttribute(AttributeKey<T> key) {
         assertNotNull(key, "key");
 
-        T value = (T) attributes.get(key);
+        T value = (T) get(key);
 
         return value;
     }
@@ -76,7 +114,7 @@ final class DefaultAttributeContainer implements AttributeContainer {
     public <T> T getAttribute(AttributeKey<T> key, T defaultValue) {
         assertNotNull(key, "key");
 
-        T value = (T) attributes.get(key);
+        T value = (T) get(key);
 
         if (value != null) {
             return value;
@@ -110,7 +148,37 @@ final class DefaultAttributeContainer implements AttributeContainer {
             return removeAttribute(key);
         }
 
-        return (T) attributes.put(key, value);
+        synchronized (this) {
+            return (T) ensureCapacity(key.getIndex()).getAndSet(key.getIndex(), value);
+        }
+    }
+
+    /**
+     * Sets the value of the user-defined attribute for the given <code>key</code>, if there is no value yet.
+     * 
+     * @param key the attribute's key, must not be <code>null</code>
+     * @param value the attribute's value, must not be <code>null</code>
+     * @return the current attribute's value, or <code>null</code> if the given value has been set
+     * @exception IllegalArgumentException if <code>key==null</code>, <code>value==null</code>, or if
+     *            <code>value</code> is not an instance of {@link AttributeKey#getType()}
+     * @see #setAttribute(AttributeKey, Object)
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T setAttributeIfAbsent(AttributeKey<? extends T> key, T value) {
+        assertNotNull(key, "key");
+        assertNotNull(value, "value");
+        assertValueIsOfExpectedType(key, value);
+
+        synchronized (this) {
+            AtomicReferenceArray<Object> current = ensureCapacity(key.getIndex());
+
+            if (current.compareAndSet(key.getIndex(), null, value)) {
+                return null;
+            }
+
+            return (T) current.get(key.getIndex());
+        }
     }
 
     /**
@@ -145,7 +213,18 @@ final class DefaultAttributeContainer implements AttributeContainer {
      */
     @Override
     public Set<AttributeKey<?>> getAttributeKeys() {
-        return unmodifiableSet(attributes.keySet());
+        Set<AttributeKey<?>> keys = new HashSet<AttributeKey<?>>();
+        AtomicReferenceArray<Object> current = slots;
+
+        if (current != null) {
+            for (int i = 0; i < current.length(); i++) {
+                if (current.get(i) != null) {
+                    keys.add(AttributeKey.getKey(i));
+                }
+            }
+        }
+
+        return unmodifiableSet(keys);
     }
 
     /**
@@ -162,6 +241,16 @@ final class DefaultAttributeContainer implements AttributeContainer {
     @SuppressWarnings("unchecked")
     public <T> T removeAttribute(AttributeKey<T> key) {
         assertNotNull(key, "key");
-        return (T) attributes.remove(key);
+
+        synchronized (this) {
+            AtomicReferenceArray<Object> current = slots;
+            int index = key.getIndex();
+
+            if ((current == null) || (index >= current.length())) {
+                return null;
+            }
+
+            return (T) current.getAndSet(index, null);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,129 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.session;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import org.apache.mina.api.FileRegion;
+
+/**
+ * The default {@link FileRegion} implementation.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DefaultFileRegion implements FileRegion {
+    /** The channel of the file to send */
+    private final FileChannel fileChannel;
+
+    /** The position of the first byte of the region */
+    private final long originalPosition;
+
+    /** The position of the next byte to send */
+    private long position;
+
+    /** The number of bytes still to be sent */
+    private long remainingBytes;
+
+    /**
+     * Create a region covering the whole file
+     * 
+     * @param fileChannel the channel of the file to send
+     * @throws IOException if the size of the file can't be read
+     */
+    public DefaultFileRegion(FileChannel fileChannel) throws IOException {
+        this(fileChannel, 0, fileChannel.size());
+    }
+
+    /**
+     * Create a region of a file
+     * 
+     * @param fileChannel the channel of the file to send
+     * @param position the position of the first byte to send
+     * @param remainingBytes the number of bytes to send
+     */
+    public DefaultFileRegion(FileChannel fileChannel, long position, long remainingBytes) {
+        if (fileChannel == null) {
+            throw new IllegalArgumentException("fileChannel can not be null");
+        }
+
+        if (position < 0) {
+            throw new IllegalArgumentException("position may not be less than 0");
+        }
+
+        if (remainingBytes < 0) {
+            throw new IllegalArgumentException("remainingBytes may not be less than 0");
+        }
+
+        this.fileChannel = fileChannel;
+        this.originalPosition = position;
+        this.position = position;
+        this.remainingBytes = remainingBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FileChannel getFileChannel() {
+        return fileChannel;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getWrittenBytes() {
+        return position - originalPosition;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRemainingBytes() {
+        return remainingBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void update(long amount) {
+        position += amount;
+        remainingBytes -= amount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "FileRegion[position=" + position + ", remaining=" + remainingBytes + "]";
+    }
+}
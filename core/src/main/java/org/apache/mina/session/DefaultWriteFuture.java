@@ -41,4 +41,13 @@ public class DefaultWriteFuture extends AbstractIoFuture<Void> {
         setResult(null);
     }
 
+    /**
+     * fail this future
+     * 
+     * @param t the cause of the write failure
+     */
+    public void error(Throwable t) {
+        setException(t);
+    }
+
 }
@@ -19,16 +19,527 @@
  */
 package org.apache.mina.session;
 
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.mina.api.WritePriority;
 
 /**
  * The default implementation of the WriteRequest queue for storing writes to
- * process in the {@link org.apache.mina.api.IoSession}.
+ * process in the {@link org.apache.mina.api.IoSession}.<br/>
+ * 
+ * The requests are pushed in one lane per {@link WritePriority}. The lanes are drained with a weighted round robin :
+ * in each round, a lane can give at most its weight of requests while the lanes of lower priority are waiting, so a
+ * high priority request overtakes the pending bulk requests, while the low priority ones still get their share.<br/>
+ * 
+ * The requests selected in a lane are moved to a list of committed requests, which are dequeued in the selection
+ * order. The head of the queue is committed by {@link #peek()} or {@link #commitNext()}, so that a request being
+ * written stays at the head of the queue until it's completely written, whatever the requests offered meanwhile.<br/>
+ * 
+ * A consumer writing many requests at once looks ahead with {@link #gather(WriteRequest[], int)}, which commits
+ * nothing : the following {@link #poll()} and {@link #commitNext()} calls dequeue the gathered requests in the same
+ * order, and the gathered requests which have not been dequeued can then be overtaken by a request of higher
+ * priority, as if they had never been gathered. The {@link #iterator()} has no side effect either.<br/>
+ * 
+ * The requests can be added by any thread, but only one thread must consume them.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
-public class DefaultWriteQueue extends ConcurrentLinkedQueue<WriteRequest> {
+public class DefaultWriteQueue extends AbstractQueue<WriteRequest> {
+
+    /** The number of requests a lane can give in a round, by priority */
+    private static final int[] WEIGHTS = { 8, 4, 1 };
+
+    /** The lanes, from the highest priority to the lowest one */
+    private final Queue<WriteRequest>[] lanes;
+
+    /** The number of requests each lane can still give in the current round. Only accessed by the consumer */
+    private final int[] credits = new int[WEIGHTS.length];
+
+    /** The number of requests in the queue, by priority (the committed requests included) */
+    private final AtomicIntegerArray depths = new AtomicIntegerArray(WEIGHTS.length);
+
+    /** The requests selected in the lanes, in their dequeue order. Only accessed by the consumer */
+    private final List<WriteRequest> committed = new ArrayList<WriteRequest>();
+
+    /** The position of the head of the queue in the committed requests */
+    private int committedHead;
+
+    /** The lanes of the requests returned by the last gathering, not committed yet. Only accessed by the consumer */
+    private int[] gatheredLanes = new int[0];
+
+    /** The number of gathered requests taken from the lanes */
+    private int gatheredCount;
+
+    /** The position of the next gathered request to commit */
+    private int gatheredCursor;
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public DefaultWriteQueue() {
+        lanes = new Queue[WEIGHTS.length];
+
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ConcurrentLinkedQueue<WriteRequest>();
+        }
+
+        System.arraycopy(WEIGHTS, 0, credits, 0, credits.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean offer(WriteRequest writeRequest) {
+        int lane = getLane(writeRequest);
+
+        depths.incrementAndGet(lane);
+
+        return lanes[lane].offer(writeRequest);
+    }
+
+    /**
+     * Push a request behind the committed requests, bypassing its lane. Used for a request which transmission has
+     * started while the queue was empty : it must be completed before any other request is written.
+     * 
+     * @param writeRequest the request to push
+     */
+    public void commit(WriteRequest writeRequest) {
+        depths.incrementAndGet(getLane(writeRequest));
+        committed.add(writeRequest);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WriteRequest poll() {
+        if ((committedHead == committed.size()) && !selectNext()) {
+            return null;
+        }
+
+        WriteRequest writeRequest = committed.set(committedHead++, null);
+
+        if (committedHead == committed.size()) {
+            committed.clear();
+            committedHead = 0;
+        }
+
+        depths.decrementAndGet(getLane(writeRequest));
+
+        return writeRequest;
+    }
+
+    /**
+     * Remove the oldest request of the queue, whatever its priority.
+     * 
+     * @param excluded a request which must not be removed (a request being written), or <code>null</code>
+     * @return the removed request, or <code>null</code> if there is no request to remove
+     */
+    public WriteRequest pollOldest(WriteRequest excluded) {
+        WriteRequest oldest = null;
+        int oldestIndex = -1;
+        Queue<WriteRequest> oldestLane = null;
+
+        for (int i = committedHead; i < committed.size(); i++) {
+            WriteRequest writeRequest = committed.get(i);
+
+            if ((writeRequest != excluded)
+                    && ((oldest == null) || (writeRequest.getCreationTime() < oldest.getCreationTime()))) {
+                oldest = writeRequest;
+                oldestIndex = i;
+            }
+        }
+
+        for (Queue<WriteRequest> lane : lanes) {
+            WriteRequest writeRequest = lane.peek();
+
+            if ((writeRequest != null) && (writeRequest != excluded)
+                    && ((oldest == null) || (writeRequest.getCreationTime() < oldest.getCreationTime()))) {
+                oldest = writeRequest;
+                oldestLane = lane;
+            }
+        }
+
+        if (oldest == null) {
+            return null;
+        }
+
+        if (oldestLane != null) {
+            // only the consumer removes the lane heads
+            oldestLane.poll();
+            forgetGathered();
+        } else {
+            committed.remove(oldestIndex);
+
+            if (committedHead == committed.size()) {
+                committed.clear();
+                committedHead = 0;
+            }
+        }
+
+        depths.decrementAndGet(getLane(oldest));
+
+        return oldest;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WriteRequest peek() {
+        if ((committedHead == committed.size()) && !selectNext()) {
+            return null;
+        }
+
+        return committed.get(committedHead);
+    }
+
+    /**
+     * Commit the head of the queue, typically because its transmission has started : it will be dequeued by the next
+     * {@link #poll()}, whatever the requests offered meanwhile. The other gathered requests are not dequeued in the
+     * gathering order anymore : they can be overtaken by a request of higher priority.
+     * 
+     * @return the head of the queue, or <code>null</code> if the queue is empty
+     */
+    public WriteRequest commitNext() {
+        WriteRequest head = peek();
+        forgetGathered();
+
+        return head;
+    }
+
+    /**
+     * Look ahead at the next requests to dequeue, without committing them. The requests will be dequeued in the
+     * gathering order by the following {@link #poll()} calls and the next {@link #commitNext()} call, unless the queue
+     * is gathered again, or a request is removed by another way. Only the consumer thread can gather the requests.
+     * 
+     * @param requests the array receiving the requests
+     * @param max the maximum number of requests to gather
+     * @return the number of gathered requests
+     */
+    public int gather(WriteRequest[] requests, int max) {
+        LookAhead lookAhead = new LookAhead();
+        int count = 0;
+
+        gatheredCount = 0;
+        gatheredCursor = 0;
+
+        if (gatheredLanes.length < max) {
+            gatheredLanes = new int[max];
+        }
+
+        while (count < max) {
+            WriteRequest writeRequest = lookAhead.next();
+
+            if (writeRequest == null) {
+                break;
+            }
+
+            if (lookAhead.lane >= 0) {
+                gatheredLanes[gatheredCount++] = lookAhead.lane;
+            }
+
+            requests[count++] = writeRequest;
+        }
+
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(Object o) {
+        for (int i = committedHead; i < committed.size(); i++) {
+            if (committed.get(i).equals(o)) {
+                return true;
+            }
+        }
+
+        for (Queue<WriteRequest> lane : lanes) {
+            if (lane.contains(o)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * Only the consumer thread can remove a request.
+     */
+    @Override
+    public boolean remove(Object o) {
+        for (int i = committedHead; i < committed.size(); i++) {
+            WriteRequest writeRequest = committed.get(i);
+
+            if (writeRequest.equals(o)) {
+                committed.remove(i);
+
+                if (committedHead == committed.size()) {
+                    committed.clear();
+                    committedHead = 0;
+                }
+
+                depths.decrementAndGet(getLane(writeRequest));
+
+                return true;
+            }
+        }
+
+        for (int i = 0; i < lanes.length; i++) {
+            if (lanes[i].remove(o)) {
+                depths.decrementAndGet(i);
+                forgetGathered();
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * Only the consumer thread can clear the queue.
+     */
+    @Override
+    public void clear() {
+        for (int i = committedHead; i < committed.size(); i++) {
+            depths.decrementAndGet(getLane(committed.get(i)));
+        }
+
+        committed.clear();
+        committedHead = 0;
+
+        for (int i = 0; i < lanes.length; i++) {
+            while (lanes[i].poll() != null) {
+                depths.decrementAndGet(i);
+            }
+        }
+
+        forgetGathered();
+        System.arraycopy(WEIGHTS, 0, credits, 0, credits.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        if (committedHead < committed.size()) {
+            return false;
+        }
+
+        for (Queue<WriteRequest> lane : lanes) {
+            if (!lane.isEmpty()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        int size = 0;
+
+        for (int i = 0; i < lanes.length; i++) {
+            size += depths.get(i);
+        }
+
+        return size;
+    }
+
+    /**
+     * The number of pending requests of a given priority
+     * 
+     * @param priority the priority
+     * @return the number of requests of this priority in the queue
+     */
+    public int size(WritePriority priority) {
+        return depths.get(priority.ordinal());
+    }
+
+    /**
+     * The creation time of the oldest request in the queue. Only the head of the queue and the head of each lane are
+     * checked, as the requests of a lane are in creation order.
+     * 
+     * @return the creation time of the oldest request, or <code>-1</code> if the queue is empty
+     */
+    public long getOldestCreationTime() {
+        long oldest = -1L;
+
+        if (committedHead < committed.size()) {
+            oldest = committed.get(committedHead).getCreationTime();
+        }
+
+        for (Queue<WriteRequest> lane : lanes) {
+            WriteRequest writeRequest = lane.peek();
+
+            if ((writeRequest != null) && ((oldest < 0L) || (writeRequest.getCreationTime() < oldest))) {
+                oldest = writeRequest.getCreationTime();
+            }
+        }
+
+        return oldest;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The requests are returned in the order they would be dequeued if no request was offered meanwhile. Nothing is
+     * committed. Only the consumer thread can iterate over the queue, and the requests can't be removed by the
+     * iterator.
+     */
+    @Override
+    public Iterator<WriteRequest> iterator() {
+        return new Iterator<WriteRequest>() {
+            private final LookAhead lookAhead = new LookAhead();
+
+            private WriteRequest next = lookAhead.next();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public WriteRequest next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+
+                WriteRequest writeRequest = next;
+                next = lookAhead.next();
+
+                return writeRequest;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Move the next request to write from its lane to the committed requests. The gathered requests are taken first,
+     * in the gathering order.
+     * 
+     * @return <code>false</code> if all the lanes are empty
+     */
+    private boolean selectNext() {
+        if (gatheredCursor < gatheredCount) {
+            int lane = gatheredLanes[gatheredCursor++];
+
+            if (credits[lane] == 0) {
+                // the look ahead started a new round before taking this request
+                System.arraycopy(WEIGHTS, 0, credits, 0, credits.length);
+            }
+
+            credits[lane]--;
+            committed.add(lanes[lane].poll());
+
+            return true;
+        }
+
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < lanes.length; i++) {
+                if (credits[i] > 0) {
+                    WriteRequest writeRequest = lanes[i].poll();
+
+                    if (writeRequest != null) {
+                        credits[i]--;
+                        committed.add(writeRequest);
+
+                        return true;
+                    }
+                }
+            }
+
+            // the non empty lanes have exhausted their credits : start a new round
+            System.arraycopy(WEIGHTS, 0, credits, 0, credits.length);
+        }
+
+        return false;
+    }
+
+    /**
+     * Forget the gathered requests, when the lanes have been modified by another way than an offer
+     */
+    private void forgetGathered() {
+        gatheredCount = 0;
+        gatheredCursor = 0;
+    }
+
+    /**
+     * Walk through the requests in the order they would be dequeued if no request was offered meanwhile : the
+     * committed requests first, then the lanes, with the weighted round robin. Nothing is committed.
+     */
+    private final class LookAhead {
+        /** The position of the next committed request */
+        private int index = committedHead;
+
+        /** The credits of the lanes in the simulated round */
+        private final int[] roundCredits = credits.clone();
+
+        /** The iterators over the lanes, created when a lane is first reached */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private final Iterator<WriteRequest>[] laneIterators = new Iterator[lanes.length];
+
+        /** The lane of the last returned request, -1 for a committed request */
+        private int lane;
+
+        /**
+         * @return the next request, or <code>null</code> if there is no more request
+         */
+        WriteRequest next() {
+            if (index < committed.size()) {
+                lane = -1;
+
+                return committed.get(index++);
+            }
+
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < lanes.length; i++) {
+                    if (roundCredits[i] > 0) {
+                        if (laneIterators[i] == null) {
+                            laneIterators[i] = lanes[i].iterator();
+                        }
+
+                        if (laneIterators[i].hasNext()) {
+                            roundCredits[i]--;
+                            lane = i;
+
+                            return laneIterators[i].next();
+                        }
+                    }
+                }
+
+                // the non empty lanes have exhausted their credits : start a new round
+                System.arraycopy(WEIGHTS, 0, roundCredits, 0, roundCredits.length);
+            }
+
+            return null;
+        }
+    }
 
-    private static final long serialVersionUID = 1L;
+    private static int getLane(WriteRequest writeRequest) {
+        WritePriority priority = writeRequest.getPriority();
 
+        return priority == null ? WritePriority.NORMAL.ordinal() : priority.ordinal();
+    }
 }
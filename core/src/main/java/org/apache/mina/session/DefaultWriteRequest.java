@@ -22,7 +22,9 @@ package org.apache.mina.session;
 import java.nio.ByteBuffer;
 
 import org.apache.mina.api.IoFuture;
+import org.apache.mina.api.WritePriority;
 import org.apache.mina.util.ByteBufferDumper;
+import org.apache.mina.util.Clock;
 
 /**
  * Default implementation for write requests.
@@ -36,9 +38,21 @@ public class DefaultWriteRequest implements WriteRequest {
     /** The original message (before being processed by the filter chain */
     private Object originalMessage;
 
+    /** Tells if the message is a buffer borrowed from a BufferAllocator */
+    private boolean messagePooled;
+
     /** the future to complete when this message is written */
     private IoFuture<Void> future;
 
+    /** the priority of the message */
+    private WritePriority priority = WritePriority.NORMAL;
+
+    /** the time after which the request is dropped, 0 if it never expires */
+    private long deadline;
+
+    /** the creation time of the request */
+    private final long creationTime = Clock.currentTimeMillis();
+
     /**
      * Creates a new instance of a WriteRequest, storing the message as it was
      * when the IoSession.write() has been called.
@@ -66,6 +80,22 @@ public class DefaultWriteRequest implements WriteRequest {
         this.message = message;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isMessagePooled() {
+        return messagePooled;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setMessagePooled(boolean messagePooled) {
+        this.messagePooled = messagePooled;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -90,6 +120,46 @@ public class DefaultWriteRequest implements WriteRequest {
         return originalMessage;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WritePriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setPriority(WritePriority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCreationTime() {
+        return creationTime;
+    }
+
     /**
      * @see Object#toString()
      */
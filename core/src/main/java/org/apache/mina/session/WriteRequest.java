@@ -20,6 +20,8 @@
 package org.apache.mina.session;
 
 import org.apache.mina.api.IoFuture;
+import org.apache.mina.api.WritePriority;
+import org.apache.mina.buffer.BufferAllocator;
 
 /**
  * The write request created by the {@link org.apache.mina.api.IoSession#write} method, 
@@ -51,6 +53,21 @@ public interface WriteRequest {
      */
     void setMessage(Object message);
 
+    /**
+     * Tells if the stored message is a buffer borrowed from a {@link BufferAllocator}, which has to be released once
+     * the message has been written.
+     * 
+     * @return <code>true</code> if the message is a pooled buffer
+     */
+    boolean isMessagePooled();
+
+    /**
+     * Mark the stored message as a buffer borrowed from a {@link BufferAllocator}
+     * 
+     * @param pooled <code>true</code> if the message is a pooled buffer
+     */
+    void setMessagePooled(boolean pooled);
+
     /**
      * Gets the original message, as written by the handler, before passing through the filter chain.
      * 
@@ -69,4 +86,40 @@ public interface WriteRequest {
      * @param the future
      */
     void setFuture(IoFuture<Void> future);
+
+    /**
+     * The priority of the message : the pending requests are written in priority order.
+     * 
+     * @return the priority of this request
+     */
+    WritePriority getPriority();
+
+    /**
+     * Set the priority of the message
+     * 
+     * @param priority the priority of this request
+     */
+    void setPriority(WritePriority priority);
+
+    /**
+     * The time after which the request is dropped if its transmission has not started yet. Its future is then failed
+     * with a {@link WriteTimeoutException}.
+     * 
+     * @return the deadline in milliseconds, in {@link org.apache.mina.util.Clock} time, or <code>0</code> if the
+     *         request never expires
+     */
+    long getDeadline();
+
+    /**
+     * Set the deadline of the request
+     * 
+     * @param deadline the deadline in milliseconds, in {@link org.apache.mina.util.Clock} time, or <code>0</code> if
+     *        the request never expires
+     */
+    void setDeadline(long deadline);
+
+    /**
+     * @return the time this request has been created, in {@link org.apache.mina.util.Clock} time
+     */
+    long getCreationTime();
 }
\ No newline at end of file
@@ -38,6 +38,7 @@ import org.apache.mina.service.idlechecker.IndexedIdleChecker;
 import org.apache.mina.transport.ConnectFuture;
 import org.apache.mina.transport.udp.AbstractUdpServer;
 import org.apache.mina.transport.udp.UdpSessionConfig;
+import org.apache.mina.util.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -178,11 +179,19 @@ public class BioUdpServer extends AbstractUdpServer {
         public void run() {
             /** 64k receive buffer */
             ByteBuffer rcvdBuffer = ByteBuffer.allocate(64 * 1024);
+
+            // the time is refreshed for each received datagram
+            Clock.startRefreshing();
+
             while (bound) {
                 // I/O !
                 rcvdBuffer.clear();
                 try {
                     SocketAddress from = channel.receive(rcvdBuffer);
+
+                    // no selector loop to refresh the clock here
+                    Clock.update();
+
                     BioUdpSession session = sessions.get(from);
                     if (session == null) {
                         // create the session
@@ -192,7 +201,7 @@ public class BioUdpServer extends AbstractUdpServer {
                                 config.getIdleTimeInMillis(IdleStatus.READ_IDLE));
                         session.getConfig().setIdleTimeInMillis(IdleStatus.WRITE_IDLE,
                                 config.getIdleTimeInMillis(IdleStatus.WRITE_IDLE));
-                        idleChecker.sessionWritten(session, System.currentTimeMillis());
+                        idleChecker.sessionWritten(session, Clock.currentTimeMillis());
                         session.setConnected();
                         
                         // fire open
@@ -202,7 +211,7 @@ public class BioUdpServer extends AbstractUdpServer {
                     rcvdBuffer.flip();
                     session.processMessageReceived(rcvdBuffer);
                     // Update the session idle status
-                    idleChecker.sessionRead(session, System.currentTimeMillis());
+                    idleChecker.sessionRead(session, Clock.currentTimeMillis());
                 } catch (AsynchronousCloseException aec) {
                     LOG.debug("closed service");
                     break;
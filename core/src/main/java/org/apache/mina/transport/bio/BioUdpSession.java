@@ -50,11 +50,9 @@ public class BioUdpSession extends AbstractIoSession {
      * Set this session status as connected. To be called by the processor selecting/polling this session.
      */
     void setConnected() {
-        if (!isCreated()) {
+        if (!compareAndSetState(SessionState.CREATED, SessionState.CONNECTED)) {
             throw new IllegalStateException("Trying to open a non created session");
         }
-
-        state = SessionState.CONNECTED;
         processSessionOpen();
     }
 
@@ -19,23 +19,43 @@
  */
 package org.apache.mina.transport.nio;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.mina.api.FileRegion;
+import org.apache.mina.api.IdleStatus;
 import org.apache.mina.api.IoFuture;
 import org.apache.mina.api.IoService;
 import org.apache.mina.api.IoSession;
+import org.apache.mina.api.WritePriority;
+import org.apache.mina.buffer.BufferAllocator;
+import org.apache.mina.service.executor.ReceiveEvent;
 import org.apache.mina.service.idlechecker.IdleChecker;
+import org.apache.mina.service.slowconsumer.SlowConsumerAction;
+import org.apache.mina.service.slowconsumer.SlowConsumerException;
+import org.apache.mina.service.slowconsumer.SlowConsumerPolicy;
 import org.apache.mina.session.AbstractIoSession;
 import org.apache.mina.session.DefaultWriteFuture;
 import org.apache.mina.session.DefaultWriteQueue;
 import org.apache.mina.session.DefaultWriteRequest;
 import org.apache.mina.session.WriteRequest;
+import org.apache.mina.session.WriteTimeoutException;
 import org.apache.mina.util.AbstractIoFuture;
+import org.apache.mina.util.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,18 +71,132 @@ public abstract class AbstractNioSession extends AbstractIoSession {
     // A speedup for logs
     private static final boolean IS_DEBUG = LOG.isDebugEnabled();
 
+    /** The maximum number of queued buffers pushed into the channel by a single gathering write */
+    private static final int MAX_GATHERED_BUFFERS = 64;
+
+    /** The maximum number of bytes we try to push into the channel by a single gathering write */
+    private static final int MAX_GATHERED_BYTES = 256 * 1024;
+
+    /** The size of the chunks read from a file region sent over SSL/TLS */
+    private static final int FILE_REGION_CHUNK_SIZE = 16 * 1024;
+
+    /** The array of buffers used by the selector thread for gathering writes */
+    private static final ThreadLocal<ByteBuffer[]> GATHERED_BUFFERS = new ThreadLocal<ByteBuffer[]>() {
+        @Override
+        protected ByteBuffer[] initialValue() {
+            return new ByteBuffer[MAX_GATHERED_BUFFERS];
+        }
+    };
+
+    /** The array of requests looked ahead by the selector thread for gathering writes */
+    private static final ThreadLocal<WriteRequest[]> GATHERED_REQUESTS = new ThreadLocal<WriteRequest[]>() {
+        @Override
+        protected WriteRequest[] initialValue() {
+            return new WriteRequest[MAX_GATHERED_BUFFERS];
+        }
+    };
+
     /** the NIO channel for this session */
     protected final SelectableChannel channel;
 
+    /** the allocator of the direct buffers written in the channel */
+    protected final BufferAllocator bufferAllocator;
+
     /** is this session registered for being polled for write ready events */
     private final AtomicBoolean registeredForWrite = new AtomicBoolean();
 
     /** the queue of pending writes for the session, to be dequeued by the {@link SelectorLoop} */
-    private final Queue<WriteRequest> writeQueue = new DefaultWriteQueue();
+    private final DefaultWriteQueue writeQueue = new DefaultWriteQueue();
+
+    /** the number of bytes pending in the write queue */
+    private final AtomicLong writeQueueBytes = new AtomicLong();
+
+    /** is the write queue below its high watermark */
+    private final AtomicBoolean writable = new AtomicBoolean(true);
+
+    /** the write requests submitted by other threads than the selector loop one, waiting to be handled by the loop */
+    private final Queue<WriteRequest> crossThreadWriteQueue = new ConcurrentLinkedQueue<WriteRequest>();
+
+    /** is a flush of the cross thread write requests scheduled in the selector loop */
+    private final AtomicBoolean crossThreadFlushScheduled = new AtomicBoolean();
+
+    /** the task flushing the cross thread write requests, executed by the selector loop */
+    private final Runnable crossThreadFlusher = new Runnable() {
+        @Override
+        public void run() {
+            flushCrossThreadWrites();
+        }
+    };
+
+    /** is a flush of the staged writes scheduled at the end of the selector loop iteration (loop thread only) */
+    private boolean stagedFlushScheduled;
+
+    /** the aggregation buffer at the tail of the write queue, still accepting small messages (loop thread only) */
+    private CoalescedWriteRequest openCoalescedWrite;
+
+    /** the task flushing the writes staged during a selector loop iteration */
+    private final Runnable stagedWritesFlusher = new Runnable() {
+        @Override
+        public void run() {
+            stagedFlushScheduled = false;
+            flushStagedWrites();
+        }
+    };
+
+    /** the request at the head of the write queue which transmission has started : it can't expire anymore */
+    private volatile WriteRequest startedWriteRequest;
+
+    /** is a check of the age of the queued write requests scheduled in the selector loop */
+    private final AtomicBoolean writeAgeCheckScheduled = new AtomicBoolean();
+
+    /** the task checking the age of the queued write requests */
+    private final Runnable writeAgeChecker = new Runnable() {
+        @Override
+        public void run() {
+            checkWriteQueueAge();
+        }
+    };
+
+    /** the task closing a secured session which queued record has expired */
+    private final Runnable expiredSessionCloser = new Runnable() {
+        @Override
+        public void run() {
+            if (!isClosing() && !isClosed()) {
+                close(true);
+            }
+        }
+    };
+
+    /** are the new write requests rejected, because the session is a slow consumer */
+    private volatile boolean rejectingWrites;
+
+    /** is a check of the slow consumer policy scheduled in the selector loop */
+    private final AtomicBoolean slowConsumerCheckScheduled = new AtomicBoolean();
+
+    /** the task applying the slow consumer policy */
+    private final Runnable slowConsumerChecker = new Runnable() {
+        @Override
+        public void run() {
+            checkSlowConsumer();
+        }
+    };
+
+    /** the task executed by the selector loop when another thread flushes the session */
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!crossThreadWriteQueue.isEmpty()) {
+                flushCrossThreadWrites();
+            }
+
+            flushStagedWrites();
+        }
+    };
 
     public AbstractNioSession(IoService service, SelectableChannel channel, IdleChecker idleChecker) {
         super(service, idleChecker);
         this.channel = channel;
+        this.bufferAllocator = service.getBufferAllocator();
     }
 
     /**
@@ -74,13 +208,26 @@ public abstract class AbstractNioSession extends AbstractIoSession {
     protected abstract int writeDirect(Object message);
 
     /**
-     * Copy the HeapBuffer into a DirectBuffer, if needed.
+     * Copy the HeapBuffer into a DirectBuffer, if needed. The DirectBuffer is borrowed from the session
+     * {@link BufferAllocator}, and will be released once written.
      * 
      * @param writeRequest The request containing the HeapBuffer
-     * @param createNew A flag to force the creation of a DirectBuffer
      * @return A DirectBuffer
      */
-    protected abstract ByteBuffer convertToDirectBuffer(WriteRequest writeRequest, boolean createNew);
+    protected abstract ByteBuffer convertToDirectBuffer(WriteRequest writeRequest);
+
+    /**
+     * Give back the pooled buffer of a write request to the {@link BufferAllocator}, once the request has been
+     * completely written.
+     * 
+     * @param writeRequest The written request
+     */
+    protected void releaseWriteRequest(WriteRequest writeRequest) {
+        if (writeRequest.isMessagePooled()) {
+            writeRequest.setMessagePooled(false);
+            bufferAllocator.release((ByteBuffer) writeRequest.getMessage());
+        }
+    }
 
     // ------------------------------------------------------------------------
     // Close session management
@@ -109,8 +256,19 @@ public abstract class AbstractNioSession extends AbstractIoSession {
             LOG.error("Session {} not opened", this);
             throw new IllegalStateException("cannot close an not opened session");
         case CONNECTED:
-            state = SessionState.CLOSING;
+            if (!compareAndSetState(SessionState.CONNECTED, SessionState.CLOSING)) {
+                // the state has been concurrently modified
+                return close(immediately);
+            }
+
             if (immediately) {
+                SelectorLoop selectorLoop = getSelectorLoop();
+
+                if (isWriteStagingSupported() && (selectorLoop != null) && selectorLoop.inEventLoop()) {
+                    // the staged messages were written before the close
+                    flushStagedWrites();
+                }
+
                 channelClose();
                 processSessionClosed();
             } else {
@@ -137,8 +295,115 @@ public abstract class AbstractNioSession extends AbstractIoSession {
      */
     protected abstract void channelClose();
 
+    /**
+     * The selector loop owning the channel of this session. The write requests submitted by other threads are handed
+     * to this loop, so that the channel and the write queue are only accessed by the loop thread.
+     * 
+     * @return the selector loop, or <code>null</code> if the session has no loop of its own : the requests are then
+     *         processed by the writing thread
+     */
+    protected SelectorLoop getSelectorLoop() {
+        return null;
+    }
+
+    /**
+     * Tells if the buffers written to this session are staged in the write queue until the session is flushed, instead
+     * of being written immediately. Staging is only possible for the sessions having a selector loop of their own.
+     * 
+     * @return <code>true</code> if the writes are staged
+     */
+    protected boolean isWriteStagingSupported() {
+        return false;
+    }
+
+    /**
+     * The size below which the staged buffers are copied into a pooled aggregation buffer, so that many small messages
+     * are pushed into the channel as a single buffer.
+     * 
+     * @return the coalescing threshold in bytes, or <code>-1</code> if the writes are not coalesced
+     */
+    protected int getWriteCoalescingThreshold() {
+        return -1;
+    }
+
+    /**
+     * The maximum time the staged writes are held before being flushed. When the auto-cork mode is enabled, the staged
+     * writes are not flushed at the end of the selector loop iteration, but after this delay, unless the held bytes
+     * reach the {@link #getAutoCorkThreshold()}.
+     * 
+     * @return the auto-cork delay in microseconds, or <code>-1</code> if the auto-cork mode is disabled
+     */
+    protected int getAutoCorkDelay() {
+        return -1;
+    }
+
+    /**
+     * The number of held bytes which triggers the flush of the auto-corked writes.
+     * 
+     * @return the auto-cork threshold in bytes, or <code>-1</code> if only the delay triggers the flush
+     */
+    protected int getAutoCorkThreshold() {
+        return -1;
+    }
+
+    /**
+     * The maximum time a write request can stay queued : the session is closed if its oldest queued request is older.
+     * 
+     * @return the maximum age of the queued write requests in milliseconds, or <code>-1</code> for no limit
+     */
+    protected int getMaxWriteQueueAge() {
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The staged writes are pushed into the channel immediately when called from the selector loop thread, otherwise
+     * the flush is handed to the loop, after the requests already written by the calling thread.
+     */
+    @Override
+    public void flush() {
+        SelectorLoop selectorLoop = getSelectorLoop();
+
+        if ((selectorLoop == null) || !isWriteStagingSupported()) {
+            // the writes are not staged
+            return;
+        }
+
+        if (selectorLoop.inEventLoop()) {
+            flushStagedWrites();
+        } else {
+            selectorLoop.execute(flushTask);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The idle checker is run by whichever selector loop advances its timing wheel, so the idle events are handed to
+     * the loop of the session : all the events of a session are fired by the same thread.
+     */
+    @Override
+    public void processSessionIdle(final IdleStatus status) {
+        SelectorLoop selectorLoop = getSelectorLoop();
+
+        if ((selectorLoop == null) || selectorLoop.inEventLoop()) {
+            super.processSessionIdle(status);
+        } else {
+            selectorLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    AbstractNioSession.super.processSessionIdle(status);
+                }
+            });
+        }
+    }
+
     /**
      * {@inheritDoc}
+     * 
+     * The requests written from the selector loop thread are processed immediately. The requests written by other
+     * threads are pushed in a lock-free queue, which is flushed in a batch by the selector loop, with a single wakeup.
      */
     @Override
     public WriteRequest enqueueWriteRequest(WriteRequest writeRequest) {
@@ -146,201 +411,1096 @@ public abstract class AbstractNioSession extends AbstractIoSession {
             LOG.debug("enqueueWriteRequest {}", writeRequest);
         }
 
-        if (isConnectedSecured()) {
-            // SSL/TLS : we have to encrypt the message
-            SslHelper sslHelper = getAttribute(SSL_HELPER, null);
+        if ((writeRequest.getMessage() instanceof FileRegion) && !(channel instanceof SocketChannel)) {
+            throw new IllegalStateException("a file region can only be written into a TCP session");
+        }
+
+        if (rejectingWrites) {
+            dropWriteRequest(getService().getSlowConsumerPolicy(), writeRequest);
+
+            return writeRequest;
+        }
+
+        SelectorLoop selectorLoop = getSelectorLoop();
+
+        if ((selectorLoop != null) && !selectorLoop.inEventLoop()) {
+            if (ReceiveEvent.isLent(writeRequest.getMessage())) {
+                // the received buffer is given back to the allocator once the handler returns, before the loop
+                // processes the request
+                copyToPooledBuffer(writeRequest);
+            }
 
-            if (sslHelper == null) {
-                throw new IllegalStateException();
+            // the pending bytes are accounted now, so that the watermarks take them into account
+            writeQueueGrown(getPendingBytes(writeRequest));
+            crossThreadWriteQueue.add(writeRequest);
+
+            if (crossThreadFlushScheduled.compareAndSet(false, true)) {
+                selectorLoop.execute(crossThreadFlusher);
             }
 
-            writeRequest = sslHelper.processWrite(this, writeRequest.getMessage(), writeQueue);
+            return writeRequest;
         }
 
-        /*synchronized (writeQueue)*/{
-            ByteBuffer message = (ByteBuffer) writeRequest.getMessage();
+        if (!crossThreadWriteQueue.isEmpty()) {
+            // the requests submitted before by other threads must be processed first
+            flushCrossThreadWrites();
+        }
 
-            if (writeQueue.isEmpty()) {
-                // Transfer the buffer in a DirectByteBuffer if it's a HeapByteBuffer and if it's too big
-                message = convertToDirectBuffer(writeRequest, false);
+        processWriteRequest(writeRequest);
 
-                // We don't have anything in the writeQueue, let's try to write the
-                // data in the channel immediately if we can
-                int written = writeDirect(writeRequest.getMessage());
+        return writeRequest;
+    }
 
-                if (IS_DEBUG) {
-                    LOG.debug("wrote {} bytes to {}", written, this);
-                }
+    /**
+     * Process the write requests submitted by other threads. Called by the selector loop.
+     */
+    private void flushCrossThreadWrites() {
+        // reset the flag first : a request added from now on will schedule a new flush
+        crossThreadFlushScheduled.set(false);
 
-                if (written > 0) {
-                    incrementWrittenBytes(written);
-                }
+        WriteRequest writeRequest;
+        boolean flushed = false;
 
-                // Update the idle status for this session
-                idleChecker.sessionWritten(this, System.currentTimeMillis());
-                int remaining = message.remaining();
+        while ((writeRequest = crossThreadWriteQueue.poll()) != null) {
+            // the request will be accounted again if it's pushed in the write queue
+            writeQueueBytes.addAndGet(-getPendingBytes(writeRequest));
+            processWriteRequest(writeRequest);
+            flushed = true;
+        }
 
-                if ((written < 0) || (remaining > 0)) {
-                    // Create a DirectBuffer unconditionally
-                    convertToDirectBuffer(writeRequest, true);
+        if (flushed) {
+            // some requests may have been fully written : check the low watermark
+            writeQueueShrunk(0L);
+        }
+    }
 
-                    // We have to push the request on the writeQueue
-                    writeQueue.add(writeRequest);
+    /**
+     * @return the number of bytes to write for a request
+     */
+    private static long getPendingBytes(WriteRequest writeRequest) {
+        Object message = writeRequest.getMessage();
 
-                    // If it wasn't, we register this session as interested to write.
-                    // It's done in atomic fashion for avoiding two concurrent registering.
-                    if (!registeredForWrite.getAndSet(true)) {
-                        flushWriteQueue();
-                    }
-                } else {
-                    // The message has been fully written : update the stats, and signal the handler
-                    // generate the message sent event
-                    // complete the future if we have one (we should...)
-                    final DefaultWriteFuture future = (DefaultWriteFuture) writeRequest.getFuture();
+        if (message instanceof ByteBuffer) {
+            return ((ByteBuffer) message).remaining();
+        } else if (message instanceof FileRegion) {
+            return ((FileRegion) message).getRemainingBytes();
+        }
 
-                    if (future != null) {
-                        future.complete();
-                    }
+        return 0L;
+    }
 
-                    final Object highLevel = ((DefaultWriteRequest) writeRequest).getOriginalMessage();
+    /**
+     * Process a write request in the selector loop thread (or the writing thread for the sessions without loop) :
+     * write it immediately if nothing is pending, or push it in the write queue.
+     */
+    private void processWriteRequest(WriteRequest writeRequest) {
+        if (getAttribute(SSL_HELPER, null) != null) {
+            // the SSL/TLS records must be sent in the order they are produced
+            writeRequest.setPriority(WritePriority.NORMAL);
+        }
 
-                    if (highLevel != null) {
-                        processMessageSent(highLevel);
-                    }
-                }
+        if (writeRequest.getMessage() instanceof FileRegion) {
+            if (isEncrypting()) {
+                enqueueSecuredFileRegion(writeRequest);
             } else {
-                // Transfer the buffer in a DirectByteBuffer if it's a HeapByteBuffer
-                message = convertToDirectBuffer(writeRequest, true);
-
-                // We have to push the request on the writeQueue
-                writeQueue.add(writeRequest);
+                enqueueFileRegion(writeRequest);
             }
+
+            return;
         }
 
-        return writeRequest;
-    }
+        if (isEncrypting()) {
+            // SSL/TLS : we have to encrypt the message
+            ByteBuffer encrypted = getSslHelper().processWrite(this, (ByteBuffer) writeRequest.getMessage());
+            writeRequest.setMessage(encrypted);
+            writeRequest.setMessagePooled(true);
+        }
 
-    public abstract void flushWriteQueue();
+        writeBuffer(writeRequest);
+    }
 
-    public void setNotRegisteredForWrite() {
-        registeredForWrite.set(false);
+    /**
+     * Stage a buffer until the session is flushed if possible, otherwise write it immediately or queue it
+     */
+    private void writeBuffer(WriteRequest writeRequest) {
+        if (isWriteStagingSupported() && (getSelectorLoop() != null)) {
+            stageBuffer(writeRequest);
+        } else {
+            enqueueBuffer(writeRequest);
+        }
     }
 
-    protected boolean isRegisteredForWrite() {
-        return registeredForWrite.get();
+    /**
+     * Stage a buffer in the write queue, coalescing it with the previous ones if it's small enough. The staged writes
+     * are flushed at the end of the current selector loop iteration, unless the session is flushed before.
+     */
+    private void stageBuffer(WriteRequest writeRequest) {
+        ByteBuffer message = (ByteBuffer) writeRequest.getMessage();
+        int threshold = getWriteCoalescingThreshold();
+        int size = message.remaining();
+
+        if ((threshold > 0) && (size < threshold)) {
+            if ((openCoalescedWrite == null) || (openCoalescedWrite.getBuffer().remaining() < size)
+                    || (openCoalescedWrite.getPriority() != writeRequest.getPriority())) {
+                // start a new aggregation buffer, in the lane of the request
+                sealCoalescedWrites();
+                openCoalescedWrite = new CoalescedWriteRequest(bufferAllocator.allocate(threshold));
+                openCoalescedWrite.setPriority(writeRequest.getPriority());
+                writeQueue.add(openCoalescedWrite);
+            }
+
+            openCoalescedWrite.getBuffer().put(message);
+            openCoalescedWrite.add(writeRequest);
+
+            // the content has been copied, the request buffer is not needed anymore
+            releaseWriteRequest(writeRequest);
+            writeQueueGrown(size);
+
+            if (!openCoalescedWrite.getBuffer().hasRemaining()) {
+                // the aggregation buffer is full : no need to wait for the end of the loop iteration
+                flushStagedWrites();
+
+                return;
+            }
+        } else {
+            sealCoalescedWrites();
+
+            // The staged request is written once write() has returned : the caller may have reused its buffer by
+            // then (e.g. the selector loop read buffer echoed by a handler), so we keep a copy of it
+            message = copyToPooledBuffer(writeRequest);
+            writeQueue.add(writeRequest);
+            writeQueueGrown(message.remaining());
+        }
+
+        scheduleStagedFlush();
     }
 
     /**
-     * Get the {@link Queue} of this session. The write queue contains the pending writes.
+     * Copy the message of a request into a pooled buffer, unless it's already one
      * 
-     * @return the write queue of this session
+     * @return the pooled buffer
      */
-    public Queue<WriteRequest> getWriteQueue() {
-        return writeQueue;
+    private ByteBuffer copyToPooledBuffer(WriteRequest writeRequest) {
+        ByteBuffer message = (ByteBuffer) writeRequest.getMessage();
+
+        if (writeRequest.isMessagePooled()) {
+            return message;
+        }
+
+        ByteBuffer copy = bufferAllocator.allocate(message.remaining());
+        copy.put(message);
+        copy.flip();
+        writeRequest.setMessage(copy);
+        writeRequest.setMessagePooled(true);
+
+        return copy;
     }
 
     /**
-     * Process a write operation. This will be executed only because the session has something to write into the
-     * channel.
+     * Make sure the staged writes will be flushed even if the handler never flushes the session : at the end of the
+     * selector loop iteration, or once the auto-cork delay has elapsed.
      */
-    public void processWrite(SelectorLoop selectorLoop) {
-        try {
-            if (IS_DEBUG) {
-                LOG.debug("ready for write");
-                LOG.debug("writable session : {}", this);
+    private void scheduleStagedFlush() {
+        int corkDelay = getAutoCorkDelay();
+
+        if (corkDelay > 0) {
+            int corkThreshold = getAutoCorkThreshold();
+
+            if ((corkThreshold > 0) && (writeQueueBytes.get() >= corkThreshold)) {
+                // enough bytes are held to fill some packets, don't wait anymore
+                flushStagedWrites();
+
+                return;
             }
+        }
 
-            do {
-                // get a write request from the queue. We left it in the queue,
-                // just in case we can't write all of the message content into
-                // the channel : we will have to retrieve the message later
-                final WriteRequest writeRequest = writeQueue.peek();
+        if (!stagedFlushScheduled) {
+            stagedFlushScheduled = true;
 
-                if (writeRequest == null) {
-                    // Nothing to write : we are done
-                    break;
-                }
+            if (corkDelay > 0) {
+                // the writes staged until then are flushed by this same task, so they are held less than the delay
+                getSelectorLoop().schedule(stagedWritesFlusher, corkDelay, TimeUnit.MICROSECONDS);
+            } else {
+                getSelectorLoop().executeLater(stagedWritesFlusher);
+            }
+        }
+    }
 
-                // The message is necessarily a ByteBuffer at this point
-                ByteBuffer buf = (ByteBuffer) writeRequest.getMessage();
+    /**
+     * Close the aggregation buffer at the tail of the write queue, so that it can be written into the channel
+     */
+    private void sealCoalescedWrites() {
+        if (openCoalescedWrite != null) {
+            openCoalescedWrite.getBuffer().flip();
+            openCoalescedWrite = null;
+        }
+    }
 
-                // Note that if the connection is secured, the buffer
-                // already contains encrypted data.
+    /**
+     * Push the staged writes into the channel. Called by the selector loop thread. What can't be written now is left in
+     * the write queue, and the session is registered for write.
+     */
+    private void flushStagedWrites() {
+        sealCoalescedWrites();
 
-                // Try to write the data, and get back the number of bytes
-                // actually written
-                int written = ((SocketChannel) channel).write(buf);
+        if (writeQueue.isEmpty() || isRegisteredForWrite() || !channel.isOpen()) {
+            // nothing to write, or the session is already waiting for the channel to be writable
+            return;
+        }
 
-                if (IS_DEBUG) {
-                    LOG.debug("wrote {} bytes to {}", written, this);
-                }
+        try {
+            writeQueuedRequests(getSelectorLoop().getBudget());
+        } catch (IOException e) {
+            LOG.error("Exception while writing : ", e);
+            processException(e);
 
-                if (written > 0) {
-                    incrementWrittenBytes(written);
-                }
+            return;
+        }
 
-                // Update the idle status for this session
-                idleChecker.sessionWritten(this, System.currentTimeMillis());
+        if (!writeQueue.isEmpty() && !registeredForWrite.getAndSet(true)) {
+            // the socket buffer is full, or the budget is exhausted
+            flushWriteQueue();
+        }
+    }
 
-                // Ok, we may not have written everything. Check that.
-                if (buf.remaining() == 0) {
-                    // completed write request, let's remove it (we use poll() instead
-                    // of remove(), because remove() may throw an exception if the
-                    // queue is empty.
-                    writeQueue.poll();
+    /**
+     * @return <code>true</code> if the written messages have to be encrypted : the SSL/TLS handshake is finished. The
+     *         handshake records are queued as they are, they are already encrypted.
+     */
+    private boolean isEncrypting() {
+        SslHelper sslHelper = getAttribute(SSL_HELPER, null);
 
-                    // complete the future if we have one (we should...)
-                    final DefaultWriteFuture future = (DefaultWriteFuture) writeRequest.getFuture();
+        return (sslHelper != null) && sslHelper.isHandshakeFinished();
+    }
 
-                    if (future != null) {
-                        future.complete();
-                    }
+    private SslHelper getSslHelper() {
+        SslHelper sslHelper = getAttribute(SSL_HELPER, null);
 
-                    // generate the message sent event
-                    final Object highLevel = ((DefaultWriteRequest) writeRequest).getOriginalMessage();
+        if (sslHelper == null) {
+            throw new IllegalStateException();
+        }
 
-                    if (highLevel != null) {
-                        processMessageSent(highLevel);
-                    }
-                } else {
-                    // output socket buffer is full, we need
-                    // to give up until next selection for
-                    // writing.
-                    break;
-                }
-            } while (!writeQueue.isEmpty());
-
-            // We may have exited from the loop for some other reason
-            // that an empty queue
-            // if the session is no more interested in writing, we need
-            // to stop listening for OP_WRITE events
-            //
-            // IMPORTANT : this section is synchronized so that the OP_WRITE flag
-            // can be set safely by both the selector thread and the writer thread.
-            synchronized (writeQueue) {
-                if (writeQueue.isEmpty()) {
-                    if (isClosing()) {
-                        if (IS_DEBUG) {
-                            LOG.debug("closing session {} have empty write queue, so we close it", this);
-                        }
+        return sslHelper;
+    }
+
+    /**
+     * Write a buffer immediately if nothing is pending, or push it in the write queue
+     */
+    private void enqueueBuffer(WriteRequest writeRequest) {
+        // no lock needed : the write queue is only accessed by the selector loop thread, except for the sessions
+        // without loop of their own
+        ByteBuffer message = (ByteBuffer) writeRequest.getMessage();
 
-                        // we was flushing writes, now we to the close
-                        channelClose();
-                    } else {
-                        // no more write event needed
-                        selectorLoop.modifyRegistration(false, !isReadSuspended(), false, (SelectorListener) this,
-                                channel, false);
+        if (writeQueue.isEmpty()) {
+            // Transfer the buffer in a DirectByteBuffer if it's a HeapByteBuffer
+            message = convertToDirectBuffer(writeRequest);
 
-                        // Reset the flag in IoSession too
-                        setNotRegisteredForWrite();
-                    }
-                }
-                // if the queue is not empty, that means we have some more data to write : 
-                // the channel OP_WRITE interest remains as it was.
+            // We don't have anything in the writeQueue, let's try to write the
+            // data in the channel immediately if we can
+            int written = writeDirect(writeRequest.getMessage());
+
+            if (IS_DEBUG) {
+                LOG.debug("wrote {} bytes to {}", written, this);
             }
-        } catch (final IOException e) {
-            LOG.error("Exception while writing : ", e);
-            processException(e);
+
+            if (written > 0) {
+                incrementWrittenBytes(written);
+            }
+
+            // Update the idle status for this session
+            idleChecker.sessionWritten(this, Clock.currentTimeMillis());
+            int remaining = message.remaining();
+
+            if ((written < 0) || (remaining > 0)) {
+                // We have to push the request on the writeQueue
+                queueWriteRequest(writeRequest, remaining, written > 0);
+            } else {
+                // The message has been fully written : update the stats, and signal the handler
+                completeWriteRequest(writeRequest);
+            }
+        } else {
+            // Transfer the buffer in a DirectByteBuffer if it's a HeapByteBuffer
+            message = convertToDirectBuffer(writeRequest);
+
+            // We have to push the request on the writeQueue
+            sealCoalescedWrites();
+            writeQueue.add(writeRequest);
+            writeQueueGrown(message.remaining());
+        }
+    }
+
+    /**
+     * Push a request at the end of the write queue, and register the session for write if needed
+     * 
+     * @param started <code>true</code> if the request has been partially written
+     */
+    private void queueWriteRequest(WriteRequest writeRequest, long bytes, boolean started) {
+        sealCoalescedWrites();
+
+        if (started) {
+            // the remaining bytes must be written before any other request, whatever its priority
+            startedWriteRequest = writeRequest;
+            writeQueue.commit(writeRequest);
+        } else {
+            writeQueue.add(writeRequest);
+        }
+
+        writeQueueGrown(bytes);
+
+        // If it wasn't, we register this session as interested to write.
+        // It's done in atomic fashion for avoiding two concurrent registering.
+        if (!registeredForWrite.getAndSet(true)) {
+            flushWriteQueue();
+        }
+    }
+
+    /**
+     * A file region is always transferred by the selector loop : we queue it and register for write.
+     */
+    private void enqueueFileRegion(WriteRequest writeRequest) {
+        FileRegion region = (FileRegion) writeRequest.getMessage();
+
+        queueWriteRequest(writeRequest, region.getRemainingBytes(), false);
+    }
+
+    /**
+     * The content of a file region sent over SSL/TLS has to be encrypted, so we can't use a zero-copy transfer : the
+     * file is read in pooled buffers which are encrypted and queued one after the other. They must be encrypted now,
+     * as the SSL/TLS records have to be sent in the order they are produced.
+     */
+    private void enqueueSecuredFileRegion(WriteRequest writeRequest) {
+        FileRegion region = (FileRegion) writeRequest.getMessage();
+        SslHelper sslHelper = getSslHelper();
+
+        try {
+            do {
+                int chunkSize = (int) Math.min(region.getRemainingBytes(), FILE_REGION_CHUNK_SIZE);
+                ByteBuffer chunk = bufferAllocator.allocate(chunkSize);
+                ByteBuffer encrypted;
+
+                try {
+                    chunk.limit(chunkSize);
+
+                    while (chunk.hasRemaining()) {
+                        int read = region.getFileChannel().read(chunk, region.getPosition() + chunk.position());
+
+                        if (read < 0) {
+                            throw new EOFException("the file region goes beyond the end of the file");
+                        }
+                    }
+
+                    chunk.flip();
+                    encrypted = sslHelper.processWrite(this, chunk);
+                } finally {
+                    bufferAllocator.release(chunk);
+                }
+
+                region.update(chunkSize);
+
+                if (region.getRemainingBytes() > 0) {
+                    // an intermediate chunk, without any future nor sent event
+                    WriteRequest chunkRequest = new DefaultWriteRequest(null);
+                    chunkRequest.setMessage(encrypted);
+                    chunkRequest.setMessagePooled(true);
+                    writeBuffer(chunkRequest);
+                } else {
+                    // the last chunk completes the original request
+                    writeRequest.setMessage(encrypted);
+                    writeRequest.setMessagePooled(true);
+                    writeBuffer(writeRequest);
+                }
+            } while (region.getRemainingBytes() > 0);
+        } catch (IOException e) {
+            LOG.error("Exception while reading the file region : ", e);
+            failWriteRequest(writeRequest, e);
+        }
+    }
+
+    /**
+     * A request has been completely written : release its buffer, complete its future and fire the message sent event
+     */
+    private void completeWriteRequest(WriteRequest writeRequest) {
+        releaseWriteRequest(writeRequest);
+
+        if (writeRequest == startedWriteRequest) {
+            startedWriteRequest = null;
+        }
+
+        if (writeRequest instanceof CoalescedWriteRequest) {
+            // complete the coalesced requests, in the order they were written
+            for (WriteRequest coalesced : ((CoalescedWriteRequest) writeRequest).getRequests()) {
+                completeWriteRequest(coalesced);
+            }
+
+            return;
+        }
+
+        // complete the future if we have one (we should...)
+        final DefaultWriteFuture future = (DefaultWriteFuture) writeRequest.getFuture();
+
+        if (future != null) {
+            future.complete();
+        }
+
+        // generate the message sent event
+        final Object highLevel = writeRequest.getOriginalMessage();
+
+        if (highLevel != null) {
+            processMessageSent(highLevel);
+        }
+    }
+
+    /**
+     * A request can't be written : release its buffer, fail its future and signal the exception
+     */
+    private void failWriteRequest(WriteRequest writeRequest, Exception cause) {
+        releaseWriteRequest(writeRequest);
+
+        if (writeRequest == startedWriteRequest) {
+            startedWriteRequest = null;
+        }
+
+        failFutures(writeRequest, cause);
+        processException(cause);
+    }
+
+    /**
+     * Fail the future of a request, or the futures of the coalesced requests
+     */
+    private static void failFutures(WriteRequest writeRequest, Exception cause) {
+        if (writeRequest instanceof CoalescedWriteRequest) {
+            for (WriteRequest coalesced : ((CoalescedWriteRequest) writeRequest).getRequests()) {
+                failFutures(coalesced, cause);
+            }
+
+            return;
+        }
+
+        final DefaultWriteFuture future = (DefaultWriteFuture) writeRequest.getFuture();
+
+        if (future != null) {
+            future.error(cause);
+        }
+    }
+
+    /**
+     * Tells if the deadline of a request has been reached
+     */
+    private static boolean isExpired(WriteRequest writeRequest, long now) {
+        long deadline = writeRequest.getDeadline();
+
+        return (deadline > 0L) && (now >= deadline);
+    }
+
+    /**
+     * Drop the expired requests at the head of the write queue, unless their transmission has started. The queued
+     * SSL/TLS records can't be skipped : a secured session with an expired request is closed instead, once the
+     * current selector loop iteration is done.
+     * 
+     * @return <code>true</code> if the session is going to be closed, so nothing must be written anymore
+     */
+    private boolean expireWriteRequests() {
+        long now = Clock.currentTimeMillis();
+        WriteRequest writeRequest;
+
+        while (((writeRequest = writeQueue.peek()) != null) && (writeRequest != startedWriteRequest)
+                && isExpired(writeRequest, now)) {
+            if (getAttribute(SSL_HELPER, null) != null) {
+                LOG.warn("the write request {} of the secured session {} has expired, closing the session",
+                        writeRequest, this);
+                getSelectorLoop().executeLater(expiredSessionCloser);
+
+                return true;
+            }
+
+            writeQueue.poll();
+            writeQueueShrunk(getPendingBytes(writeRequest));
+            expireWriteRequest(writeRequest);
+        }
+
+        return false;
+    }
+
+    /**
+     * A request has expired before being written : release its buffer and fail its future
+     */
+    private void expireWriteRequest(WriteRequest writeRequest) {
+        if (IS_DEBUG) {
+            LOG.debug("dropping the expired request {} of session {}", writeRequest, this);
+        }
+
+        releaseWriteRequest(writeRequest);
+
+        failFutures(writeRequest, new WriteTimeoutException("the write request has not been sent before "
+                + writeRequest.getDeadline()));
+    }
+
+    /**
+     * Schedule a check of the age of the queued requests, if none is pending
+     */
+    private void scheduleWriteAgeCheck(long delay) {
+        SelectorLoop selectorLoop = getSelectorLoop();
+
+        if ((selectorLoop != null) && writeAgeCheckScheduled.compareAndSet(false, true)) {
+            selectorLoop.schedule(writeAgeChecker, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Close the session if its oldest queued write request is older than the maximum age, otherwise check again when
+     * it will reach this age. Called by the selector loop.
+     */
+    private void checkWriteQueueAge() {
+        writeAgeCheckScheduled.set(false);
+
+        int maxAge = getMaxWriteQueueAge();
+
+        if ((maxAge <= 0) || isClosing() || isClosed()) {
+            return;
+        }
+
+        long oldest = writeQueue.getOldestCreationTime();
+        WriteRequest crossThreadHead = crossThreadWriteQueue.peek();
+
+        if ((crossThreadHead != null) && ((oldest < 0L) || (crossThreadHead.getCreationTime() < oldest))) {
+            oldest = crossThreadHead.getCreationTime();
+        }
+
+        if (oldest < 0L) {
+            // nothing is queued : the next queued request will schedule a new check
+            return;
+        }
+
+        long age = Clock.currentTimeMillis() - oldest;
+
+        if (age >= maxAge) {
+            LOG.warn("the oldest write request of session {} has been queued for {} ms, closing the session", this, age);
+            close(true);
+        } else {
+            scheduleWriteAgeCheck(maxAge - age);
+        }
+    }
+
+    /**
+     * Schedule a check of the slow consumer policy, if none is pending
+     */
+    private void scheduleSlowConsumerCheck(long delay) {
+        SelectorLoop selectorLoop = getSelectorLoop();
+
+        if ((selectorLoop != null) && slowConsumerCheckScheduled.compareAndSet(false, true)) {
+            selectorLoop.schedule(slowConsumerChecker, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Apply the slow consumer policy if the session still has too many pending bytes, and check again later until the
+     * session is back under the limit. Called by the selector loop.
+     */
+    private void checkSlowConsumer() {
+        slowConsumerCheckScheduled.set(false);
+
+        SlowConsumerPolicy policy = getService().getSlowConsumerPolicy();
+
+        if ((policy == null) || isClosing() || isClosed()) {
+            rejectingWrites = false;
+
+            return;
+        }
+
+        if (!crossThreadWriteQueue.isEmpty()) {
+            // the requests submitted by other threads can be dropped too
+            flushCrossThreadWrites();
+        }
+
+        long pending = writeQueueBytes.get();
+
+        if (pending <= policy.getMaxPendingBytes()) {
+            // the peer has caught up
+            rejectingWrites = false;
+
+            return;
+        }
+
+        SlowConsumerAction action = policy.getAction();
+
+        if ((getAttribute(SSL_HELPER, null) != null)
+                && ((action == SlowConsumerAction.DROP_OLDEST) || (action == SlowConsumerAction.CONFLATE))) {
+            // the queued SSL/TLS records can't be skipped
+            action = SlowConsumerAction.CLOSE;
+        }
+
+        if (IS_DEBUG) {
+            LOG.debug("{} bytes pending for the slow consumer session {}, action : {}", new Object[] { pending, this,
+                                    action });
+        }
+
+        policy.actionTaken(this, action, pending);
+
+        switch (action) {
+        case CLOSE:
+            close(true);
+
+            return;
+        case DROP_NEW:
+            rejectingWrites = true;
+            break;
+        case DROP_OLDEST:
+            dropOldestWrites(policy, policy.getMaxPendingBytes(), 0);
+            break;
+        case CONFLATE:
+            // only the most recent message is kept
+            dropOldestWrites(policy, 0L, 1);
+            break;
+        default:
+            throw new IllegalStateException("not implemented slow consumer action : " + action);
+        }
+
+        scheduleSlowConsumerCheck(policy.getCheckInterval());
+    }
+
+    /**
+     * Drop the oldest queued requests while the pending bytes are above a limit, keeping a number of requests. The
+     * request being written is never dropped.
+     */
+    private void dropOldestWrites(SlowConsumerPolicy policy, long maxBytes, int keptRequests) {
+        // the aggregation buffer at the tail of the queue can't grow anymore once it has been dropped
+        sealCoalescedWrites();
+
+        if (startedWriteRequest != null) {
+            keptRequests++;
+        }
+
+        while ((writeQueueBytes.get() > maxBytes) && (writeQueue.size() > keptRequests)) {
+            WriteRequest writeRequest = writeQueue.pollOldest(startedWriteRequest);
+
+            if (writeRequest == null) {
+                break;
+            }
+
+            writeQueueShrunk(getPendingBytes(writeRequest));
+            dropWriteRequest(policy, writeRequest);
+        }
+    }
+
+    /**
+     * A request dropped by the slow consumer policy : release its buffer and fail its future
+     */
+    private void dropWriteRequest(SlowConsumerPolicy policy, WriteRequest writeRequest) {
+        if (IS_DEBUG) {
+            LOG.debug("dropping the request {} of the slow consumer session {}", writeRequest, this);
+        }
+
+        if (policy != null) {
+            policy.messageDropped(getPendingBytes(writeRequest));
+        }
+
+        releaseWriteRequest(writeRequest);
+        failFutures(writeRequest, new SlowConsumerException("the write request has been dropped, session " + this
+                + " is a slow consumer"));
+    }
+
+    public abstract void flushWriteQueue();
+
+    public void setNotRegisteredForWrite() {
+        registeredForWrite.set(false);
+    }
+
+    protected boolean isRegisteredForWrite() {
+        return registeredForWrite.get();
+    }
+
+    /**
+     * Get the {@link Queue} of this session. The write queue contains the pending writes.
+     * 
+     * @return the write queue of this session
+     */
+    public Queue<WriteRequest> getWriteQueue() {
+        return writeQueue;
+    }
+
+    /**
+     * @param priority the priority of the requests
+     * @return the number of requests of the given priority pending in the write queue
+     */
+    public int getWriteQueueDepth(WritePriority priority) {
+        return writeQueue.size(priority);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getWriteQueueBytes() {
+        return writeQueueBytes.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isWritable() {
+        return writable.get();
+    }
+
+    /**
+     * The number of bytes pending in the write queue above which the session is not writable anymore.
+     * 
+     * @return the high watermark in bytes, or <code>-1</code> for an unbounded write queue
+     */
+    protected int getWriteQueueHighWatermark() {
+        return -1;
+    }
+
+    /**
+     * The number of bytes pending in the write queue below which the session becomes writable again.
+     * 
+     * @return the low watermark in bytes, or <code>-1</code> for half of the high watermark
+     */
+    protected int getWriteQueueLowWatermark() {
+        return -1;
+    }
+
+    /**
+     * Called when the write queue goes above the high watermark, or is drained below the low watermark. Fires the
+     * writability changed event.
+     * 
+     * @param writable the new writability of the session
+     */
+    protected void writabilityChanged(boolean writable) {
+        processWritabilityChanged(writable);
+    }
+
+    /** account bytes added in the write queue, and check the high watermark */
+    private void writeQueueGrown(long bytes) {
+        long pending = writeQueueBytes.addAndGet(bytes);
+        int maxAge = getMaxWriteQueueAge();
+
+        if (maxAge > 0) {
+            scheduleWriteAgeCheck(maxAge);
+        }
+
+        SlowConsumerPolicy slowConsumerPolicy = getService().getSlowConsumerPolicy();
+
+        if ((slowConsumerPolicy != null) && (pending > slowConsumerPolicy.getMaxPendingBytes())) {
+            scheduleSlowConsumerCheck(slowConsumerPolicy.getCheckInterval());
+        }
+
+        int highWatermark = getWriteQueueHighWatermark();
+
+        if ((highWatermark > 0) && (pending > highWatermark) && writable.compareAndSet(true, false)) {
+            if (IS_DEBUG) {
+                LOG.debug("{} bytes pending for session {}, not writable anymore", pending, this);
+            }
+
+            writabilityChanged(false);
+        }
+    }
+
+    /** account bytes written from the write queue, and check the low watermark */
+    private void writeQueueShrunk(long bytes) {
+        long pending = writeQueueBytes.addAndGet(-bytes);
+
+        if (writable.get()) {
+            return;
+        }
+
+        int highWatermark = getWriteQueueHighWatermark();
+        int lowWatermark = getWriteQueueLowWatermark();
+
+        if ((lowWatermark < 0) || (lowWatermark > highWatermark)) {
+            lowWatermark = highWatermark / 2;
+        }
+
+        if ((pending <= lowWatermark) && writable.compareAndSet(false, true)) {
+            if (IS_DEBUG) {
+                LOG.debug("{} bytes pending for session {}, writable again", pending, this);
+            }
+
+            writabilityChanged(true);
+        }
+    }
+
+    /**
+     * Tells how many queued buffers can be pushed into the channel with a single gathering write. Datagram based
+     * sessions must send each message in its own datagram, so they should return 1.
+     * 
+     * @return the maximum number of buffers written in one system call
+     */
+    protected int getMaxGatheredBuffers() {
+        return MAX_GATHERED_BUFFERS;
+    }
+
+    /**
+     * Transfer the content of a file region directly from the file into the channel
+     * 
+     * @param region the region to transfer
+     * @param maxBytes the maximum number of bytes to transfer
+     * @return the number of transferred bytes
+     */
+    private long transferFileRegion(FileRegion region, long maxBytes) throws IOException {
+        final FileChannel fileChannel = region.getFileChannel();
+        final long written = fileChannel.transferTo(region.getPosition(), Math.min(region.getRemainingBytes(), maxBytes),
+                (WritableByteChannel) channel);
+
+        if (IS_DEBUG) {
+            LOG.debug("transferred {} bytes of {} to {}", new Object[] { written, region, this });
+        }
+
+        if (written > 0) {
+            region.update(written);
+            incrementWrittenBytes((int) written);
+            writeQueueShrunk(written);
+        } else if (region.getPosition() >= fileChannel.size()) {
+            throw new EOFException("the file region goes beyond the end of the file");
+        }
+
+        // Update the idle status for this session
+        idleChecker.sessionWritten(this, Clock.currentTimeMillis());
+
+        return written;
+    }
+
+    /**
+     * Process a write operation. This will be executed only because the session has something to write into the
+     * channel.<br/>
+     * Up to {@link #getMaxGatheredBuffers()} queued buffers (or {@link #MAX_GATHERED_BYTES} bytes) are pushed into
+     * the channel with a single gathering write, so a burst of small messages doesn't cost one system call per
+     * message. A {@link FileRegion} is transferred directly from the file into the channel. The writes stop when the
+     * {@link IoBudget} of the selector loop is exhausted.<br/>
+     * The requests are taken from the write queue in {@link WritePriority} order, a request being written stays at the
+     * head of the queue until it has been completely written.
+     */
+    public void processWrite(SelectorLoop selectorLoop) {
+        try {
+            if (IS_DEBUG) {
+                LOG.debug("ready for write");
+                LOG.debug("writable session : {}", this);
+            }
+
+            if (!crossThreadWriteQueue.isEmpty()) {
+                // don't miss the requests submitted by other threads, the session may be closing
+                flushCrossThreadWrites();
+            }
+
+            // the staged aggregation buffer can't grow anymore once we start writing it
+            sealCoalescedWrites();
+            writeQueuedRequests(selectorLoop.getBudget());
+
+            // if the queue is not empty, the socket buffer is full or the budget is exhausted : the OP_WRITE interest
+            // remains. No lock is needed, the write queue and the registration are only accessed by the selector loop
+            if (writeQueue.isEmpty()) {
+                if (isClosing()) {
+                    if (IS_DEBUG) {
+                        LOG.debug("closing session {} have empty write queue, so we close it", this);
+                    }
+
+                    // we was flushing writes, now we to the close
+                    channelClose();
+                } else {
+                    // no more write event needed
+                    selectorLoop.modifyRegistration(false, !isReadSuspended(), false, (SelectorListener) this,
+                            channel, false);
+
+                    // Reset the flag in IoSession too
+                    setNotRegisteredForWrite();
+                }
+            }
+        } catch (final IOException e) {
+            LOG.error("Exception while writing : ", e);
+            processException(e);
+        }
+    }
+
+    /**
+     * Push the queued requests into the channel, with gathering writes, until the queue is empty, the socket buffer
+     * is full or the budget is exhausted. The remaining requests are left in the queue.
+     */
+    private void writeQueuedRequests(IoBudget budget) throws IOException {
+        final ByteBuffer[] buffers = GATHERED_BUFFERS.get();
+        final WriteRequest[] requests = GATHERED_REQUESTS.get();
+        final int maxBuffers = Math.min(getMaxGatheredBuffers(), buffers.length);
+        int writes = 0;
+        long totalWritten = 0;
+
+        try {
+            do {
+                // the expired requests are dropped when they reach the head of the queue
+                if (expireWriteRequests()) {
+                    return;
+                }
+
+                // look ahead at the write requests of the queue. We left them in the queue,
+                // just in case we can't write all of the messages content into
+                // the channel : we will have to retrieve the messages later
+                int count = 0;
+                int gatheredBytes = 0;
+                FileRegion region = null;
+                long now = Clock.currentTimeMillis();
+                int gathered = writeQueue.gather(requests, maxBuffers);
+
+                for (int i = 0; i < gathered; i++) {
+                    WriteRequest writeRequest = requests[i];
+
+                    if ((count > 0) && isExpired(writeRequest, now)) {
+                        // it will be dropped once the previous requests have been written
+                        break;
+                    }
+
+                    // The message is a ByteBuffer or a FileRegion at this point
+                    // Note that if the connection is secured, the buffer
+                    // already contains encrypted data.
+                    Object message = writeRequest.getMessage();
+
+                    if (message instanceof FileRegion) {
+                        // the buffers before the region are written first
+                        if (count == 0) {
+                            region = (FileRegion) message;
+                        }
+
+                        break;
+                    }
+
+                    ByteBuffer buf = (ByteBuffer) message;
+                    buffers[count++] = buf;
+                    gatheredBytes += buf.remaining();
+
+                    if ((count == maxBuffers) || (gatheredBytes >= MAX_GATHERED_BYTES)) {
+                        break;
+                    }
+                }
+
+                if (region != null) {
+                    writes++;
+                    long written;
+
+                    try {
+                        written = transferFileRegion(region, budget.getMaxWrittenBytes());
+                    } catch (IOException e) {
+                        LOG.error("Exception while transferring a file region : ", e);
+                        writeQueueShrunk(region.getRemainingBytes());
+                        failWriteRequest(writeQueue.poll(), e);
+                        continue;
+                    }
+
+                    totalWritten += written;
+
+                    if (region.getRemainingBytes() == 0) {
+                        completeWriteRequest(writeQueue.poll());
+                        continue;
+                    }
+
+                    if (region.getWrittenBytes() > 0) {
+                        // the region is at the head of the queue, and its transmission has started
+                        startedWriteRequest = writeQueue.commitNext();
+                    }
+
+                    if (written == 0) {
+                        // output socket buffer is full
+                        break;
+                    }
+
+                    // the transfer was limited by the budget, or the socket buffer is full : the next
+                    // transfer will tell us
+                    continue;
+                }
+
+                if (count == 0) {
+                    // Nothing to write : we are done
+                    break;
+                }
+
+                // Try to write the data, and get back the number of bytes
+                // actually written
+                long written;
+
+                if (count == 1) {
+                    written = ((WritableByteChannel) channel).write(buffers[0]);
+                } else {
+                    written = ((GatheringByteChannel) channel).write(buffers, 0, count);
+                }
+
+                if (IS_DEBUG) {
+                    LOG.debug("wrote {} bytes from {} buffers to {}", new Object[] { written, count, this });
+                }
+
+                writes++;
+
+                if (written > 0) {
+                    incrementWrittenBytes((int) written);
+                    writeQueueShrunk(written);
+                    totalWritten += written;
+                }
+
+                // Update the idle status for this session
+                idleChecker.sessionWritten(this, Clock.currentTimeMillis());
+
+                // Now, complete all the requests which have been fully written
+                int completed = 0;
+
+                while ((completed < count) && (buffers[completed].remaining() == 0)) {
+                    // completed write request, let's remove it (we use poll() instead
+                    // of remove(), because remove() may throw an exception if the
+                    // queue is empty.
+                    completed++;
+                    completeWriteRequest(writeQueue.poll());
+                }
+
+                if (completed < count) {
+                    if (buffers[completed].position() > 0) {
+                        // the head of the queue has been partially written. A buffer queued with a non zero
+                        // position is considered started too : it won't expire, but it can't be cut either
+                        startedWriteRequest = writeQueue.commitNext();
+                    }
+
+                    // output socket buffer is full, we need
+                    // to give up until next selection for
+                    // writing.
+                    break;
+                }
+
+                // Leave the loop to the other sessions if we reached our budget : the session is still
+                // registered for write, so it will be selected again by the next iteration
+            } while (!writeQueue.isEmpty() && budget.canWrite(writes, totalWritten));
+        } finally {
+            // Don't retain the buffers and the requests in the thread cache
+            Arrays.fill(buffers, 0, maxBuffers, null);
+            Arrays.fill(requests, 0, maxBuffers, null);
+        }
+    }
+
+    /**
+     * A pooled aggregation buffer, holding the content of many small write requests. The coalesced requests are
+     * completed once the whole buffer has been written.
+     */
+    private static class CoalescedWriteRequest extends DefaultWriteRequest {
+        /** the requests copied into the aggregation buffer */
+        private final List<WriteRequest> requests = new ArrayList<WriteRequest>();
+
+        public CoalescedWriteRequest(ByteBuffer buffer) {
+            super(null);
+            setMessage(buffer);
+            setMessagePooled(true);
+        }
+
+        public ByteBuffer getBuffer() {
+            return (ByteBuffer) getMessage();
+        }
+
+        public void add(WriteRequest writeRequest) {
+            // the aggregation buffer can only be dropped once all its requests have expired
+            long deadline = writeRequest.getDeadline();
+
+            if (requests.isEmpty()) {
+                setDeadline(deadline);
+            } else if (getDeadline() > 0L) {
+                setDeadline(deadline > 0L ? Math.max(getDeadline(), deadline) : 0L);
+            }
+
+            requests.add(writeRequest);
+        }
+
+        public List<WriteRequest> getRequests() {
+            return requests;
         }
     }
 }
@@ -56,4 +56,20 @@ public class FixedSelectorLoopPool implements SelectorLoopPool {
     public SelectorLoop getSelectorLoop() {
         return pool[Math.abs(nextIndex.incrementAndGet() % pool.length)];
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSize() {
+        return pool.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SelectorLoop getSelectorLoop(int index) {
+        return pool[index];
+    }
 }
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.mina.transport.nio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The amount of I/O a single session can do each time its {@link SelectorLoop} selects it. A session which reached its
+ * budget stops reading or writing and gives the hand back to the other sessions of the loop. As the selection is level
+ * triggered, the session is selected again by the next iteration, without waiting, if it still has data to read or to
+ * write. This keeps a bulk transfer session from increasing the latency of the small interactive sessions sharing the
+ * same loop.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class IoBudget {
+    /** The default maximum number of reads per session and iteration */
+    public static final int DEFAULT_MAX_READS = 4;
+
+    /** The default maximum number of bytes read per session and iteration */
+    public static final int DEFAULT_MAX_READ_BYTES = 256 * 1024;
+
+    /** The default maximum number of writes per session and iteration */
+    public static final int DEFAULT_MAX_WRITES = 16;
+
+    /** The default maximum number of bytes written per session and iteration */
+    public static final int DEFAULT_MAX_WRITTEN_BYTES = 512 * 1024;
+
+    private volatile int maxReads = DEFAULT_MAX_READS;
+
+    private volatile int maxReadBytes = DEFAULT_MAX_READ_BYTES;
+
+    private volatile int maxWrites = DEFAULT_MAX_WRITES;
+
+    private volatile int maxWrittenBytes = DEFAULT_MAX_WRITTEN_BYTES;
+
+    /** the number of times a session stopped reading because it reached the budget */
+    private final AtomicLong readBudgetExhaustedCount = new AtomicLong();
+
+    /** the number of times a session stopped writing because it reached the budget */
+    private final AtomicLong writeBudgetExhaustedCount = new AtomicLong();
+
+    /**
+     * @return the maximum number of read operations per session and iteration
+     */
+    public int getMaxReads() {
+        return maxReads;
+    }
+
+    /**
+     * @param maxReads the maximum number of read operations per session and iteration (at least 1)
+     */
+    public void setMaxReads(int maxReads) {
+        this.maxReads = checkPositive(maxReads, "maxReads");
+    }
+
+    /**
+     * @return the maximum number of bytes read per session and iteration
+     */
+    public int getMaxReadBytes() {
+        return maxReadBytes;
+    }
+
+    /**
+     * @param maxReadBytes the maximum number of bytes read per session and iteration (at least 1)
+     */
+    public void setMaxReadBytes(int maxReadBytes) {
+        this.maxReadBytes = checkPositive(maxReadBytes, "maxReadBytes");
+    }
+
+    /**
+     * @return the maximum number of write operations per session and iteration
+     */
+    public int getMaxWrites() {
+        return maxWrites;
+    }
+
+    /**
+     * @param maxWrites the maximum number of write operations per session and iteration (at least 1)
+     */
+    public void setMaxWrites(int maxWrites) {
+        this.maxWrites = checkPositive(maxWrites, "maxWrites");
+    }
+
+    /**
+     * @return the maximum number of bytes written per session and iteration
+     */
+    public int getMaxWrittenBytes() {
+        return maxWrittenBytes;
+    }
+
+    /**
+     * @param maxWrittenBytes the maximum number of bytes written per session and iteration (at least 1)
+     */
+    public void setMaxWrittenBytes(int maxWrittenBytes) {
+        this.maxWrittenBytes = checkPositive(maxWrittenBytes, "maxWrittenBytes");
+    }
+
+    /**
+     * @return the number of times a session stopped reading because it reached the read budget
+     */
+    public long getReadBudgetExhaustedCount() {
+        return readBudgetExhaustedCount.get();
+    }
+
+    /**
+     * @return the number of times a session stopped writing because it reached the write budget
+     */
+    public long getWriteBudgetExhaustedCount() {
+        return writeBudgetExhaustedCount.get();
+    }
+
+    /**
+     * Tells if a session can read again in this iteration
+     * 
+     * @param reads the number of reads already done
+     * @param bytes the number of bytes already read
+     * @return <code>true</code> if the session is still in its budget
+     */
+    /* No qualifier */boolean canRead(int reads, long bytes) {
+        if ((reads < maxReads) && (bytes < maxReadBytes)) {
+            return true;
+        }
+
+        readBudgetExhaustedCount.incrementAndGet();
+
+        return false;
+    }
+
+    /**
+     * Tells if a session can write again in this iteration
+     * 
+     * @param writes the number of writes already done
+     * @param bytes the number of bytes already written
+     * @return <code>true</code> if the session is still in its budget
+     */
+    /* No qualifier */boolean canWrite(int writes, long bytes) {
+        if ((writes < maxWrites) && (bytes < maxWrittenBytes)) {
+            return true;
+        }
+
+        writeBudgetExhaustedCount.incrementAndGet();
+
+        return false;
+    }
+
+    private static int checkPositive(int value, String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be at least 1, was " + value);
+        }
+
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "IoBudget[reads=" + maxReads + ", readBytes=" + maxReadBytes + ", writes=" + maxWrites
+                + ", writtenBytes=" + maxWrittenBytes + ", readExhausted=" + readBudgetExhaustedCount
+                + ", writeExhausted=" + writeBudgetExhaustedCount + "]";
+    }
+}
@@ -26,9 +26,18 @@ import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
-
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.buffer.PooledBufferAllocator;
+import org.apache.mina.service.idlechecker.TimingWheel;
+import org.apache.mina.util.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,14 +54,41 @@ public class NioSelectorLoop implements SelectorLoop {
 
     private static final boolean IS_DEBUG = LOG.isDebugEnabled();
 
+    /** The number of nanoseconds in a millisecond */
+    private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1L);
+
     /** the selector managed by this class */
     private Selector selector;
 
     /** Read buffer for all the incoming bytes (default to 64Kb) */
     private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
 
-    /** The queue containing the channels to register on the selector */
-    private final Queue<Registration> registrationQueue = new ConcurrentLinkedQueue<Registration>();
+    /** The queue containing the tasks (like channels registrations) submitted by other threads */
+    private final Queue<Runnable> taskQueue = new ConcurrentLinkedQueue<Runnable>();
+
+    /** Tells if a wakeup has been requested since the last selection, so that we wake up the selector only once */
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    /** The number of times the selector has been woken up */
+    private final AtomicLong wakeupCount = new AtomicLong();
+
+    /** The thread running the selector */
+    private final SelectorWorker worker;
+
+    /** The I/O budget of the sessions for each selection */
+    private final IoBudget budget = new IoBudget();
+
+    /** The timing wheels driven by this loop */
+    private final List<TimingWheel> timingWheels = new CopyOnWriteArrayList<TimingWheel>();
+
+    /** The maximum time to wait in a selection : the smallest tick of the timing wheels, 0 to wait forever */
+    private volatile long selectTimeout;
+
+    /** The delayed tasks, sorted by deadline. Only accessed by the selector thread */
+    private final Queue<ScheduledTask> scheduledTasks = new PriorityQueue<ScheduledTask>();
+
+    /** The number of tasks scheduled so far, to run the tasks having the same deadline in their scheduling order */
+    private long scheduledTaskCount;
 
     /**
      * Creates an instance of the SelectorLoop.
@@ -77,7 +113,7 @@ public class NioSelectorLoop implements SelectorLoop {
             workerName += "-" + index;
         }
 
-        SelectorWorker worker = new SelectorWorker(workerName);
+        worker = new SelectorWorker(workerName);
 
         try {
             if (IS_DEBUG) {
@@ -128,11 +164,9 @@ public class NioSelectorLoop implements SelectorLoop {
             ops |= SelectionKey.OP_WRITE;
         }
 
-        // TODO : if it's the same selector/worker, we don't need to do that we could directly enqueue
-        registrationQueue.add(new Registration(ops, channel, listener, callback));
-
-        // Now, wakeup the selector in order to let it update the selectionKey status
-        wakeup();
+        // If we are in the selector thread, the registration is done immediately, otherwise the selector
+        // thread will do it after the current selection
+        execute(new Registration(ops, channel, listener, callback));
     }
 
     /**
@@ -169,7 +203,7 @@ public class NioSelectorLoop implements SelectorLoop {
 
         key.interestOps(ops);
 
-        // we need to wakeup for the registration to be modified (TODO : not needed if we are in the worker thread)
+        // we need to wakeup for the registration to be modified (wakeup() does nothing if we are in the worker thread)
         if (wakeup) {
             wakeup();
         }
@@ -211,6 +245,11 @@ public class NioSelectorLoop implements SelectorLoop {
 
         @Override
         public void run() {
+            // this thread allocates and releases most of the buffers : keep some of them at hand
+            PooledBufferAllocator.enableThreadCache();
+
+            // the handlers and the sessions called by this thread read the time it refreshes for each iteration
+            Clock.startRefreshing();
 
             for (;;) {
                 try {
@@ -218,7 +257,13 @@ public class NioSelectorLoop implements SelectorLoop {
                         LOG.debug("selecting...");
                     }
 
-                    final int readyCount = selector.select();
+                    final int readyCount = select();
+
+                    // refresh the cached time once for the whole iteration
+                    Clock.update();
+
+                    // From now on, any new task or registration change needs a new wakeup
+                    wakeupPending.set(false);
 
                     if (IS_DEBUG) {
                         LOG.debug("... done selecting : {} events", readyCount);
@@ -247,21 +292,12 @@ public class NioSelectorLoop implements SelectorLoop {
                         }
                     }
 
-                    // new registration
-                    while (!registrationQueue.isEmpty()) {
-                        final Registration reg = registrationQueue.poll();
+                    // tasks and registrations submitted by other threads
+                    runTasks();
 
-                        try {
-                            SelectionKey selectionKey = reg.channel.register(selector, reg.ops, reg.listener);
+                    runScheduledTasks();
 
-                            if (reg.getCallback() != null) {
-                                reg.getCallback().done(selectionKey);
-                            }
-                        } catch (final ClosedChannelException ex) {
-                            // dead session..
-                            LOG.error("socket is already dead", ex);
-                        }
-                    }
+                    advanceTimingWheels();
                 } catch (final Exception e) {
                     LOG.error("Unexpected exception : ", e);
                 }
@@ -269,12 +305,209 @@ public class NioSelectorLoop implements SelectorLoop {
         }
     }
 
+    /**
+     * Select the ready channels, without waiting beyond the next timing wheel tick or the next scheduled task deadline
+     */
+    private int select() throws IOException {
+        if (!taskQueue.isEmpty()) {
+            // a task has been queued by the selector thread itself, no wakeup will come for it
+            return selector.selectNow();
+        }
+
+        long timeout = selectTimeout;
+        ScheduledTask next = scheduledTasks.peek();
+
+        if (next != null) {
+            long delay = next.deadline - System.nanoTime();
+
+            if (delay <= 0L) {
+                return selector.selectNow();
+            }
+
+            // round up, a zero timeout would wait forever
+            long delayMillis = TimeUnit.NANOSECONDS.toMillis(delay + NANOS_PER_MILLI - 1);
+
+            if ((timeout == 0L) || (delayMillis < timeout)) {
+                timeout = delayMillis;
+            }
+        }
+
+        return selector.select(timeout);
+    }
+
+    /**
+     * Run the scheduled tasks which deadline has been reached
+     */
+    private void runScheduledTasks() {
+        if (scheduledTasks.isEmpty()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        ScheduledTask scheduledTask;
+
+        while (((scheduledTask = scheduledTasks.peek()) != null) && (scheduledTask.deadline - now <= 0L)) {
+            scheduledTasks.poll();
+
+            try {
+                scheduledTask.task.run();
+            } catch (final Exception e) {
+                LOG.error("Unexpected exception while running scheduled task " + scheduledTask.task + " : ", e);
+            }
+        }
+    }
+
+    /**
+     * Run all the tasks queued by other threads
+     */
+    private void runTasks() {
+        Runnable task;
+
+        while ((task = taskQueue.poll()) != null) {
+            try {
+                task.run();
+            } catch (final Exception e) {
+                LOG.error("Unexpected exception while running task " + task + " : ", e);
+            }
+        }
+    }
+
+    /**
+     * Advance the timing wheels attached to this loop
+     */
+    private void advanceTimingWheels() {
+        if (timingWheels.isEmpty()) {
+            return;
+        }
+
+        long now = Clock.currentTimeMillis();
+
+        for (TimingWheel timingWheel : timingWheels) {
+            timingWheel.advance(now);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addTimingWheel(TimingWheel timingWheel) {
+        timingWheels.add(timingWheel);
+        updateSelectTimeout();
+
+        // the selector may be waiting without timeout
+        wakeup();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeTimingWheel(TimingWheel timingWheel) {
+        timingWheels.remove(timingWheel);
+        updateSelectTimeout();
+    }
+
+    private synchronized void updateSelectTimeout() {
+        long timeout = 0L;
+
+        for (TimingWheel timingWheel : timingWheels) {
+            if ((timeout == 0L) || (timingWheel.getTickDuration() < timeout)) {
+                timeout = timingWheel.getTickDuration();
+            }
+        }
+
+        selectTimeout = timeout;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
     @Override
     public void wakeup() {
-        selector.wakeup();
+        if (!inEventLoop() && wakeupPending.compareAndSet(false, true)) {
+            wakeupCount.incrementAndGet();
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * @return the number of times the selector has been woken up by the other threads
+     */
+    public long getWakeupCount() {
+        return wakeupCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (inEventLoop()) {
+            task.run();
+        } else {
+            taskQueue.add(task);
+
+            // only one wakeup for a batch of tasks
+            wakeup();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void executeLater(Runnable task) {
+        taskQueue.add(task);
+
+        // the selector thread runs the queued tasks before selecting again
+        wakeup();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+        final ScheduledTask scheduledTask = new ScheduledTask(task, System.nanoTime() + unit.toNanos(delay));
+
+        if (inEventLoop()) {
+            addScheduledTask(scheduledTask);
+        } else {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    addScheduledTask(scheduledTask);
+                }
+            });
+        }
     }
 
-    private static class Registration {
+    private void addScheduledTask(ScheduledTask scheduledTask) {
+        scheduledTask.sequence = scheduledTaskCount++;
+        scheduledTasks.add(scheduledTask);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean inEventLoop() {
+        return Thread.currentThread() == worker;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IoBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * A pending registration of a channel on the selector, executed by the selector thread.
+     */
+    private class Registration implements Runnable {
 
         public Registration(int ops, SelectableChannel channel, SelectorListener listener, RegistrationCallback callback) {
             this.ops = ops;
@@ -295,6 +528,23 @@ public class NioSelectorLoop implements SelectorLoop {
             return callback;
         }
 
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            try {
+                SelectionKey selectionKey = channel.register(selector, ops, listener);
+
+                if (callback != null) {
+                    callback.done(selectionKey);
+                }
+            } catch (final ClosedChannelException ex) {
+                // dead session..
+                LOG.error("socket is already dead", ex);
+            }
+        }
+
         @Override
         public String toString() {
             StringBuilder sb = new StringBuilder();
@@ -342,4 +592,37 @@ public class NioSelectorLoop implements SelectorLoop {
             return sb.toString();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * A task executed by the selector thread once its deadline is reached
+     */
+    private static class ScheduledTask implements Comparable<ScheduledTask> {
+        /** the task to run */
+        private final Runnable task;
+
+        /** the deadline, in {@link System#nanoTime()} time */
+        private final long deadline;
+
+        /** the scheduling order, set by the selector thread */
+        private long sequence;
+
+        public ScheduledTask(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int compareTo(ScheduledTask other) {
+            long diff = deadline - other.deadline;
+
+            if (diff == 0L) {
+                diff = sequence - other.sequence;
+            }
+
+            return diff < 0L ? -1 : (diff > 0L ? 1 : 0);
+        }
+    }
+}
@@ -31,8 +31,7 @@ import org.apache.mina.api.IoSession;
 import org.apache.mina.api.MinaRuntimeException;
 import org.apache.mina.service.executor.IoHandlerExecutor;
 import org.apache.mina.service.executor.OrderedHandlerExecutor;
-import org.apache.mina.service.idlechecker.IdleChecker;
-import org.apache.mina.service.idlechecker.IndexedIdleChecker;
+import org.apache.mina.service.idlechecker.TimingWheelIdleChecker;
 import org.apache.mina.transport.ConnectFuture;
 import org.apache.mina.transport.tcp.AbstractTcpClient;
 import org.apache.mina.transport.tcp.TcpSessionConfig;
@@ -58,8 +57,8 @@ public class NioTcpClient extends AbstractTcpClient {
     // This is final, so that we know if it's not initialized
     private final SelectorLoopPool readWriteSelectorPool;
 
-    /** for detecting idle session */
-    private IdleChecker idleChecker;
+    /** for detecting idle session, driven by the read/write selector loops */
+    private final TimingWheelIdleChecker idleChecker = new TimingWheelIdleChecker();
 
     /**
      * Create a TCP client with new selector pool of default size and a {@link IoHandlerExecutor} of default type (
@@ -84,6 +83,7 @@ public class NioTcpClient extends AbstractTcpClient {
         super(handlerExecutor);
         connectSelectorLoop = selectorLoopPool.getSelectorLoop();
         readWriteSelectorPool = selectorLoopPool;
+        startIdleChecker();
     }
 
     /**
@@ -100,7 +100,18 @@ public class NioTcpClient extends AbstractTcpClient {
         super(handlerExecutor);
         this.connectSelectorLoop = connectSelectorLoop;
         this.readWriteSelectorPool = readWriteSelectorLoop;
-        idleChecker = new IndexedIdleChecker();
+        startIdleChecker();
+    }
+
+    /**
+     * Let the read/write selector loops drive the idle checker
+     */
+    private void startIdleChecker() {
+        idleChecker.start();
+
+        for (int i = 0; i < readWriteSelectorPool.getSize(); i++) {
+            readWriteSelectorPool.getSelectorLoop(i).addTimingWheel(idleChecker.getTimingWheel());
+        }
     }
 
     /**
@@ -140,6 +151,14 @@ public class NioTcpClient extends AbstractTcpClient {
         session.getConfig().setIdleTimeInMillis(IdleStatus.WRITE_IDLE,
                 config.getIdleTimeInMillis(IdleStatus.WRITE_IDLE));
 
+        // apply the write queue bounds
+        session.getConfig().setWriteQueueHighWatermark(config.getWriteQueueHighWatermark());
+        session.getConfig().setWriteQueueLowWatermark(config.getWriteQueueLowWatermark());
+        session.getConfig().setWriteCoalescingThreshold(config.getWriteCoalescingThreshold());
+        session.getConfig().setAutoCorkDelay(config.getAutoCorkDelay());
+        session.getConfig().setAutoCorkThreshold(config.getAutoCorkThreshold());
+        session.getConfig().setMaxWriteQueueAge(config.getMaxWriteQueueAge());
+
         // apply the default service socket configuration
         Boolean keepAlive = config.isKeepAlive();
 
@@ -265,6 +284,10 @@ public class NioTcpClient extends AbstractTcpClient {
         fireServiceInactivated();
 
         // will stop the idle processor if we are the last service
+        for (int i = 0; i < readWriteSelectorPool.getSize(); i++) {
+            readWriteSelectorPool.getSelectorLoop(i).removeTimingWheel(idleChecker.getTimingWheel());
+        }
+
         idleChecker.destroy();
     }
 }
\ No newline at end of file
@@ -22,25 +22,30 @@ package org.apache.mina.transport.nio;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.mina.api.IdleStatus;
 import org.apache.mina.api.MinaRuntimeException;
 import org.apache.mina.service.executor.IoHandlerExecutor;
 import org.apache.mina.service.executor.OrderedHandlerExecutor;
-import org.apache.mina.service.idlechecker.IdleChecker;
-import org.apache.mina.service.idlechecker.IndexedIdleChecker;
+import org.apache.mina.service.idlechecker.TimingWheelIdleChecker;
 import org.apache.mina.transport.tcp.AbstractTcpServer;
 import org.apache.mina.transport.tcp.TcpSessionConfig;
 import org.apache.mina.util.Assert;
+import org.apache.mina.util.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This class implements a TCP NIO based server.
+ * This class implements a TCP NIO based server.<br/>
+ * The session configuration is read when the server is bound, and applied to all the sessions it accepts : the changes
+ * made to {@link #getSessionConfig()} while the server is bound only apply once the server is unbound and bound
+ * again.
  * 
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -48,10 +53,14 @@ public class NioTcpServer extends AbstractTcpServer implements SelectorListener
     /** A logger for this class */
     static final Logger LOG = LoggerFactory.getLogger(NioTcpServer.class);
 
+    /** The SO_REUSEPORT socket option, <code>null</code> if the JDK doesn't provide it */
+    private static final SocketOption<Boolean> SO_REUSEPORT = getReusePortOption();
+
     /** the bound local address */
     private SocketAddress address = null;
 
-    private final SelectorLoop acceptSelectorLoop;
+    /** the selector loop for the accept events, created at bind time if not provided and needed */
+    private SelectorLoop acceptSelectorLoop;
 
     private final SelectorLoopPool readWriteSelectorPool;
 
@@ -61,15 +70,47 @@ public class NioTcpServer extends AbstractTcpServer implements SelectorListener
     // the server socket for accepting clients
     private ServerSocketChannel serverChannel = null;
 
-    private IdleChecker idleChecker;
+    /** for detecting idle sessions, driven by the read/write selector loops */
+    private TimingWheelIdleChecker idleChecker;
+
+    /** does each selector loop of the pool accept its own connections */
+    private boolean reusePort = false;
+
+    /** the per selector loop acceptors, when the server socket is bound with SO_REUSEPORT */
+    private Acceptor[] acceptors = null;
+
+    /** The default size of the pending connections queue, the JDK default */
+    public static final int DEFAULT_BACKLOG = 50;
+
+    /** The default maximum number of connections accepted on a single accept event */
+    public static final int DEFAULT_ACCEPT_BUDGET = 64;
+
+    /** the maximum number of pending connections in the server socket queue */
+    private int backlog = DEFAULT_BACKLOG;
+
+    /** the maximum number of connections accepted on a single accept event */
+    private int acceptBudget = DEFAULT_ACCEPT_BUDGET;
+
+    /** the configuration applied to the accepted sessions, computed when the server is bound, not on config change */
+    private volatile TcpSessionConfigTemplate sessionConfigTemplate;
+
+    /** the number of sessions created */
+    private final AtomicLong acceptedCount = new AtomicLong();
+
+    /** the number of connections which failed to be accepted or to be turned into a session */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /** the number of accept events which stopped on the accept budget */
+    private final AtomicLong acceptBudgetReachedCount = new AtomicLong();
 
     /**
      * Create a TCP server with new selector pool of default size and a {@link IoHandlerExecutor} of default type (
      * {@link OrderedHandlerExecutor})
      */
     public NioTcpServer() {
-        this(new NioSelectorLoop("accept", 0), new FixedSelectorLoopPool("Server", Runtime.getRuntime()
-                .availableProcessors() + 1), null);
+        // the accept selector loop is created when bound, unless each selector loop accepts its own connections
+        this((SelectorLoop) null, new FixedSelectorLoopPool("Server", Runtime.getRuntime().availableProcessors() + 1),
+                null);
     }
 
     /**
@@ -79,8 +120,8 @@ public class NioTcpServer extends AbstractTcpServer implements SelectorListener
      * @param config The specific configuration to use
      */
     public NioTcpServer(TcpSessionConfig config) {
-        this(config, new NioSelectorLoop("accept", 0), new FixedSelectorLoopPool("Server", Runtime.getRuntime()
-                .availableProcessors() + 1), null);
+        // the accept selector loop is created when bound, unless each selector loop accepts its own connections
+        this(config, null, new FixedSelectorLoopPool("Server", Runtime.getRuntime().availableProcessors() + 1), null);
     }
 
     /**
@@ -158,6 +199,96 @@ public class NioTcpServer extends AbstractTcpServer implements SelectorListener
         this.serverChannel = serverChannel;
     }
 
+    /**
+     * Set the reuse port mode. When enabled, each {@link SelectorLoop} of the read/write pool binds its own server
+     * socket on the same port using SO_REUSEPORT, and handles the connections it accepts : no connection is handed
+     * over to another thread. The kernel spreads the incoming connections among the server sockets.<br/>
+     * SO_REUSEPORT is only available on some platforms (e.g. Linux) with a recent JDK. If it's not available, the
+     * server falls back to a single accepting selector loop. Must be called before the server is bound.
+     * 
+     * @param reusePort <code>true</code> to enable
+     */
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
+    /**
+     * Is the reuse port mode enabled for this server.
+     * 
+     * @return <code>true</code> if enabled
+     */
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    /**
+     * Set the maximum number of pending connections in the server socket queue, waiting to be accepted. Under a high
+     * connection rate, a too small backlog makes the kernel drop or refuse the incoming connections. Must be called
+     * before the server is bound.
+     * 
+     * @param backlog the backlog, a value lower or equal to 0 is replaced by the system default
+     */
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    /**
+     * @return the maximum number of pending connections in the server socket queue
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Set the maximum number of connections accepted each time the server socket is signaled as acceptable. Accepting
+     * many connections per event drains the backlog quickly, while a bound keeps a connection storm from starving the
+     * other events of the selector loop.
+     * 
+     * @param acceptBudget the maximum number of connections accepted per event (at least 1)
+     */
+    public void setAcceptBudget(int acceptBudget) {
+        if (acceptBudget < 1) {
+            throw new IllegalArgumentException("acceptBudget must be at least 1, was " + acceptBudget);
+        }
+
+        this.acceptBudget = acceptBudget;
+    }
+
+    /**
+     * @return the maximum number of connections accepted each time the server socket is signaled as acceptable
+     */
+    public int getAcceptBudget() {
+        return acceptBudget;
+    }
+
+    /**
+     * @return the number of connections accepted and turned into a session since the server creation
+     */
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    /**
+     * @return the number of connections which failed to be accepted (e.g. too many opened files) or to be turned into
+     *         a session since the server creation
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * The number of accept events which stopped because the accept budget was reached, while more connections were
+     * possibly still pending in the server socket queue. This is only a proxy for the backlog pressure, not the count
+     * of connections dropped by the kernel when the backlog overflows (which is only reported by the system, e.g. the
+     * ListenOverflows counter of <code>netstat -s</code> on Linux) : a steadily growing value means connections arrive
+     * faster than they are accepted, and the backlog or the accept budget may have to be increased.
+     * 
+     * @return the number of accept events which stopped on the accept budget
+     */
+    public long getAcceptBudgetReachedCount() {
+        return acceptBudgetReachedCount.get();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -181,20 +312,46 @@ public class NioTcpServer extends AbstractTcpServer implements SelectorListener
         LOG.info("binding address {}", localAddress);
         address = localAddress;
 
+        sessionConfigTemplate = new TcpSessionConfigTemplate(getSessionConfig());
+
         try {
             serverChannel = ServerSocketChannel.open();
+            boolean perLoopAccept = reusePort && enableReusePort(serverChannel);
+
+            if (reusePort && !perLoopAccept) {
+                LOG.warn("SO_REUSEPORT is not supported, using a single accepting selector loop");
+            }
+
             serverChannel.socket().setReuseAddress(isReuseAddress());
-            serverChannel.socket().bind(address);
+            serverChannel.socket().bind(address, backlog);
             serverChannel.configureBlocking(false);
+
+            if (perLoopAccept) {
+                bindAcceptors();
+            }
         } catch (IOException e) {
             throw new MinaRuntimeException("can't bind address" + address, e);
         }
 
-        acceptSelectorLoop.register(true, false, false, false, this, serverChannel, null);
-
-        idleChecker = new IndexedIdleChecker();
+        idleChecker = new TimingWheelIdleChecker();
         idleChecker.start();
 
+        for (int i = 0; i < readWriteSelectorPool.getSize(); i++) {
+            readWriteSelectorPool.getSelectorLoop(i).addTimingWheel(idleChecker.getTimingWheel());
+        }
+
+        if (acceptors == null) {
+            if (acceptSelectorLoop == null) {
+                acceptSelectorLoop = new NioSelectorLoop("accept", 0);
+            }
+
+            acceptSelectorLoop.register(true, false, false, false, this, serverChannel, null);
+        } else {
+            for (Acceptor acceptor : acceptors) {
+                acceptor.selectorLoop.register(true, false, false, false, acceptor, acceptor.channel, null);
+            }
+        }
+
         // it's the first address bound, let's fire the event
         fireServiceActivated();
     }
@@ -216,19 +373,37 @@ public class NioTcpServer extends AbstractTcpServer implements SelectorListener
         if (this.address == null) {
             throw new IllegalStateException("server not bound");
         }
-        try {
-            serverChannel.socket().close();
-            serverChannel.close();
-        } catch (IOException e) {
-            throw new MinaRuntimeException("can't unbind server", e);
-        }
+        if (acceptors == null) {
+            try {
+                serverChannel.socket().close();
+                serverChannel.close();
+            } catch (IOException e) {
+                throw new MinaRuntimeException("can't unbind server", e);
+            }
+
+            acceptSelectorLoop.unregister(this, serverChannel);
+        } else {
+            for (Acceptor acceptor : acceptors) {
+                try {
+                    acceptor.channel.close();
+                } catch (IOException e) {
+                    throw new MinaRuntimeException("can't unbind server", e);
+                }
+
+                acceptor.selectorLoop.unregister(acceptor, acceptor.channel);
+            }
 
-        acceptSelectorLoop.unregister(this, serverChannel);
+            acceptors = null;
+        }
 
         this.address = null;
         this.fireServiceInactivated();
 
         // will stop the acceptor processor if we are the last service
+        for (int i = 0; i < readWriteSelectorPool.getSize(); i++) {
+            readWriteSelectorPool.getSelectorLoop(i).removeTimingWheel(idleChecker.getTimingWheel());
+        }
+
         idleChecker.destroy();
     }
 
@@ -255,101 +430,178 @@ public class NioTcpServer extends AbstractTcpServer implements SelectorListener
         if (accept) {
             LOG.debug("acceptable new client");
 
-            // accepted connection
-            try {
-                LOG.debug("new client accepted");
-                createSession(getServerSocketChannel().accept());
+            accept(getServerSocketChannel(), null);
+        }
 
+        if (read || write) {
+            throw new IllegalStateException("should not receive read or write events");
+        }
+    }
+
+    /**
+     * Accept the pending connections, up to the accept budget, and create their sessions
+     * 
+     * @param channel the server socket ready to accept a connection
+     * @param readWriteSelectorLoop the selector loop in charge of the new sessions, <code>null</code> for picking a
+     *        selector loop in the pool for each session
+     */
+    private void accept(ServerSocketChannel channel, SelectorLoop readWriteSelectorLoop) {
+        for (int i = 0; i < acceptBudget; i++) {
+            SocketChannel clientSocket;
+
+            try {
+                clientSocket = channel.accept();
             } catch (final IOException e) {
+                // most probably out of file descriptors, retry on the next event
+                rejectedCount.incrementAndGet();
                 LOG.error("error while accepting new client", e);
+                return;
             }
-        }
 
-        if (read || write) {
-            throw new IllegalStateException("should not receive read or write events");
+            if (clientSocket == null) {
+                // the backlog is drained
+                return;
+            }
+
+            LOG.debug("new client accepted");
+
+            try {
+                createSession(clientSocket, readWriteSelectorLoop == null ? readWriteSelectorPool.getSelectorLoop()
+                        : readWriteSelectorLoop);
+                acceptedCount.incrementAndGet();
+            } catch (final IOException e) {
+                rejectedCount.incrementAndGet();
+                LOG.error("error while creating the session for a new client", e);
+
+                try {
+                    clientSocket.close();
+                } catch (IOException ignored) {
+                    // nothing to do
+                }
+            }
         }
+
+        // there may be more pending connections, they will be accepted on the next selection
+        acceptBudgetReachedCount.incrementAndGet();
     }
 
-    private synchronized void createSession(SocketChannel clientSocket) throws IOException {
+    private void createSession(SocketChannel clientSocket, SelectorLoop readWriteSelectorLoop) throws IOException {
         LOG.debug("create session");
         SocketChannel socketChannel = clientSocket;
         TcpSessionConfig config = getSessionConfig();
-        SelectorLoop readWriteSelectorLoop = readWriteSelectorPool.getSelectorLoop();
         final NioTcpSession session = new NioTcpSession(this, socketChannel, readWriteSelectorLoop, idleChecker);
 
         socketChannel.configureBlocking(false);
 
-        // apply idle configuration
-        session.getConfig().setIdleTimeInMillis(IdleStatus.READ_IDLE, config.getIdleTimeInMillis(IdleStatus.READ_IDLE));
-        session.getConfig().setIdleTimeInMillis(IdleStatus.WRITE_IDLE,
-                config.getIdleTimeInMillis(IdleStatus.WRITE_IDLE));
-
-        // apply the default service socket configuration
-        Boolean keepAlive = config.isKeepAlive();
+        // apply idle configuration and the default service socket configuration
+        sessionConfigTemplate.apply(session.getConfig());
 
-        if (keepAlive != null) {
-            session.getConfig().setKeepAlive(keepAlive);
+        // Set the secured flag if the service is to be used over SSL/TLS
+        if (config.isSecured()) {
+            session.initSecure(config.getSslContext());
         }
 
-        Boolean oobInline = config.isOobInline();
+        // add the session to the queue for being added to the selector
+        readWriteSelectorLoop.register(false, false, true, false, session, socketChannel, new RegistrationCallback() {
 
-        if (oobInline != null) {
-            session.getConfig().setOobInline(oobInline);
-        }
+            @Override
+            public void done(SelectionKey selectionKey) {
+                session.setSelectionKey(selectionKey);
+                session.setConnected();
+            }
+        });
 
-        Boolean reuseAddress = config.isReuseAddress();
+        idleChecker.sessionRead(session, Clock.currentTimeMillis());
+        idleChecker.sessionWritten(session, Clock.currentTimeMillis());
+    }
 
-        if (reuseAddress != null) {
-            session.getConfig().setReuseAddress(reuseAddress);
-        }
+    /**
+     * Bind a server socket with SO_REUSEPORT on the same address than the main server socket for each selector loop
+     * of the read/write pool. The first selector loop accepts using the main server socket.
+     */
+    private void bindAcceptors() throws IOException {
+        // use the effective address, in case an ephemeral port was requested
+        SocketAddress boundAddress = serverChannel.socket().getLocalSocketAddress();
+        Acceptor[] newAcceptors = new Acceptor[readWriteSelectorPool.getSize()];
+        newAcceptors[0] = new Acceptor(serverChannel, readWriteSelectorPool.getSelectorLoop(0));
 
-        Boolean tcpNoDelay = config.isTcpNoDelay();
+        try {
+            for (int i = 1; i < newAcceptors.length; i++) {
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                newAcceptors[i] = new Acceptor(channel, readWriteSelectorPool.getSelectorLoop(i));
+                enableReusePort(channel);
+                channel.socket().setReuseAddress(isReuseAddress());
+                channel.socket().bind(boundAddress, backlog);
+                channel.configureBlocking(false);
+            }
+        } catch (IOException e) {
+            for (Acceptor acceptor : newAcceptors) {
+                if (acceptor != null) {
+                    acceptor.channel.close();
+                }
+            }
 
-        if (tcpNoDelay != null) {
-            session.getConfig().setTcpNoDelay(tcpNoDelay);
+            throw e;
         }
 
-        Integer receiveBufferSize = config.getReadBufferSize();
+        acceptors = newAcceptors;
+    }
 
-        if (receiveBufferSize != null) {
-            session.getConfig().setReadBufferSize(receiveBufferSize);
+    /**
+     * Set the SO_REUSEPORT option on a server socket, if supported
+     * 
+     * @return <code>true</code> if the option has been set
+     */
+    private static boolean enableReusePort(ServerSocketChannel channel) throws IOException {
+        if ((SO_REUSEPORT == null) || !channel.supportedOptions().contains(SO_REUSEPORT)) {
+            return false;
         }
 
-        Integer sendBufferSize = config.getSendBufferSize();
-
-        if (sendBufferSize != null) {
-            session.getConfig().setSendBufferSize(sendBufferSize);
-        }
+        channel.setOption(SO_REUSEPORT, true);
 
-        Integer trafficClass = config.getTrafficClass();
+        return true;
+    }
 
-        if (trafficClass != null) {
-            session.getConfig().setTrafficClass(trafficClass);
+    /**
+     * Get the SO_REUSEPORT option (added in Java 9) if the running JDK provides it.
+     */
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> getReusePortOption() {
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (Exception e) {
+            return null;
         }
+    }
 
-        Integer soLinger = config.getSoLinger();
+    /**
+     * A server socket bound with SO_REUSEPORT, accepting the connections for its own selector loop.
+     */
+    private class Acceptor implements SelectorListener {
+        /** the server socket */
+        private final ServerSocketChannel channel;
 
-        if (soLinger != null) {
-            session.getConfig().setSoLinger(soLinger);
-        }
+        /** the selector loop accepting the connections and handling the created sessions */
+        private final SelectorLoop selectorLoop;
 
-        // Set the secured flag if the service is to be used over SSL/TLS
-        if (config.isSecured()) {
-            session.initSecure(config.getSslContext());
+        Acceptor(ServerSocketChannel channel, SelectorLoop selectorLoop) {
+            this.channel = channel;
+            this.selectorLoop = selectorLoop;
         }
 
-        // add the session to the queue for being added to the selector
-        readWriteSelectorLoop.register(false, false, true, false, session, socketChannel, new RegistrationCallback() {
-
-            @Override
-            public void done(SelectionKey selectionKey) {
-                session.setSelectionKey(selectionKey);
-                session.setConnected();
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void ready(boolean accept, boolean connect, boolean read, ByteBuffer readBuffer, boolean write) {
+            if (accept) {
+                LOG.debug("acceptable new client");
+                accept(channel, selectorLoop);
             }
-        });
 
-        idleChecker.sessionRead(session, System.currentTimeMillis());
-        idleChecker.sessionWritten(session, System.currentTimeMillis());
+            if (read || write) {
+                throw new IllegalStateException("should not receive read or write events");
+            }
+        }
     }
-
-}
\ No newline at end of file
+}
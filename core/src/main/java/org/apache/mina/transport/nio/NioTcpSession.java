@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 
@@ -32,6 +33,7 @@ import org.apache.mina.session.WriteRequest;
 import org.apache.mina.transport.ConnectFuture;
 import org.apache.mina.transport.tcp.ProxyTcpSessionConfig;
 import org.apache.mina.transport.tcp.TcpSessionConfig;
+import org.apache.mina.util.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,19 +60,67 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
     /** The associated selectionKey */
     private SelectionKey selectionKey;
 
-    /** The Direct Buffer used to send data */
-    private ByteBuffer sendBuffer;
+    /** predicts the size of the next read */
+    private final ReceiveSizePredictor receiveSizePredictor;
 
-    /** The size of the buffer configured in the socket to send data */
-    private int sendBufferSize;
+    /** are the reads suspended by the application */
+    private volatile boolean readSuspended = false;
+
+    /** are the reads suspended because the write queue is above its high watermark */
+    private volatile boolean readThrottled = false;
+
+    /** are the writes suspended by the application */
+    private volatile boolean writeSuspended = false;
+
+    /** computes the interest of the session from its state, to be executed by the selector loop */
+    private final Runnable interestUpdater = new Runnable() {
+        @Override
+        public void run() {
+            if (isCreated() || !channel.isOpen()) {
+                // not registered yet, or already unregistered
+                return;
+            }
+
+            boolean write = (isRegisteredForWrite() || isClosing()) && !writeSuspended;
+
+            try {
+                selectorLoop.modifyRegistration(false, !isReadSuspended(), write, NioTcpSession.this, channel, false);
+            } catch (CancelledKeyException e) {
+                // the session is being closed
+                LOG.debug("the session {} is closed, its registration can't be modified", NioTcpSession.this);
+            }
+        }
+    };
 
     /* No qualifier */NioTcpSession(final IoService service, final SocketChannel channel,
             final SelectorLoop selectorLoop, final IdleChecker idleChecker) {
         super(service, channel, idleChecker);
         this.selectorLoop = selectorLoop;
         this.configuration = new ProxyTcpSessionConfig(channel.socket());
-        sendBufferSize = configuration.getSendBufferSize();
-        sendBuffer = ByteBuffer.allocateDirect(sendBufferSize);
+        this.receiveSizePredictor = createReceiveSizePredictor(service.getSessionConfig().getReadBufferSize());
+    }
+
+    /**
+     * Create the read size predictor, bounded by the configured read buffer size if any
+     */
+    private static ReceiveSizePredictor createReceiveSizePredictor(Integer readBufferSize) {
+        if ((readBufferSize == null) || (readBufferSize >= ReceiveSizePredictor.DEFAULT_MAXIMUM)) {
+            return new ReceiveSizePredictor();
+        }
+
+        int initial = Math.min(ReceiveSizePredictor.DEFAULT_INITIAL, readBufferSize);
+
+        return new ReceiveSizePredictor(Math.min(ReceiveSizePredictor.DEFAULT_MINIMUM, initial), initial,
+                readBufferSize);
+    }
+
+    /**
+     * Get the predictor of the read sizes of this session, which also provides the read statistics
+     * 
+     * @return the read size predictor
+     */
+    public ReceiveSizePredictor getReceiveSizePredictor() {
+        return receiveSizePredictor;
     }
 
     void setConnectFuture(ConnectFuture connectFuture) {
@@ -126,8 +176,8 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
      */
     @Override
     public void suspendRead() {
-        // TODO
-        throw new RuntimeException("Not implemented");
+        readSuspended = true;
+        updateInterest();
     }
 
     /**
@@ -135,95 +185,159 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
      */
     @Override
     public void suspendWrite() {
-        // TODO
-        throw new RuntimeException("Not implemented");
+        writeSuspended = true;
+        updateInterest();
+    }
+
+    /**
+     * {@inheritDoc}<br/>
+     * The reads stay suspended while the session is not writable.
+     */
+    @Override
+    public void resumeRead() {
+        readSuspended = false;
+        updateInterest();
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    protected int writeDirect(Object message) {
-        try {
-            // Check that we can write into the channel
-            if (!isRegisteredForWrite()) {
-                // We don't have pending writes
-                return ((SocketChannel) channel).write((ByteBuffer) message);
-            } else {
-                return -1;
-            }
-        } catch (final IOException e) {
-            LOG.error("Exception while reading : ", e);
-            processException(e);
+    public void resumeWrite() {
+        writeSuspended = false;
+        updateInterest();
+    }
 
-            return -1;
-        }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isReadSuspended() {
+        return readSuspended || readThrottled;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    protected ByteBuffer convertToDirectBuffer(WriteRequest writeRequest, boolean createNew) {
-        ByteBuffer message = (ByteBuffer) writeRequest.getMessage();
+    public boolean isWriteSuspended() {
+        return writeSuspended;
+    }
 
-        if (!message.isDirect()) {
-            int remaining = message.remaining();
+    /**
+     * Update the interest of the channel for read and write events, from the selector loop thread.
+     */
+    private void updateInterest() {
+        selectorLoop.execute(interestUpdater);
+    }
 
-            if ((remaining > sendBufferSize) || createNew) {
-                ByteBuffer directBuffer = ByteBuffer.allocateDirect(remaining);
-                directBuffer.put(message);
-                directBuffer.flip();
-                writeRequest.setMessage(directBuffer);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int getWriteQueueHighWatermark() {
+        return configuration.getWriteQueueHighWatermark();
+    }
 
-                return directBuffer;
-            } else {
-                sendBuffer.clear();
-                sendBuffer.put(message);
-                sendBuffer.flip();
-                writeRequest.setMessage(sendBuffer);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int getWriteQueueLowWatermark() {
+        return configuration.getWriteQueueLowWatermark();
+    }
 
-                return sendBuffer;
-            }
-        }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isWriteStagingSupported() {
+        return true;
+    }
 
-        return message;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int getWriteCoalescingThreshold() {
+        return configuration.getWriteCoalescingThreshold();
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void resumeRead() {
-        // TODO
-        throw new RuntimeException("Not implemented");
+    protected int getAutoCorkDelay() {
+        return configuration.getAutoCorkDelay();
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void resumeWrite() {
-        // TODO
-        throw new RuntimeException("Not implemented");
+    protected int getAutoCorkThreshold() {
+        return configuration.getAutoCorkThreshold();
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public boolean isReadSuspended() {
-        // TODO
-        return false;
+    protected int getMaxWriteQueueAge() {
+        return configuration.getMaxWriteQueueAge();
+    }
+
+    /**
+     * {@inheritDoc}<br/>
+     * The reads are suspended while the session is not writable : we stop reading from a peer which doesn't consume
+     * what we are sending to it.
+     */
+    @Override
+    protected void writabilityChanged(boolean writable) {
+        readThrottled = !writable;
+        updateInterest();
+        super.writabilityChanged(writable);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public boolean isWriteSuspended() {
-        // TODO
-        throw new RuntimeException("Not implemented");
+    protected int writeDirect(Object message) {
+        try {
+            // Check that we can write into the channel
+            if (!isRegisteredForWrite() && !writeSuspended) {
+                // We don't have pending writes
+                return ((SocketChannel) channel).write((ByteBuffer) message);
+            } else {
+                return -1;
+            }
+        } catch (final IOException e) {
+            LOG.error("Exception while reading : ", e);
+            processException(e);
+
+            return -1;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected ByteBuffer convertToDirectBuffer(WriteRequest writeRequest) {
+        ByteBuffer message = (ByteBuffer) writeRequest.getMessage();
+
+        if (!message.isDirect()) {
+            ByteBuffer directBuffer = bufferAllocator.allocate(message.remaining());
+            directBuffer.put(message);
+            directBuffer.flip();
+            writeRequest.setMessage(directBuffer);
+            writeRequest.setMessagePooled(true);
+
+            return directBuffer;
+        }
+
+        return message;
     }
 
     /**
@@ -238,11 +352,14 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
      * Set this session status as connected. To be called by the processor selecting/polling this session.
      */
     void setConnected() {
-        if (!isCreated()) {
+        if (!compareAndSetState(SessionState.CREATED, SessionState.CONNECTED)) {
             throw new RuntimeException("Trying to open a non created session");
         }
 
-        state = SessionState.CONNECTED;
+        if (isReadSuspended() || writeSuspended) {
+            // suspended before being connected
+            updateInterest();
+        }
 
         if (connectFuture != null) {
             connectFuture.complete(this);
@@ -267,62 +384,120 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected SelectorLoop getSelectorLoop() {
+        return selectorLoop;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void flushWriteQueue() {
-        // register for write
-        selectorLoop.modifyRegistration(false, !isReadSuspended(), true, this, channel, true);
+        // register for write, unless the writes are suspended
+        updateInterest();
     }
 
     /**
-     * Process a read operation : read the data from the channel and push them to the chain.
+     * Process a read operation : read the data from the channel and push them to the chain. Each read is sized by the
+     * {@link ReceiveSizePredictor} of the session. We read again while the buffer is filled (more data are probably
+     * waiting in the socket), up to the {@link IoBudget} of the selector loop.<br/>
+     * When the messages are handled by an {@link org.apache.mina.service.executor.IoHandlerExecutor}, we read into a
+     * pooled buffer instead of the selector loop one, so the buffer can be handed to the executor without any copy.
      * 
-     * @param readBuffer The buffer that will contain the read data
+     * @param readBuffer The buffer of the selector loop
      */
     private void processRead(final ByteBuffer readBuffer) {
         try {
             LOG.debug("readable session : {}", this);
 
-            // Read everything we can up to the buffer size
-            final int readCount = ((SocketChannel) channel).read(readBuffer);
+            final IoBudget budget = selectorLoop.getBudget();
+            final boolean transferable = !isSecured() && (getService().getIoHandlerExecutor() != null);
+            int reads = 0;
+            long totalRead = 0;
+            boolean drained;
+
+            do {
+                // Read everything we can up to the predicted size
+                final int readSize = Math.min(receiveSizePredictor.nextReadSize(), readBuffer.capacity());
+                final ByteBuffer buffer;
 
-            LOG.debug("read {} bytes", readCount);
+                if (transferable) {
+                    buffer = bufferAllocator.allocate(readSize);
+                } else {
+                    buffer = readBuffer;
+                    buffer.clear();
+                }
+
+                buffer.limit(readSize);
+                boolean transferred = false;
 
-            if (readCount < 0) {
-                // session closed by the remote peer
-                LOG.debug("session closed by the remote peer");
-                close(true);
-            } else if (readCount > 0) {
-                // we have read some data
-                // limit at the current position & rewind buffer back to start &
-                // push to the chain
-                readBuffer.flip();
+                try {
+                    final int readCount = ((SocketChannel) channel).read(buffer);
+                    receiveSizePredictor.record(readCount);
 
-                if (isSecured()) {
-                    // We are reading data over a SSL/TLS encrypted connection.
-                    // Redirect the processing to the SslHelper class.
-                    final SslHelper sslHelper = getAttribute(SSL_HELPER, null);
+                    LOG.debug("read {} bytes", readCount);
 
-                    if (sslHelper == null) {
-                        throw new IllegalStateException();
+                    if (readCount < 0) {
+                        // session closed by the remote peer
+                        LOG.debug("session closed by the remote peer");
+                        close(true);
+
+                        return;
                     }
 
-                    sslHelper.processRead(this, readBuffer);
+                    if (readCount == 0) {
+                        return;
+                    }
 
-                    // We don't clear the buffer. It has been done by the sslHelper
-                } else {
-                    // Plain message, not encrypted : go directly to the chain
-                    processMessageReceived(readBuffer);
+                    reads++;
+                    totalRead += readCount;
+
+                    // if the buffer is not filled, the socket is drained
+                    drained = buffer.hasRemaining();
+
+                    // we have read some data
+                    // limit at the current position & rewind buffer back to start &
+                    // push to the chain
+                    buffer.flip();
+
+                    if (isSecured()) {
+                        // We are reading data over a SSL/TLS encrypted connection.
+                        // Redirect the processing to the SslHelper class.
+                        final SslHelper sslHelper = getAttribute(SSL_HELPER, null);
 
-                    // And now, clear the buffer
-                    readBuffer.clear();
+                        if (sslHelper == null) {
+                            throw new IllegalStateException();
+                        }
+
+                        sslHelper.processRead(this, buffer);
+
+                        // We don't clear the buffer. It has been done by the sslHelper
+                    } else if (transferable) {
+                        // Plain message, not encrypted : go directly to the chain, which may keep the buffer
+                        transferred = processMessageReceived(buffer, bufferAllocator);
+                    } else {
+                        // Plain message, not encrypted : go directly to the chain
+                        processMessageReceived(buffer);
+
+                        // And now, clear the buffer
+                        buffer.clear();
+                    }
+                } finally {
+                    if (transferable && !transferred) {
+                        bufferAllocator.release(buffer);
+                    }
                 }
 
                 // Update the session idle status
-                idleChecker.sessionRead(this, System.currentTimeMillis());
-            }
+                idleChecker.sessionRead(this, Clock.currentTimeMillis());
+
+                // Leave the loop to the other sessions if we reached our budget : the remaining data will be
+                // selected again by the next iteration
+            } while (!drained && isConnected() && !isReadSuspended() && budget.canRead(reads, totalRead));
         } catch (final IOException e) {
             LOG.error("Exception while reading : ", e);
             processException(e);
@@ -368,11 +543,12 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
             }
         }
 
-        if (read) {
+        // the interest may have been modified since the selection
+        if (read && !isReadSuspended()) {
             processRead(readBuffer);
         }
 
-        if (write) {
+        if (write && !writeSuspended) {
             processWrite(selectorLoop);
         }
         if (accept) {
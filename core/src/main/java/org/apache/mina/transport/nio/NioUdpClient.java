@@ -29,11 +29,12 @@ import org.apache.mina.api.IoFuture;
 import org.apache.mina.api.IoSession;
 import org.apache.mina.api.MinaRuntimeException;
 import org.apache.mina.service.executor.IoHandlerExecutor;
-import org.apache.mina.service.idlechecker.IndexedIdleChecker;
+import org.apache.mina.service.idlechecker.TimingWheelIdleChecker;
 import org.apache.mina.transport.ConnectFuture;
 import org.apache.mina.transport.udp.AbstractUdpClient;
 import org.apache.mina.transport.udp.UdpSessionConfig;
 import org.apache.mina.util.Assert;
+import org.apache.mina.util.Clock;
 
 /**
  * This class implements a UDP NIO based client.
@@ -46,7 +47,8 @@ public class NioUdpClient extends AbstractUdpClient {
     // This is final, so that we know if it's not initialized
     private final SelectorLoopPool readWriteSelectorPool;
 
-    private final IndexedIdleChecker idleChecker = new IndexedIdleChecker();
+    /** for detecting idle session, driven by the read/write selector loops */
+    private final TimingWheelIdleChecker idleChecker = new TimingWheelIdleChecker();
 
     /**
      * Create a new instance of NioUdpClient
@@ -62,6 +64,10 @@ public class NioUdpClient extends AbstractUdpClient {
         super(ioHandlerExecutor);
         readWriteSelectorPool = new FixedSelectorLoopPool("Client", 2);
         idleChecker.start();
+
+        for (int i = 0; i < readWriteSelectorPool.getSize(); i++) {
+            readWriteSelectorPool.getSelectorLoop(i).addTimingWheel(idleChecker.getTimingWheel());
+        }
     }
 
     /**
@@ -97,8 +103,8 @@ public class NioUdpClient extends AbstractUdpClient {
                 config.getIdleTimeInMillis(IdleStatus.WRITE_IDLE));
 
         // Manage the Idle status
-        idleChecker.sessionRead(session, System.currentTimeMillis());
-        idleChecker.sessionWritten(session, System.currentTimeMillis());
+        idleChecker.sessionRead(session, Clock.currentTimeMillis());
+        idleChecker.sessionWritten(session, Clock.currentTimeMillis());
 
         // apply the default service socket configuration
 
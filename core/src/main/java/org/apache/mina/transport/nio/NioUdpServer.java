@@ -34,10 +34,10 @@ import org.apache.mina.api.IoSession;
 import org.apache.mina.api.MinaRuntimeException;
 import org.apache.mina.service.executor.IoHandlerExecutor;
 import org.apache.mina.service.executor.OrderedHandlerExecutor;
-import org.apache.mina.service.idlechecker.IdleChecker;
-import org.apache.mina.service.idlechecker.IndexedIdleChecker;
+import org.apache.mina.service.idlechecker.TimingWheelIdleChecker;
 import org.apache.mina.transport.udp.AbstractUdpServer;
 import org.apache.mina.transport.udp.UdpSessionConfig;
+import org.apache.mina.util.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,7 +56,7 @@ public class NioUdpServer extends AbstractUdpServer implements SelectorListener
     private SocketAddress address = null;
 
     // used for detecting idle sessions
-    private final IdleChecker idleChecker = new IndexedIdleChecker();
+    private final TimingWheelIdleChecker idleChecker = new TimingWheelIdleChecker();
 
     // the inner channel for read/write UDP datagrams
     private DatagramChannel datagramChannel = null;
@@ -169,6 +169,7 @@ public class NioUdpServer extends AbstractUdpServer implements SelectorListener
         }
 
         readSelectorLoop.register(false, false, true, false, this, datagramChannel, null);
+        readSelectorLoop.addTimingWheel(idleChecker.getTimingWheel());
 
         // it's the first address bound, let's fire the event
         this.fireServiceActivated();
@@ -190,6 +191,7 @@ public class NioUdpServer extends AbstractUdpServer implements SelectorListener
         }
 
         readSelectorLoop.unregister(this, datagramChannel);
+        readSelectorLoop.removeTimingWheel(idleChecker.getTimingWheel());
         datagramChannel.socket().close();
         try {
             datagramChannel.close();
@@ -304,8 +306,8 @@ public class NioUdpServer extends AbstractUdpServer implements SelectorListener
         }
 
         // Manage the Idle status
-        idleChecker.sessionRead(session, System.currentTimeMillis());
-        idleChecker.sessionWritten(session, System.currentTimeMillis());
+        idleChecker.sessionRead(session, Clock.currentTimeMillis());
+        idleChecker.sessionWritten(session, Clock.currentTimeMillis());
 
         sessions.put(remoteAddress, session);
 
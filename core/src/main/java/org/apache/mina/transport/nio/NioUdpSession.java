@@ -28,6 +28,7 @@ import org.apache.mina.api.IoService;
 import org.apache.mina.service.idlechecker.IdleChecker;
 import org.apache.mina.session.WriteRequest;
 import org.apache.mina.transport.udp.UdpSessionConfig;
+import org.apache.mina.util.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -98,6 +99,16 @@ public class NioUdpSession extends AbstractNioSession implements SelectorListene
         processSessionClosed();
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * The sessions of a UDP server share the server channel, and have no loop of their own.
+     */
+    @Override
+    protected SelectorLoop getSelectorLoop() {
+        return selectorLoop;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -206,7 +217,7 @@ public class NioUdpSession extends AbstractNioSession implements SelectorListene
      */
     void receivedDatagram(ByteBuffer readBuffer) {
         processMessageReceived(readBuffer);
-        idleChecker.sessionRead(this, System.currentTimeMillis());
+        idleChecker.sessionRead(this, Clock.currentTimeMillis());
     }
 
     /**
@@ -242,20 +253,28 @@ public class NioUdpSession extends AbstractNioSession implements SelectorListene
      * {@inheritDoc}
      */
     @Override
-    protected ByteBuffer convertToDirectBuffer(WriteRequest writeRequest, boolean createNew) {
+    protected ByteBuffer convertToDirectBuffer(WriteRequest writeRequest) {
         // Here, we don't create a new DirectBuffer. We let the underlying layer do the job for us
         return (ByteBuffer) writeRequest.getMessage();
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * Each message must be sent in its own datagram, we can't gather them.
+     */
+    @Override
+    protected int getMaxGatheredBuffers() {
+        return 1;
+    }
+
     /**
      * Set this session status as connected. To be called by the processor selecting/polling this session.
      */
     void setConnected() {
-        if (!isCreated()) {
+        if (!compareAndSetState(SessionState.CREATED, SessionState.CONNECTED)) {
             throw new IllegalStateException("Trying to open a non created session");
         }
-
-        state = SessionState.CONNECTED;
         processSessionOpen();
     }
 
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.mina.transport.nio;
+
+/**
+ * Predicts how many bytes the next read of a session will return, from the size of its previous reads. The prediction
+ * grows as soon as a read fills the buffer, and shrinks when two consecutive reads would have fit in a buffer of half
+ * the size, so a session trickling small messages and a session streaming bulk data both read with a well sized
+ * buffer.
+ * <p>
+ * Not thread safe : it's used by the selector loop of the session only.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ReceiveSizePredictor {
+    /** The default smallest prediction */
+    public static final int DEFAULT_MINIMUM = 64;
+
+    /** The default first prediction */
+    public static final int DEFAULT_INITIAL = 2048;
+
+    /** The default biggest prediction */
+    public static final int DEFAULT_MAXIMUM = 64 * 1024;
+
+    private final int minimum;
+
+    private final int maximum;
+
+    /** the size of the next read */
+    private int nextReadSize;
+
+    /** do the previous read would have fit in a buffer of half the size */
+    private boolean decreaseNow;
+
+    /** the number of reads which returned some bytes */
+    private volatile long readCount;
+
+    /** the total number of bytes read */
+    private volatile long readBytes;
+
+    /**
+     * Create a predictor with the default sizes
+     */
+    public ReceiveSizePredictor() {
+        this(DEFAULT_MINIMUM, DEFAULT_INITIAL, DEFAULT_MAXIMUM);
+    }
+
+    /**
+     * Create a predictor
+     * 
+     * @param minimum the smallest prediction
+     * @param initial the first prediction
+     * @param maximum the biggest prediction
+     */
+    public ReceiveSizePredictor(int minimum, int initial, int maximum) {
+        if ((minimum <= 0) || (initial < minimum) || (maximum < initial)) {
+            throw new IllegalArgumentException("invalid sizes, expected 0 < minimum (" + minimum + ") <= initial ("
+                    + initial + ") <= maximum (" + maximum + ")");
+        }
+
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.nextReadSize = initial;
+    }
+
+    /**
+     * @return the number of bytes the next read should be able to receive
+     */
+    public int nextReadSize() {
+        return nextReadSize;
+    }
+
+    /**
+     * Record the size of a read, and adapt the next prediction
+     * 
+     * @param bytes the number of bytes returned by the read
+     */
+    public void record(int bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+
+        readCount++;
+        readBytes += bytes;
+
+        if (bytes >= nextReadSize) {
+            // the buffer was filled : more data are probably pending
+            nextReadSize = Math.min(maximum, nextReadSize << 1);
+            decreaseNow = false;
+        } else if (bytes <= (nextReadSize >> 1)) {
+            // shrink only if two consecutive reads are small
+            if (decreaseNow) {
+                nextReadSize = Math.max(minimum, nextReadSize >> 1);
+                decreaseNow = false;
+            } else {
+                decreaseNow = true;
+            }
+        } else {
+            decreaseNow = false;
+        }
+    }
+
+    /**
+     * @return the number of reads which returned some bytes
+     */
+    public long getReadCount() {
+        return readCount;
+    }
+
+    /**
+     * @return the total number of bytes read
+     */
+    public long getReadBytes() {
+        return readBytes;
+    }
+
+    /**
+     * @return the average number of bytes returned by a read system call
+     */
+    public long getAverageReadSize() {
+        return readCount == 0 ? 0 : readBytes / readCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ReceiveSizePredictor[next=" + nextReadSize + ", reads=" + readCount + ", average="
+                + getAverageReadSize() + "]";
+    }
+}
@@ -19,6 +19,9 @@
 package org.apache.mina.transport.nio;
 
 import java.nio.channels.SelectableChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.service.idlechecker.TimingWheel;
 
 /**
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
@@ -44,7 +47,66 @@ public interface SelectorLoop {
     void unregister(SelectorListener listener, SelectableChannel channel);
 
     /**
-     * Wake up the selector
+     * Wake up the selector. Does nothing if called from the selector thread, or if a wakeup is already pending.
      */
     void wakeup();
+
+    /**
+     * Execute a task in the selector thread. If called from the selector thread, the task is executed immediately,
+     * otherwise it's queued and will be executed by the selector thread after the current selection.
+     * 
+     * @param task the task to execute
+     */
+    void execute(Runnable task);
+
+    /**
+     * Execute a task in the selector thread, after the ready sessions of the current selection have been processed.
+     * Unlike {@link #execute(Runnable)}, the task is never executed immediately, even if called from the selector
+     * thread.
+     * 
+     * @param task the task to execute
+     */
+    void executeLater(Runnable task);
+
+    /**
+     * Execute a task in the selector thread once a delay has elapsed. The loop doesn't wait in a selection beyond the
+     * deadline of its next scheduled task, so no other thread is needed, but the delay resolution is the millisecond
+     * when the loop is idle.
+     * 
+     * @param task the task to execute
+     * @param delay the delay before the execution
+     * @param unit the unit of the delay
+     */
+    void schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * Tells if the current thread is the selector thread of this loop.
+     * 
+     * @return <code>true</code> if called from the selector thread
+     */
+    boolean inEventLoop();
+
+    /**
+     * The I/O budget of the sessions handled by this loop, for each selection.
+     * 
+     * @return the budget
+     */
+    IoBudget getBudget();
+
+    /**
+     * Attach a {@link TimingWheel} to this loop : the loop will advance it after each selection, and won't wait in a
+     * selection longer than the wheel tick. A wheel can be attached to many loops, only one of them advances it at a
+     * time.
+     * 
+     * @param timingWheel the timing wheel to drive
+     */
+    void addTimingWheel(TimingWheel timingWheel);
+
+    /**
+     * Detach a {@link TimingWheel} from this loop. If the wheel has been attached many times, it will still be driven
+     * until it's detached as many times.
+     * 
+     * @param timingWheel the timing wheel to stop driving
+     */
+    void removeTimingWheel(TimingWheel timingWheel);
 }
\ No newline at end of file
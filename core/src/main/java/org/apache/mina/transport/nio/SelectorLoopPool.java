@@ -32,4 +32,17 @@ public interface SelectorLoopPool {
      */
     SelectorLoop getSelectorLoop();
 
+    /**
+     * Get the number of {@link SelectorLoop} in the pool
+     * @return the pool size
+     */
+    int getSize();
+
+    /**
+     * Get a given {@link SelectorLoop} of the pool
+     * @param index the index of the SelectorLoop, between 0 and {@link #getSize()} - 1
+     * @return the SelectorLoop at the given index
+     */
+    SelectorLoop getSelectorLoop(int index);
+
 }
\ No newline at end of file
@@ -23,7 +23,6 @@ import static org.apache.mina.session.AttributeKey.createKey;
 
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.util.Queue;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
@@ -34,6 +33,7 @@ import javax.net.ssl.SSLSession;
 
 import org.apache.mina.api.IoClient;
 import org.apache.mina.api.IoSession;
+import org.apache.mina.buffer.BufferAllocator;
 import org.apache.mina.session.AbstractIoSession;
 import org.apache.mina.session.AttributeKey;
 import org.apache.mina.session.DefaultWriteRequest;
@@ -59,6 +59,9 @@ public class SslHelper {
     /** The current session */
     private final IoSession session;
 
+    /** The allocator for the encryption/decryption buffers */
+    private final BufferAllocator allocator;
+
     /**
      * A session attribute key that should be set to an {@link InetSocketAddress}. Setting this attribute causes
      * {@link SSLContext#createSSLEngine(String, int)} to be called passing the hostname and port of the
@@ -81,6 +84,9 @@ public class SslHelper {
 
     private ByteBuffer previous = null;
 
+    /** Set once the last handshake record has been queued : the application data are encrypted from then on */
+    private volatile boolean handshakeFinished = false;
+
     /**
      * Create a new SSL Handler.
      * 
@@ -89,6 +95,7 @@ public class SslHelper {
     public SslHelper(IoSession session, SSLContext sslContext) {
         this.session = session;
         this.sslContext = sslContext;
+        this.allocator = session.getService().getBufferAllocator();
     }
 
     /**
@@ -109,6 +116,13 @@ public class SslHelper {
         return sslEngine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING;
     }
 
+    /**
+     * @return <code>true</code> if the initial handshake is finished, and the written messages have to be encrypted
+     */
+    /* no qualifier */boolean isHandshakeFinished() {
+        return handshakeFinished;
+    }
+
     /**
      * Initialize the SSL handshake.
      * 
@@ -161,7 +175,7 @@ public class SslHelper {
      * @return the newly allocated buffer
      */
     private ByteBuffer duplicate(ByteBuffer buffer) {
-        ByteBuffer newBuffer = ByteBuffer.allocateDirect(buffer.remaining() * 2);
+        ByteBuffer newBuffer = allocator.allocate(buffer.remaining() * 2);
         newBuffer.put(buffer);
         newBuffer.flip();
         return newBuffer;
@@ -174,17 +188,18 @@ public class SslHelper {
      * @return the accumulated buffer
      */
     private ByteBuffer accumulate(ByteBuffer buffer) {
-        if (previous.capacity() - previous.remaining() > buffer.remaining()) {
+        if (previous.capacity() - previous.limit() >= buffer.remaining()) {
             int oldPosition = previous.position();
             previous.position(previous.limit());
             previous.limit(previous.limit() + buffer.remaining());
             previous.put(buffer);
             previous.position(oldPosition);
         } else {
-            ByteBuffer newPrevious = ByteBuffer.allocateDirect((previous.remaining() + buffer.remaining()) * 2);
+            ByteBuffer newPrevious = allocator.allocate((previous.remaining() + buffer.remaining()) * 2);
             newPrevious.put(previous);
             newPrevious.put(buffer);
             newPrevious.flip();
+            allocator.release(previous);
             previous = newPrevious;
         }
         return previous;
@@ -208,66 +223,90 @@ public class SslHelper {
 
         boolean done = false;
         SSLEngineResult result;
-        ByteBuffer appBuffer = ByteBuffer.allocateDirect(sslEngine.getSession().getApplicationBufferSize());
-
-        HandshakeStatus handshakeStatus = sslEngine.getHandshakeStatus();
-        while (!done) {
-            switch (handshakeStatus) {
-            case NEED_UNWRAP:
-            case NOT_HANDSHAKING:
-            case FINISHED:
-                result = sslEngine.unwrap(tempBuffer, appBuffer);
-                handshakeStatus = result.getHandshakeStatus();
+        ByteBuffer appBuffer = allocator.allocate(sslEngine.getSession().getApplicationBufferSize());
+        int netBufferSize = sslEngine.getSession().getPacketBufferSize();
 
-                switch (result.getStatus()) {
-                case BUFFER_UNDERFLOW:
-                    /* we need more data */
-                    done = true;
-                    break;
-                case BUFFER_OVERFLOW:
-                    /* resize output buffer */
-                    appBuffer = ByteBuffer.allocateDirect(appBuffer.capacity() * 2);
-                    break;
-                case OK:
-                    if ((handshakeStatus == HandshakeStatus.NOT_HANDSHAKING) && (result.bytesProduced() > 0)) {
-                        appBuffer.flip();
-                        session.processMessageReceived(appBuffer);
-                    }
+        try {
+            HandshakeStatus handshakeStatus = sslEngine.getHandshakeStatus();
+            while (!done) {
+                if (handshakeStatus == HandshakeStatus.FINISHED) {
+                    // the last handshake record has already been queued, unencrypted by the session
+                    handshakeFinished = true;
                 }
-                break;
-            case NEED_TASK:
-                Runnable task;
 
-                while ((task = sslEngine.getDelegatedTask()) != null) {
-                    task.run();
-                }
-                handshakeStatus = sslEngine.getHandshakeStatus();
-                break;
-            case NEED_WRAP:
-                result = sslEngine.wrap(EMPTY_BUFFER, appBuffer);
-                handshakeStatus = result.getHandshakeStatus();
-                switch (result.getStatus()) {
-                case BUFFER_OVERFLOW:
-                    appBuffer = ByteBuffer.allocateDirect(appBuffer.capacity() * 2);
-                    break;
-                case BUFFER_UNDERFLOW:
-                    done = true;
+                switch (handshakeStatus) {
+                case NEED_UNWRAP:
+                case NOT_HANDSHAKING:
+                case FINISHED:
+                    result = sslEngine.unwrap(tempBuffer, appBuffer);
+                    handshakeStatus = result.getHandshakeStatus();
+
+                    switch (result.getStatus()) {
+                    case BUFFER_UNDERFLOW:
+                        /* we need more data */
+                        done = true;
+                        break;
+                    case BUFFER_OVERFLOW:
+                        /* resize output buffer */
+                        int newSize = appBuffer.capacity() * 2;
+                        allocator.release(appBuffer);
+                        appBuffer = allocator.allocate(newSize);
+                        break;
+                    case OK:
+                        if ((handshakeStatus == HandshakeStatus.NOT_HANDSHAKING) && (result.bytesProduced() > 0)) {
+                            appBuffer.flip();
+                            session.processMessageReceived(appBuffer);
+                            appBuffer.clear();
+                        }
+                    }
                     break;
-                case CLOSED:
-                case OK:
-                    appBuffer.flip();
-                    WriteRequest writeRequest = new DefaultWriteRequest(readBuffer);
-                    writeRequest.setMessage(appBuffer);
-                    session.enqueueWriteRequest(writeRequest);
+                case NEED_TASK:
+                    Runnable task;
+
+                    while ((task = sslEngine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+                    handshakeStatus = sslEngine.getHandshakeStatus();
                     break;
+                case NEED_WRAP:
+                    // The handshake data are written in their own buffer, which will be released once sent
+                    ByteBuffer netBuffer = allocator.allocate(netBufferSize);
+                    result = sslEngine.wrap(EMPTY_BUFFER, netBuffer);
+                    handshakeStatus = result.getHandshakeStatus();
+                    switch (result.getStatus()) {
+                    case BUFFER_OVERFLOW:
+                        /* resize output buffer, and wrap again */
+                        allocator.release(netBuffer);
+                        netBufferSize = netBuffer.capacity() * 2;
+                        break;
+                    case BUFFER_UNDERFLOW:
+                        allocator.release(netBuffer);
+                        done = true;
+                        break;
+                    case CLOSED:
+                    case OK:
+                        netBuffer.flip();
+                        WriteRequest writeRequest = new DefaultWriteRequest(readBuffer);
+                        writeRequest.setMessage(netBuffer);
+                        writeRequest.setMessagePooled(true);
+                        session.enqueueWriteRequest(writeRequest);
+                        break;
+                    }
                 }
             }
+        } finally {
+            allocator.release(appBuffer);
         }
+
+        ByteBuffer oldPrevious = previous;
+
         if (tempBuffer.remaining() > 0) {
             previous = duplicate(tempBuffer);
         } else {
             previous = null;
         }
+
+        allocator.release(oldPrevious);
         readBuffer.clear();
     }
 
@@ -276,23 +315,26 @@ public class SslHelper {
      * 
      * @param session The session sending encrypted data to the peer.
      * @param message The message to encrypt
-     * @param writeQueue The queue in which the encrypted buffer will be written
-     * @return The written WriteRequest
+     * @return The encrypted buffer, borrowed from the session {@link BufferAllocator}
      */
     /** No qualifier */
-    WriteRequest processWrite(IoSession session, Object message, Queue<WriteRequest> writeQueue) {
-        ByteBuffer buf = (ByteBuffer) message;
-        ByteBuffer appBuffer = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
+    ByteBuffer processWrite(IoSession session, ByteBuffer message) {
+        int packetSize = sslEngine.getSession().getPacketBufferSize();
+        ByteBuffer appBuffer = allocator.allocate(packetSize);
 
         try {
             while (true) {
-                // Encrypt the message
-                SSLEngineResult result = sslEngine.wrap(buf, appBuffer);
+                // Encrypt the message : a record may not hold all of it
+                SSLEngineResult result = sslEngine.wrap(message, appBuffer);
 
                 switch (result.getStatus()) {
                 case BUFFER_OVERFLOW:
-                    // Increase the buffer size as needed
-                    appBuffer = ByteBuffer.allocate(appBuffer.capacity() + 4096);
+                    // Increase the buffer size as needed, keeping the records already produced
+                    ByteBuffer newBuffer = allocator.allocate(appBuffer.capacity() + packetSize);
+                    appBuffer.flip();
+                    newBuffer.put(appBuffer);
+                    allocator.release(appBuffer);
+                    appBuffer = newBuffer;
                     break;
 
                 case BUFFER_UNDERFLOW:
@@ -300,14 +342,19 @@ public class SslHelper {
                     break;
 
                 case OK:
-                    // We are done. Flip the buffer and push it to the write queue.
+                    if (message.hasRemaining()) {
+                        // encrypt the rest of the message in the next records
+                        break;
+                    }
+
+                    // We are done. Flip the buffer, it will be pushed to the write queue.
                     appBuffer.flip();
-                    WriteRequest request = new DefaultWriteRequest(appBuffer);
 
-                    return request;
+                    return appBuffer;
                 }
             }
         } catch (SSLException se) {
+            allocator.release(appBuffer);
             throw new IllegalStateException(se.getMessage());
         }
     }
@@ -0,0 +1,186 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+import org.apache.mina.api.IdleStatus;
+import org.apache.mina.transport.tcp.ProxyTcpSessionConfig;
+import org.apache.mina.transport.tcp.TcpSessionConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The session configuration to apply to the accepted sessions, computed once from the service configuration. The
+ * boolean socket options equal to the default values of a newly created socket are skipped, so that accepting a
+ * session doesn't cost useless system calls. The buffer sizes, the linger time and the traffic class are always
+ * applied when configured : an accepted socket doesn't inherit them from a new socket, and setting a buffer size
+ * disables its auto-tuning by the kernel even when it's the default size.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+final class TcpSessionConfigTemplate {
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger(TcpSessionConfigTemplate.class);
+
+    private final long readIdleTime;
+
+    private final long writeIdleTime;
+
+    private final int writeQueueHighWatermark;
+
+    private final int writeQueueLowWatermark;
+
+    private final int writeCoalescingThreshold;
+
+    private final int autoCorkDelay;
+
+    private final int autoCorkThreshold;
+
+    private final int maxWriteQueueAge;
+
+    private final Boolean keepAlive;
+
+    private final Boolean oobInline;
+
+    private final Boolean reuseAddress;
+
+    private final Boolean tcpNoDelay;
+
+    private final Integer readBufferSize;
+
+    private final Integer sendBufferSize;
+
+    private final Integer trafficClass;
+
+    private final Integer soLinger;
+
+    /**
+     * Compute the template for a given service configuration
+     * 
+     * @param config the default session configuration of the service
+     */
+    TcpSessionConfigTemplate(TcpSessionConfig config) {
+        readIdleTime = config.getIdleTimeInMillis(IdleStatus.READ_IDLE);
+        writeIdleTime = config.getIdleTimeInMillis(IdleStatus.WRITE_IDLE);
+        writeQueueHighWatermark = config.getWriteQueueHighWatermark();
+        writeQueueLowWatermark = config.getWriteQueueLowWatermark();
+        writeCoalescingThreshold = config.getWriteCoalescingThreshold();
+        autoCorkDelay = config.getAutoCorkDelay();
+        autoCorkThreshold = config.getAutoCorkThreshold();
+        maxWriteQueueAge = config.getMaxWriteQueueAge();
+        readBufferSize = config.getReadBufferSize();
+        sendBufferSize = config.getSendBufferSize();
+        trafficClass = config.getTrafficClass();
+        soLinger = config.getSoLinger();
+
+        TcpSessionConfig defaults = null;
+        SocketChannel probe = null;
+
+        try {
+            // read the default flags on a new socket
+            probe = SocketChannel.open();
+            defaults = new ProxyTcpSessionConfig(probe.socket());
+        } catch (IOException e) {
+            // We can't get the defaults, all the configured options will be applied
+            LOG.warn("Cannot read the default socket options", e);
+        }
+
+        try {
+            keepAlive = skipDefault(config.isKeepAlive(), defaults == null ? null : defaults.isKeepAlive());
+            oobInline = skipDefault(config.isOobInline(), defaults == null ? null : defaults.isOobInline());
+            reuseAddress = skipDefault(config.isReuseAddress(), defaults == null ? null : defaults.isReuseAddress());
+            tcpNoDelay = skipDefault(config.isTcpNoDelay(), defaults == null ? null : defaults.isTcpNoDelay());
+        } finally {
+            if (probe != null) {
+                try {
+                    probe.close();
+                } catch (IOException e) {
+                    // nothing to do
+                }
+            }
+        }
+    }
+
+    /**
+     * @return <code>null</code> if the configured flag is the default one, the configured flag otherwise
+     */
+    private static Boolean skipDefault(Boolean configured, Boolean defaultValue) {
+        if ((configured == null) || configured.equals(defaultValue)) {
+            return null;
+        }
+
+        return configured;
+    }
+
+    /**
+     * Apply the template to a new session
+     * 
+     * @param sessionConfig the configuration of the new session
+     */
+    void apply(TcpSessionConfig sessionConfig) {
+        // apply idle configuration
+        sessionConfig.setIdleTimeInMillis(IdleStatus.READ_IDLE, readIdleTime);
+        sessionConfig.setIdleTimeInMillis(IdleStatus.WRITE_IDLE, writeIdleTime);
+
+        // apply the write queue bounds
+        sessionConfig.setWriteQueueHighWatermark(writeQueueHighWatermark);
+        sessionConfig.setWriteQueueLowWatermark(writeQueueLowWatermark);
+        sessionConfig.setWriteCoalescingThreshold(writeCoalescingThreshold);
+        sessionConfig.setAutoCorkDelay(autoCorkDelay);
+        sessionConfig.setAutoCorkThreshold(autoCorkThreshold);
+        sessionConfig.setMaxWriteQueueAge(maxWriteQueueAge);
+
+        // apply the flags which are not the default ones
+        if (keepAlive != null) {
+            sessionConfig.setKeepAlive(keepAlive);
+        }
+
+        if (oobInline != null) {
+            sessionConfig.setOobInline(oobInline);
+        }
+
+        if (reuseAddress != null) {
+            sessionConfig.setReuseAddress(reuseAddress);
+        }
+
+        if (tcpNoDelay != null) {
+            sessionConfig.setTcpNoDelay(tcpNoDelay);
+        }
+
+        // apply the configured socket options
+        if (readBufferSize != null) {
+            sessionConfig.setReadBufferSize(readBufferSize);
+        }
+
+        if (sendBufferSize != null) {
+            sessionConfig.setSendBufferSize(sendBufferSize);
+        }
+
+        if (trafficClass != null) {
+            sessionConfig.setTrafficClass(trafficClass);
+        }
+
+        if (soLinger != null) {
+            sessionConfig.setSoLinger(soLinger);
+        }
+    }
+}
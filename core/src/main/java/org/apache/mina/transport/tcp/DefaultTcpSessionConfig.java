@@ -48,6 +48,24 @@ public class DefaultTcpSessionConfig extends AbstractIoSessionConfig implements
     /** The SO_LINGER socket option */
     private Integer soLinger;
 
+    /** The number of pending bytes above which the session is not writable */
+    private int writeQueueHighWatermark = -1;
+
+    /** The number of pending bytes below which the session becomes writable again */
+    private int writeQueueLowWatermark = -1;
+
+    /** The size below which the written buffers are coalesced */
+    private int writeCoalescingThreshold = -1;
+
+    /** The maximum time in microseconds the staged writes are held before being flushed */
+    private int autoCorkDelay = -1;
+
+    /** The number of staged bytes which triggers a flush of the held writes */
+    private int autoCorkThreshold = -1;
+
+    /** The maximum time in milliseconds a write request can stay queued before the session is closed */
+    private int maxWriteQueueAge = -1;
+
     /**
      * {@inheritDoc}
      */
@@ -139,4 +157,100 @@ public class DefaultTcpSessionConfig extends AbstractIoSessionConfig implements
     public boolean isSecured() {
         return sslContext != null;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getWriteQueueHighWatermark() {
+        return writeQueueHighWatermark;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setWriteQueueHighWatermark(int highWatermark) {
+        this.writeQueueHighWatermark = highWatermark;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getWriteQueueLowWatermark() {
+        return writeQueueLowWatermark;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setWriteQueueLowWatermark(int lowWatermark) {
+        this.writeQueueLowWatermark = lowWatermark;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getWriteCoalescingThreshold() {
+        return writeCoalescingThreshold;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setWriteCoalescingThreshold(int threshold) {
+        this.writeCoalescingThreshold = threshold;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getAutoCorkDelay() {
+        return autoCorkDelay;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAutoCorkDelay(int delay) {
+        this.autoCorkDelay = delay;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getAutoCorkThreshold() {
+        return autoCorkThreshold;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAutoCorkThreshold(int threshold) {
+        this.autoCorkThreshold = threshold;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxWriteQueueAge() {
+        return maxWriteQueueAge;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setMaxWriteQueueAge(int maxAge) {
+        this.maxWriteQueueAge = maxAge;
+    }
 }
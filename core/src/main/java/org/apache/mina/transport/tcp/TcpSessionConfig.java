@@ -99,4 +99,97 @@ public interface TcpSessionConfig extends IoSessionConfig {
      * @return The {@link SSLContext} instance stored in the configuration.
      */
     void setSslContext(SSLContext sslContext);
+
+    /**
+     * The number of bytes pending in the write queue above which the session is not writable anymore : the
+     * {@link org.apache.mina.api.IoHandler} is notified and the reads of the session are suspended until the write
+     * queue is drained below the low watermark.
+     * 
+     * @return the high watermark in bytes, or <code>-1</code> if the write queue is not bounded
+     */
+    int getWriteQueueHighWatermark();
+
+    /**
+     * Set the number of bytes pending in the write queue above which the session is not writable anymore.
+     * 
+     * @param highWatermark the high watermark in bytes, <code>-1</code> for an unbounded write queue
+     */
+    void setWriteQueueHighWatermark(int highWatermark);
+
+    /**
+     * The number of bytes pending in the write queue below which a not writable session becomes writable again.
+     * 
+     * @return the low watermark in bytes, <code>-1</code> if not set (half of the high watermark is then used)
+     */
+    int getWriteQueueLowWatermark();
+
+    /**
+     * Set the number of bytes pending in the write queue below which a not writable session becomes writable again.
+     * 
+     * @param lowWatermark the low watermark in bytes, <code>-1</code> for half the high watermark
+     */
+    void setWriteQueueLowWatermark(int lowWatermark);
+
+    /**
+     * The write coalescing threshold : when enabled, the buffers smaller than this size are copied into a pooled
+     * aggregation buffer of this size instead of being queued one by one, so that many small messages are sent in a
+     * single TCP segment. The staged writes are flushed when an aggregation buffer is full.
+     * 
+     * @return the coalescing threshold in bytes, or <code>-1</code> if the writes are not coalesced
+     */
+    int getWriteCoalescingThreshold();
+
+    /**
+     * Set the write coalescing threshold.
+     * 
+     * @param threshold the coalescing threshold in bytes, <code>-1</code> to disable the write coalescing
+     */
+    void setWriteCoalescingThreshold(int threshold);
+
+    /**
+     * The auto-cork delay : when enabled, the messages written by the selector loop are held for at most this delay
+     * before being flushed in a single gathering write, unless the session is flushed before, or the held bytes reach
+     * the auto-cork threshold. It works with TCP_NODELAY set, and is driven by the selector loop, so its resolution is
+     * the millisecond when the loop is idle.
+     * 
+     * @return the auto-cork delay in microseconds, or <code>-1</code> if the writes are flushed at the end of each
+     *         selector loop iteration
+     */
+    int getAutoCorkDelay();
+
+    /**
+     * Set the auto-cork delay.
+     * 
+     * @param delay the auto-cork delay in microseconds, <code>-1</code> to disable the auto-cork mode
+     */
+    void setAutoCorkDelay(int delay);
+
+    /**
+     * The number of held bytes above which the auto-corked writes are flushed without waiting for the auto-cork delay.
+     * 
+     * @return the auto-cork threshold in bytes, or <code>-1</code> if only the delay triggers the flush
+     */
+    int getAutoCorkThreshold();
+
+    /**
+     * Set the auto-cork threshold.
+     * 
+     * @param threshold the auto-cork threshold in bytes, <code>-1</code> if only the delay triggers the flush
+     */
+    void setAutoCorkThreshold(int threshold);
+
+    /**
+     * The maximum age of the write requests queued in the session : a session which oldest pending write request has
+     * been queued for longer is closed, as its peer is not consuming the messages fast enough.
+     * 
+     * @return the maximum age of the queued write requests in milliseconds, or <code>-1</code> for no limit
+     */
+    int getMaxWriteQueueAge();
+
+    /**
+     * Set the maximum age of the queued write requests.
+     * 
+     * @param maxAge the maximum age in milliseconds, <code>-1</code> for no limit
+     */
+    void setMaxWriteQueueAge(int maxAge);
 }
@@ -0,0 +1,114 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A coarse clock for the I/O hot path. Calling {@link System#currentTimeMillis()} for each message is costly when
+ * handling millions of small messages per second, so the selector loops refresh this clock once per iteration (see
+ * {@link #update()}), and the sessions, the idle checker and the protocols running in the loops read the cached value.
+ * The returned time can hence lag behind by the duration of a loop iteration.<br>
+ * <br>
+ * Only the threads which declared they refresh the clock (see {@link #startRefreshing()}) read the cached value : the
+ * other threads (the handler executors, the application threads...) read the system clock, as nothing tells when the
+ * cached value was refreshed for the last time.<br>
+ * <br>
+ * The high resolution mode (enabled with the <code>org.apache.mina.clock.highResolution</code> system property, or
+ * {@link #setHighResolution(boolean)}) makes {@link #currentTimeMillis()} read the system clock on each call.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public final class Clock {
+    /** The cached time, in milliseconds */
+    private static final AtomicLong CURRENT_TIME_MILLIS = new AtomicLong(System.currentTimeMillis());
+
+    /** Tells if the current thread refreshes the cached time */
+    private static final ThreadLocal<Boolean> REFRESHING_THREAD = new ThreadLocal<Boolean>();
+
+    /** Tells if we read the system clock on each call */
+    private static volatile boolean highResolution = Boolean.getBoolean("org.apache.mina.clock.highResolution");
+
+    private Clock() {
+    }
+
+    /**
+     * Gets the current time, as refreshed by the last call to {@link #update()} when called by a thread refreshing the
+     * clock, or the system time for the other threads and in high resolution mode.
+     * 
+     * @return the current time in milliseconds (unix time)
+     */
+    public static long currentTimeMillis() {
+        if (highResolution || (REFRESHING_THREAD.get() == null)) {
+            return System.currentTimeMillis();
+        }
+
+        return CURRENT_TIME_MILLIS.get();
+    }
+
+    /**
+     * Declare the current thread as refreshing the clock : it must call {@link #update()} at least once per iteration
+     * of its loop, before reading the time. The thread then reads the cached time instead of the system clock.
+     */
+    public static void startRefreshing() {
+        REFRESHING_THREAD.set(Boolean.TRUE);
+        update();
+    }
+
+    /**
+     * Refresh the cached time from the system clock. Called by the selector loops for each iteration. The cached time
+     * never goes backward, even if many threads refresh it concurrently.
+     * 
+     * @return the current time in milliseconds (unix time)
+     */
+    public static long update() {
+        long now = System.currentTimeMillis();
+
+        for (;;) {
+            long cached = CURRENT_TIME_MILLIS.get();
+
+            if (now <= cached) {
+                // don't write the shared value if not needed
+                return cached;
+            }
+
+            if (CURRENT_TIME_MILLIS.compareAndSet(cached, now)) {
+                return now;
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the system clock is read on each call to {@link #currentTimeMillis()}
+     */
+    public static boolean isHighResolution() {
+        return highResolution;
+    }
+
+    /**
+     * Tells if the system clock must be read on each call to {@link #currentTimeMillis()}, instead of using the cached
+     * time.
+     * 
+     * @param highResolution <code>true</code> to read the system clock on each call
+     */
+    public static void setHighResolution(boolean highResolution) {
+        Clock.highResolution = highResolution;
+    }
+}
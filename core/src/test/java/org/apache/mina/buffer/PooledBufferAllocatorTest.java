@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.mina.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests class {@link PooledBufferAllocator}
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PooledBufferAllocatorTest {
+
+    @Test
+    public void allocateUsesSizeClasses() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(512, 4096, 4);
+
+        ByteBuffer small = allocator.allocate(10);
+        assertTrue(small.isDirect());
+        assertEquals(512, small.capacity());
+        assertEquals(0, small.position());
+        assertEquals(10, small.limit());
+
+        ByteBuffer medium = allocator.allocate(513);
+        assertEquals(1024, medium.capacity());
+        assertEquals(513, medium.limit());
+
+        ByteBuffer exact = allocator.allocate(4096);
+        assertEquals(4096, exact.capacity());
+    }
+
+    @Test
+    public void releasedBufferIsRecycled() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(512, 4096, 4);
+
+        ByteBuffer buffer = allocator.allocate(100);
+        buffer.put((byte) 1);
+        allocator.release(buffer);
+
+        ByteBuffer recycled = allocator.allocate(200);
+        assertSame(buffer, recycled);
+        assertEquals(0, recycled.position());
+        assertEquals(200, recycled.limit());
+    }
+
+    @Test
+    public void recycleWithoutThreadCache() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(512, 4096, 0);
+
+        ByteBuffer buffer = allocator.allocate(100);
+        allocator.release(buffer);
+
+        assertSame(buffer, allocator.allocate(100));
+    }
+
+    @Test
+    public void statistics() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(512, 4096, 4);
+
+        ByteBuffer pooled = allocator.allocate(100);
+        ByteBuffer unpooled = allocator.allocate(10000);
+
+        assertEquals(512 + 10000, allocator.getBorrowedBytes());
+        assertEquals(512 + 10000, allocator.getOutstandingBytes());
+        // a slab of 16 buffers has been carved for the 512 bytes class
+        assertEquals(15 * 512, allocator.getPooledBytes());
+
+        allocator.release(pooled);
+        allocator.release(unpooled);
+
+        assertEquals(512 + 10000, allocator.getBorrowedBytes());
+        assertEquals(0, allocator.getOutstandingBytes());
+        assertEquals(16 * 512, allocator.getPooledBytes());
+    }
+
+    @Test
+    public void foreignBuffersAreIgnored() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(512, 4096, 4);
+
+        allocator.release(ByteBuffer.allocate(512));
+        allocator.release(ByteBuffer.allocateDirect(600));
+
+        assertEquals(0, allocator.getOutstandingBytes());
+        assertEquals(0, allocator.getPooledBytes());
+    }
+
+    @Test
+    public void foreignBuffersOfSizeClassAreIgnored() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(512, 4096, 4);
+        ByteBuffer pooled = allocator.allocate(512);
+
+        ByteBuffer foreign = ByteBuffer.allocateDirect(512);
+        allocator.release(foreign);
+
+        assertEquals(512, allocator.getOutstandingBytes());
+        assertEquals(15 * 512, allocator.getPooledBytes());
+
+        for (int i = 0; i < 16; i++) {
+            assertNotSame(foreign, allocator.allocate(512));
+        }
+
+        allocator.release(pooled);
+    }
+
+    @Test
+    public void freeListsAreBounded() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(512, 4096, 0, 512);
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+
+        // two slabs
+        for (int i = 0; i < 32; i++) {
+            buffers.add(allocator.allocate(512));
+        }
+
+        assertEquals(0, allocator.getPooledBytes());
+
+        for (ByteBuffer buffer : buffers) {
+            allocator.release(buffer);
+        }
+
+        // a slab is kept, the other buffers are dropped
+        assertEquals(0, allocator.getOutstandingBytes());
+        assertEquals(16 * 512, allocator.getPooledBytes());
+
+        // a dropped buffer is not ours anymore
+        allocator.release(buffers.get(0));
+        assertEquals(16 * 512, allocator.getPooledBytes());
+    }
+
+    @Test
+    public void cacheOfDeadThreadIsReclaimed() throws InterruptedException {
+        final PooledBufferAllocator allocator = new PooledBufferAllocator(512, 4096, 4);
+        final AtomicReference<ByteBuffer> cached = new AtomicReference<ByteBuffer>();
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                PooledBufferAllocator.enableThreadCache();
+                ByteBuffer buffer = allocator.allocate(512);
+                allocator.release(buffer);
+                cached.set(buffer);
+            }
+        };
+
+        thread.start();
+        thread.join();
+
+        // the 15 other buffers of the slab are in the free list, the 16th in the cache of the dead thread
+        for (int i = 0; i < 15; i++) {
+            assertNotSame(cached.get(), allocator.allocate(512));
+        }
+
+        assertSame(cached.get(), allocator.allocate(512));
+        assertEquals(0, allocator.getPooledBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeClassesMustBePowerOfTwo() {
+        new PooledBufferAllocator(500, 4096, 4);
+    }
+}
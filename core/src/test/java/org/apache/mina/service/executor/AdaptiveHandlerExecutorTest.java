@@ -0,0 +1,236 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.IoFuture;
+import org.apache.mina.api.IoService;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.api.IoSessionConfig;
+import org.apache.mina.session.AbstractIoSession;
+import org.apache.mina.session.AbstractIoSessionConfig;
+import org.apache.mina.session.WriteRequest;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link AdaptiveHandlerExecutor}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class AdaptiveHandlerExecutorTest {
+
+    private final OrderedHandlerExecutor offloadExecutor = new OrderedHandlerExecutor(1, 1024, OverflowPolicy.SPILL);
+
+    private final AdaptiveHandlerExecutor executor = new AdaptiveHandlerExecutor(offloadExecutor, 1,
+            TimeUnit.MILLISECONDS);
+
+    private final IoSession session = new DummySession(mock(IoService.class));
+
+    private final List<Integer> executed = new CopyOnWriteArrayList<Integer>();
+
+    private final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+
+    @After
+    public void shutdown() {
+        offloadExecutor.shutdown();
+    }
+
+    @Test
+    public void cheap_events_are_executed_inline() {
+        for (int i = 0; i < 100; i++) {
+            executor.execute(new RecordingEvent(i, 0, null));
+        }
+
+        assertEquals(100, executed.size());
+
+        for (Thread thread : threads) {
+            assertSame(Thread.currentThread(), thread);
+        }
+
+        assertEquals(0, executor.getOffloadCount());
+        assertTrue(executor.executesInline(session));
+    }
+
+    @Test
+    public void expensive_session_is_offloaded_then_migrated_back_in_order() throws InterruptedException {
+        int sequence = 0;
+
+        // the average cost goes above the budget
+        for (; sequence < 3; sequence++) {
+            executor.execute(new RecordingEvent(sequence, 5, null));
+        }
+
+        assertEquals(1, executor.getOffloadCount());
+        assertTrue(!executor.executesInline(session));
+
+        // the cost goes down while offloaded
+        CountDownLatch done = new CountDownLatch(1);
+
+        for (; sequence < 30; sequence++) {
+            executor.execute(new RecordingEvent(sequence, 0, sequence == 29 ? done : null));
+        }
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), threads.get(threads.size() - 1));
+
+        // back in the calling thread, once the offloaded event has been accounted after its execution
+        long deadline = System.currentTimeMillis() + 1000;
+
+        while (!executor.executesInline(session) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(1);
+        }
+
+        assertTrue(executor.executesInline(session));
+        executor.execute(new RecordingEvent(sequence++, 0, null));
+        assertEquals(1, executor.getInlineCount());
+        assertSame(Thread.currentThread(), threads.get(threads.size() - 1));
+
+        for (int i = 0; i < sequence; i++) {
+            assertEquals(Integer.valueOf(i), executed.get(i));
+        }
+    }
+
+    /**
+     * An event recording its execution, taking some time
+     */
+    private class RecordingEvent extends SentEvent {
+        private final int sequence;
+
+        private final long cost;
+
+        private final CountDownLatch done;
+
+        RecordingEvent(int sequence, long cost, CountDownLatch done) {
+            super(session, null);
+            this.sequence = sequence;
+            this.cost = cost;
+            this.done = done;
+        }
+
+        @Override
+        public void visit(EventVisitor visitor) {
+            try {
+                Thread.sleep(cost);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            executed.add(sequence);
+            threads.add(Thread.currentThread());
+
+            if (done != null) {
+                done.countDown();
+            }
+        }
+    }
+
+    private static class DummySession extends AbstractIoSession {
+
+        private DummySession(IoService service) {
+            super(service, null);
+        }
+
+        @Override
+        public IoFuture<Void> close(boolean immediately) {
+            return null;
+        }
+
+        IoSessionConfig config = new AbstractIoSessionConfig() {
+        };
+
+        @Override
+        public IoSessionConfig getConfig() {
+            return config;
+        }
+
+        @Override
+        public SocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public SocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return false;
+        }
+
+        @Override
+        public boolean isReadSuspended() {
+            return false;
+        }
+
+        @Override
+        public boolean isWriteSuspended() {
+            return false;
+        }
+
+        @Override
+        public void resumeRead() {
+        }
+
+        @Override
+        public void resumeWrite() {
+        }
+
+        @Override
+        public void suspendRead() {
+        }
+
+        @Override
+        public void suspendWrite() {
+        }
+
+        @Override
+        public boolean isSecuring() {
+            return false;
+        }
+
+        @Override
+        public boolean isSecured() {
+            return false;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public WriteRequest enqueueWriteRequest(WriteRequest writeRequest) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.IoSession;
+
+/**
+ * Submit events from two threads to an executor which workers are saturated all the time, and check they are all
+ * executed.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+final class ExecutorStress {
+
+    private static final int PRODUCER_COUNT = 2;
+
+    private static final int EVENT_COUNT = 200000;
+
+    private ExecutorStress() {
+    }
+
+    static void run(final IoHandlerExecutor executor) throws InterruptedException {
+        final CountDownLatch executed = new CountDownLatch(PRODUCER_COUNT * EVENT_COUNT);
+
+        for (int i = 0; i < PRODUCER_COUNT; i++) {
+            final IoSession session = mock(IoSession.class);
+
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < EVENT_COUNT; j++) {
+                        executor.execute(new SentEvent(session, null) {
+                            @Override
+                            public void visit(EventVisitor visitor) {
+                                executed.countDown();
+                            }
+                        });
+                    }
+                }
+            }.start();
+        }
+
+        assertTrue(executed.await(30, TimeUnit.SECONDS));
+    }
+}
@@ -125,6 +125,7 @@ public class HandlerCallerTest {
         // verify
         verify(event).getSession();
         verify(event).getMessage();
+        verify(event).release();
         verify(session).getService();
         verify(service).getIoHandler();
         verify(handler).messageReceived(session, msg);
@@ -153,4 +154,24 @@ public class HandlerCallerTest {
         verifyNoMoreInteractions(session, event, handler);
     }
 
+    @Test
+    public void call_writability_changed() {
+        // prepare
+        WritabilityEvent event = mock(WritabilityEvent.class);
+        when(event.isWritable()).thenReturn(false);
+        when(event.getSession()).thenReturn(session);
+
+        // run
+        caller.visit(event);
+
+        // verify
+        verify(event).getSession();
+        verify(event).isWritable();
+        verify(session).getService();
+        verify(service).getIoHandler();
+        verify(handler).sessionWritabilityChanged(session, false);
+
+        verifyNoMoreInteractions(session, event, handler);
+    }
+
 }
@@ -19,13 +19,25 @@
  */
 package org.apache.mina.service.executor;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.mina.api.IoSession;
+import org.apache.mina.buffer.BufferAllocator;
+import org.junit.After;
 import org.junit.Test;
 
 /**
@@ -36,6 +48,13 @@ import org.junit.Test;
 public class OrderedHandlerExecutorTest {
     private OrderedHandlerExecutor executor;
 
+    @After
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void execute_open_events() throws InterruptedException {
         // prepare
@@ -57,4 +76,154 @@ public class OrderedHandlerExecutorTest {
         verify(evt).visit(any(EventVisitor.class));
         verifyNoMoreInteractions(evt, session);
     }
+
+    @Test
+    public void full_queue_rejects_and_releases_received_buffers() throws InterruptedException {
+        executor = new OrderedHandlerExecutor(1, 1, OverflowPolicy.REJECT);
+        IoSession session = mock(IoSession.class);
+        BlockingEvent blocking = saturate(session);
+
+        BufferAllocator allocator = mock(BufferAllocator.class);
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        executor.execute(new ReceiveEvent(session, buffer, allocator));
+
+        assertEquals(1, executor.getRejectedEventCount());
+        verify(allocator).release(buffer);
+
+        // the session lifecycle events are never rejected
+        RecordingEvent close = new RecordingEvent(session, null);
+        executor.execute(close);
+        assertEquals(1, executor.getRejectedEventCount());
+        assertEquals(1, executor.getSpilledEventCount());
+
+        blocking.release.countDown();
+        assertTrue(close.visited.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void full_queue_suspends_reads_until_drained() throws InterruptedException {
+        executor = new OrderedHandlerExecutor(1, 1);
+        IoSession session = mock(IoSession.class);
+        BlockingEvent blocking = saturate(session);
+
+        RecordingEvent spilled = new RecordingEvent(session, null);
+        executor.execute(spilled);
+
+        verify(session).suspendRead();
+        verify(session, never()).resumeRead();
+        assertEquals(1, executor.getSuspendedReadCount());
+
+        blocking.release.countDown();
+        assertTrue(spilled.visited.await(1, TimeUnit.SECONDS));
+        verify(session, timeout(1000)).resumeRead();
+    }
+
+    @Test
+    public void spilled_events_are_executed_in_order() throws InterruptedException {
+        executor = new OrderedHandlerExecutor(1, 1, OverflowPolicy.SPILL);
+        IoSession session = mock(IoSession.class);
+        BlockingEvent blocking = saturate(session);
+
+        List<Integer> executed = new CopyOnWriteArrayList<Integer>();
+        RecordingEvent last = null;
+
+        for (int i = 0; i < 10; i++) {
+            last = new RecordingEvent(session, executed, i);
+            executor.execute(last);
+        }
+
+        assertEquals(10, executor.getSpilledEventCount());
+        blocking.release.countDown();
+        assertTrue(last.visited.await(1, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(i), executed.get(i));
+        }
+    }
+
+    @Test
+    public void saturated_worker_never_stalls() throws InterruptedException {
+        executor = new OrderedHandlerExecutor(1, 1);
+        ExecutorStress.run(executor);
+    }
+
+    /**
+     * Block the worker with an event, and fill its queue
+     */
+    private BlockingEvent saturate(IoSession session) throws InterruptedException {
+        BlockingEvent blocking = new BlockingEvent(session);
+        executor.execute(blocking);
+        assertTrue(blocking.started.await(1, TimeUnit.SECONDS));
+        executor.execute(new RecordingEvent(session, null));
+
+        return blocking;
+    }
+
+    private static class BlockingEvent implements Event {
+        private final IoSession session;
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        BlockingEvent(IoSession session) {
+            this.session = session;
+        }
+
+        @Override
+        public IoSession getSession() {
+            return session;
+        }
+
+        @Override
+        public void visit(EventVisitor visitor) {
+            started.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean isLifecycleEvent() {
+            return false;
+        }
+
+        @Override
+        public void discard() {
+            // nothing to give back
+        }
+    }
+
+    /**
+     * An event considered as a lifecycle event by the executor, recording its execution
+     */
+    private static class RecordingEvent extends CloseEvent {
+        private final List<Integer> executed;
+
+        private final int index;
+
+        private final CountDownLatch visited = new CountDownLatch(1);
+
+        RecordingEvent(IoSession session, List<Integer> executed) {
+            this(session, executed, -1);
+        }
+
+        RecordingEvent(IoSession session, List<Integer> executed, int index) {
+            super(session);
+            this.executed = executed;
+            this.index = index;
+        }
+
+        @Override
+        public void visit(EventVisitor visitor) {
+            if (executed != null) {
+                executed.add(index);
+            }
+
+            visited.countDown();
+        }
+    }
 }
@@ -0,0 +1,169 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.api.IoSession;
+import org.apache.mina.buffer.PooledBufferAllocator;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link RingBufferHandlerExecutor}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class RingBufferHandlerExecutorTest {
+
+    private static final int PRODUCER_COUNT = 4;
+
+    private static final int EVENT_COUNT = 100000;
+
+    private RingBufferHandlerExecutor executor;
+
+    @After
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void blocking_workers_execute_in_order() throws InterruptedException {
+        checkOrder(WaitStrategy.BLOCKING);
+    }
+
+    @Test
+    public void yielding_workers_execute_in_order() throws InterruptedException {
+        checkOrder(WaitStrategy.YIELDING);
+    }
+
+    @Test
+    public void busy_spinning_workers_execute_in_order() throws InterruptedException {
+        checkOrder(WaitStrategy.BUSY_SPIN);
+    }
+
+    @Test
+    public void full_ring_buffer_rejects_and_releases_received_buffers() throws InterruptedException {
+        executor = new RingBufferHandlerExecutor(1, 2, WaitStrategy.BLOCKING, OverflowPolicy.REJECT);
+        IoSession session = mock(IoSession.class);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new CloseEvent(session) {
+            @Override
+            public void visit(EventVisitor visitor) {
+                started.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        SequenceChecker checker = new SequenceChecker(1, 2);
+        executor.execute(checker.event(session, 0, 0));
+        executor.execute(checker.event(session, 0, 1));
+
+        PooledBufferAllocator allocator = new PooledBufferAllocator(512, 4096, 0);
+        executor.execute(new ReceiveEvent(session, allocator.allocate(10), allocator));
+
+        assertEquals(1, executor.getRejectedEventCount());
+        assertEquals(0, allocator.getOutstandingBytes());
+
+        release.countDown();
+        checker.await();
+    }
+
+    @Test
+    public void saturated_worker_never_stalls() throws InterruptedException {
+        executor = new RingBufferHandlerExecutor(1, 1);
+        ExecutorStress.run(executor);
+    }
+
+    /**
+     * Submit events from several threads, and check each thread events are executed in the submission order
+     */
+    private void checkOrder(WaitStrategy waitStrategy) throws InterruptedException {
+        executor = new RingBufferHandlerExecutor(2, 64, waitStrategy, OverflowPolicy.SPILL);
+        final IoSession session = mock(IoSession.class);
+        final SequenceChecker checker = new SequenceChecker(PRODUCER_COUNT, EVENT_COUNT);
+
+        for (int i = 0; i < PRODUCER_COUNT; i++) {
+            final int producer = i;
+
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int sequence = 0; sequence < EVENT_COUNT; sequence++) {
+                        executor.execute(checker.event(session, producer, sequence));
+                    }
+                }
+            }.start();
+        }
+
+        checker.await();
+    }
+
+    /**
+     * Check the events of each producer are executed in sequence
+     */
+    private static class SequenceChecker {
+        private final int[] expected;
+
+        private final AtomicInteger errors = new AtomicInteger();
+
+        private final CountDownLatch executed;
+
+        SequenceChecker(int producerCount, int eventCount) {
+            expected = new int[producerCount];
+            executed = new CountDownLatch(producerCount * eventCount);
+        }
+
+        Event event(IoSession session, final int producer, final int sequence) {
+            return new OpenEvent(session) {
+                @Override
+                public void visit(EventVisitor visitor) {
+                    // always executed by the same worker
+                    if (expected[producer]++ != sequence) {
+                        errors.incrementAndGet();
+                    }
+
+                    executed.countDown();
+                }
+            };
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(executed.await(10, TimeUnit.SECONDS));
+            assertEquals(0, errors.get());
+        }
+    }
+}
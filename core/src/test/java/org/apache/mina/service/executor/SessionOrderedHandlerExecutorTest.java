@@ -0,0 +1,153 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.api.IoSession;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SessionOrderedHandlerExecutor}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SessionOrderedHandlerExecutorTest {
+
+    private static final int SESSION_COUNT = 16;
+
+    private static final int EVENT_COUNT = 10000;
+
+    private ExecutorService pool;
+
+    private SessionOrderedHandlerExecutor executor;
+
+    @Before
+    public void setup() {
+        pool = Executors.newFixedThreadPool(4);
+        executor = new SessionOrderedHandlerExecutor(pool);
+    }
+
+    @After
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void events_of_a_session_are_executed_in_order() throws InterruptedException {
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch executed = new CountDownLatch(SESSION_COUNT * EVENT_COUNT);
+        IoSession[] sessions = new IoSession[SESSION_COUNT];
+        final int[] expected = new int[SESSION_COUNT];
+
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            sessions[i] = mock(IoSession.class);
+        }
+
+        for (int sequence = 0; sequence < EVENT_COUNT; sequence++) {
+            for (int i = 0; i < SESSION_COUNT; i++) {
+                final int session = i;
+                final int eventSequence = sequence;
+
+                executor.execute(new OpenEvent(sessions[i]) {
+                    @Override
+                    public void visit(EventVisitor visitor) {
+                        if (expected[session]++ != eventSequence) {
+                            errors.incrementAndGet();
+                        }
+
+                        executed.countDown();
+                    }
+                });
+            }
+        }
+
+        assertTrue(executed.await(10, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+    }
+
+    @Test
+    public void busy_session_does_not_starve_the_others() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch executed = new CountDownLatch(SESSION_COUNT);
+
+        // one session keeps a thread busy
+        executor.execute(new OpenEvent(mock(IoSession.class)) {
+            @Override
+            public void visit(EventVisitor visitor) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            executor.execute(new OpenEvent(mock(IoSession.class)) {
+                @Override
+                public void visit(EventVisitor visitor) {
+                    executed.countDown();
+                }
+            });
+        }
+
+        assertTrue(executed.await(1, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void queue_is_discarded_once_the_session_is_closed() throws InterruptedException {
+        IoSession session = mock(IoSession.class);
+        final CountDownLatch executed = new CountDownLatch(1);
+
+        executor.execute(new CloseEvent(session) {
+            @Override
+            public void visit(EventVisitor visitor) {
+                executed.countDown();
+            }
+        });
+
+        assertTrue(executed.await(1, TimeUnit.SECONDS));
+        assertEquals(1, executor.getSessionCount());
+
+        when(session.isClosed()).thenReturn(true);
+        executor.execute(new CloseEvent(session) {
+            @Override
+            public void visit(EventVisitor visitor) {
+            }
+        });
+
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(0, executor.getSessionCount());
+    }
+}
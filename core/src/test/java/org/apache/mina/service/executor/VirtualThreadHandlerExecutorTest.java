@@ -0,0 +1,144 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.api.IoSession;
+import org.apache.mina.buffer.PooledBufferAllocator;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link VirtualThreadHandlerExecutor}, using the virtual threads when the JVM has them.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class VirtualThreadHandlerExecutorTest {
+
+    private static final int MAX_CONCURRENCY = 4;
+
+    private static final int SESSION_COUNT = 32;
+
+    private static final int EVENT_COUNT = 100;
+
+    private static final int BUFFER_SIZE = 512;
+
+    private static final int THREAD_CACHE_SIZE = 32;
+
+    private VirtualThreadHandlerExecutor executor = new VirtualThreadHandlerExecutor(MAX_CONCURRENCY);
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void blocking_events_are_executed_in_order_within_the_concurrency_bound() throws InterruptedException {
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch executed = new CountDownLatch(SESSION_COUNT * EVENT_COUNT);
+        final int[] expected = new int[SESSION_COUNT];
+        IoSession[] sessions = new IoSession[SESSION_COUNT];
+
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            sessions[i] = mock(IoSession.class);
+        }
+
+        for (int sequence = 0; sequence < EVENT_COUNT; sequence++) {
+            for (int i = 0; i < SESSION_COUNT; i++) {
+                final int session = i;
+                final int eventSequence = sequence;
+
+                executor.execute(new ReceiveEvent(sessions[i], null) {
+                    @Override
+                    public void visit(EventVisitor visitor) {
+                        int current = running.incrementAndGet();
+
+                        if (current > maxRunning.get()) {
+                            maxRunning.set(current);
+                        }
+
+                        if (expected[session]++ != eventSequence) {
+                            errors.incrementAndGet();
+                        }
+
+                        try {
+                            // a blocking handler
+                            Thread.sleep(1);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+
+                        running.decrementAndGet();
+                        executed.countDown();
+                    }
+                });
+            }
+        }
+
+        assertTrue(executed.await(30, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+        assertTrue(maxRunning.get() <= MAX_CONCURRENCY);
+    }
+
+    @Test
+    public void received_buffers_are_recycled() throws InterruptedException {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(BUFFER_SIZE, BUFFER_SIZE, THREAD_CACHE_SIZE);
+        IoSession session = mock(IoSession.class);
+
+        for (int i = 0; i < 10; i++) {
+            receive(session, allocator);
+        }
+
+        // the buffers in flight, the caches of the platform threads if there are no virtual threads, and one slab
+        long maxPooledBytes = (EVENT_COUNT * 2 + MAX_CONCURRENCY * THREAD_CACHE_SIZE + 16) * BUFFER_SIZE;
+
+        assertTrue(allocator.getPooledBytes() <= maxPooledBytes);
+        assertEquals(0, allocator.getOutstandingBytes());
+    }
+
+    /**
+     * Push some pooled buffers to the executor, and wait for their release
+     */
+    private void receive(IoSession session, PooledBufferAllocator allocator) throws InterruptedException {
+        final CountDownLatch released = new CountDownLatch(EVENT_COUNT * 2);
+
+        for (int i = 0; i < EVENT_COUNT * 2; i++) {
+            executor.execute(new ReceiveEvent(session, allocator.allocate(BUFFER_SIZE), allocator) {
+                @Override
+                public void visit(EventVisitor visitor) {
+                    // like the handler caller
+                    release();
+                    released.countDown();
+                }
+            });
+        }
+
+        assertTrue(released.await(10, TimeUnit.SECONDS));
+    }
+}
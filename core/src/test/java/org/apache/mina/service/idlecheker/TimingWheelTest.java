@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.mina.service.idlecheker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.service.idlechecker.TimingWheel;
+import org.apache.mina.service.idlechecker.TimingWheel.Timeout;
+import org.apache.mina.service.idlechecker.TimingWheel.TimerTask;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link TimingWheel}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TimingWheelTest {
+
+    private final TimingWheel wheel = new TimingWheel(10L, 8);
+
+    private final long now = System.currentTimeMillis();
+
+    private final List<Long> expirations = new ArrayList<Long>();
+
+    private final TimerTask task = new TimerTask() {
+        @Override
+        public void expired(Timeout timeout, long nowInMs) {
+            assertTrue(nowInMs >= timeout.getDeadline());
+            expirations.add(timeout.getDeadline());
+        }
+    };
+
+    @Test
+    public void wheel_size_is_a_power_of_2() {
+        assertEquals(8, wheel.getWheelSize());
+        assertEquals(16, new TimingWheel(10L, 9).getWheelSize());
+    }
+
+    @Test
+    public void expire_in_order() {
+        wheel.schedule(task, now + 50);
+        wheel.schedule(task, now + 20);
+
+        assertEquals(0, wheel.advance(now + 10));
+        assertEquals(1, wheel.advance(now + 30));
+        assertEquals(1, wheel.advance(now + 60));
+        assertEquals(2, expirations.size());
+        assertEquals(now + 20, (long) expirations.get(0));
+        assertEquals(now + 50, (long) expirations.get(1));
+    }
+
+    @Test
+    public void cancelled_timeout_does_not_expire() {
+        Timeout timeout = wheel.schedule(task, now + 20);
+        wheel.advance(now);
+        timeout.cancel();
+
+        assertEquals(0, wheel.advance(now + 100));
+        assertEquals(0, expirations.size());
+    }
+
+    @Test
+    public void many_rounds() {
+        // the wheel covers 80 ms
+        wheel.schedule(task, now + 250);
+
+        for (long time = now; time < now + 250; time += 10) {
+            assertEquals(0, wheel.advance(time));
+        }
+
+        assertEquals(1, wheel.advance(now + 260));
+    }
+
+    @Test
+    public void expired_deadline() {
+        wheel.advance(now + 100);
+        wheel.schedule(task, now);
+
+        // expired with the next tick
+        assertEquals(1, wheel.advance(now + 110));
+    }
+}
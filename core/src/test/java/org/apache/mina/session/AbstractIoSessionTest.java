@@ -220,6 +220,44 @@ public class AbstractIoSessionTest {
         assertEquals(1024, session.getWrittenBytes());
     }
 
+    @Test
+    public void state_transitions() {
+        final DummySession session = new DummySession(service);
+        assertTrue(session.isCreated());
+        session.changeState(SessionState.CONNECTED);
+        assertEquals(SessionState.CONNECTED, session.state);
+        session.changeState(SessionState.SECURING);
+        assertTrue(session.isSecuring());
+        session.changeState(SessionState.SECURED);
+        assertTrue(session.isConnectedSecured());
+        session.changeState(SessionState.CLOSING);
+        assertTrue(session.isClosing());
+        session.changeState(SessionState.CLOSED);
+        assertTrue(session.isClosed());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void invalid_state_transition() {
+        final DummySession session = new DummySession(service);
+        session.changeState(SessionState.CLOSED);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void transition_from_closed_state() {
+        final DummySession session = new DummySession(service);
+        session.changeState(SessionState.CLOSING);
+        session.changeState(SessionState.CLOSED);
+        session.changeState(SessionState.CONNECTED);
+    }
+
+    @Test
+    public void compare_and_set_state() {
+        final DummySession session = new DummySession(service);
+        assertFalse(session.compareAndSetState(SessionState.CONNECTED, SessionState.CLOSING));
+        assertTrue(session.compareAndSetState(SessionState.CREATED, SessionState.CONNECTED));
+        assertEquals(SessionState.CONNECTED, session.state);
+    }
+
     private class PassthruFilter extends AbstractIoFilter {
 
     }
@@ -110,6 +110,46 @@ public class AttributeContainerTest {
         assertThat(oldValue, is(123));
     }
 
+    /**
+     * Test if the value is set, and <code>null</code> returned, when there is
+     * no value yet.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void setAttributeIfAbsentForTheFirstTime() throws Exception {
+        Integer currentValue = container.setAttributeIfAbsent(ATTRIBUTE_KEY, 123);
+        assertThat(currentValue, is(nullValue()));
+        assertThat(container.getAttribute(ATTRIBUTE_KEY), is(123));
+    }
+
+    /**
+     * Test if the current value is kept and returned, if the attribute was set
+     * before.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void setAttributeIfAbsentForTheSecondTime() throws Exception {
+        container.setAttribute(ATTRIBUTE_KEY, 123);
+        Integer currentValue = container.setAttributeIfAbsent(ATTRIBUTE_KEY, 456);
+        assertThat(currentValue, is(123));
+        assertThat(container.getAttribute(ATTRIBUTE_KEY), is(123));
+    }
+
+    /**
+     * Test if a {@link IllegalArgumentException} is thrown when the value is
+     * <code>null</code>.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void setAttributeIfAbsentWithoutValue() throws Exception {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Parameter >value< must not be null!");
+        container.setAttributeIfAbsent(ATTRIBUTE_KEY, null);
+    }
+
     /**
      * Test if the <code>null</code> value is returned, if the attribute has no
      * previous value.
@@ -225,4 +265,19 @@ public class AttributeContainerTest {
         exception.expectMessage("Parameter >key< must not be null!");
         container.removeAttribute(null);
     }
+
+    /**
+     * Test if a key created after the first attribute has been stored can be used (the container has to grow).
+     * @throws Exception
+     */
+    @Test
+    public void setAttributeWithANewKey() throws Exception {
+        container.setAttribute(ATTRIBUTE_KEY, 123);
+        AttributeKey<String> newKey = createKey(String.class, "newKey-" + System.nanoTime());
+        container.setAttribute(newKey, "value");
+
+        assertThat(container.getAttribute(ATTRIBUTE_KEY), is(123));
+        assertThat(container.getAttribute(newKey), is("value"));
+        assertThat(container.getAttributeKeys().size(), is(2));
+    }
 }
@@ -135,4 +135,18 @@ public class AttributeKeyTest {
 
         assertThat(key1.hashCode(), is(key2.hashCode()));
     }
+
+    /**
+     * Test if two equal {@link AttributeKey}s share the same index, and different keys don't
+     * @throws Exception
+     */
+    @Test
+    public void indexValue() throws Exception {
+        AttributeKey<Number> key1 = new AttributeKey<Number>(Number.class, "keyName");
+        AttributeKey<Number> key2 = new AttributeKey<Number>(Number.class, "keyName");
+        AttributeKey<Date> key3 = new AttributeKey<Date>(Date.class, "keyName");
+
+        assertThat(key1.getIndex(), is(key2.getIndex()));
+        assertThat(key1.getIndex() == key3.getIndex(), is(false));
+    }
 }
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.mina.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import org.junit.Test;
+
+/**
+ * Tests the class {@link DefaultFileRegion}
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DefaultFileRegionTest {
+
+    @Test
+    public void whole_file() throws IOException {
+        FileChannel channel = mock(FileChannel.class);
+        when(channel.size()).thenReturn(1000L);
+
+        DefaultFileRegion region = new DefaultFileRegion(channel);
+
+        assertEquals(0, region.getPosition());
+        assertEquals(1000, region.getRemainingBytes());
+        assertEquals(0, region.getWrittenBytes());
+    }
+
+    @Test
+    public void progress() {
+        DefaultFileRegion region = new DefaultFileRegion(mock(FileChannel.class), 100, 500);
+
+        region.update(200);
+        assertEquals(300, region.getPosition());
+        assertEquals(300, region.getRemainingBytes());
+        assertEquals(200, region.getWrittenBytes());
+
+        region.update(300);
+        assertEquals(600, region.getPosition());
+        assertEquals(0, region.getRemainingBytes());
+        assertEquals(500, region.getWrittenBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negative_position() {
+        new DefaultFileRegion(mock(FileChannel.class), -1, 500);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.mina.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.api.WritePriority;
+import org.junit.Test;
+
+/**
+ * Tests the class {@link DefaultWriteQueue}
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DefaultWriteQueueTest {
+
+    private static WriteRequest request(String message, WritePriority priority) {
+        WriteRequest writeRequest = new DefaultWriteRequest(message);
+        writeRequest.setPriority(priority);
+
+        return writeRequest;
+    }
+
+    private static String drain(DefaultWriteQueue queue) {
+        StringBuilder sb = new StringBuilder();
+        WriteRequest writeRequest;
+
+        while ((writeRequest = queue.poll()) != null) {
+            sb.append(writeRequest.getMessage());
+        }
+
+        return sb.toString();
+    }
+
+    @Test
+    public void fifo_within_a_priority() {
+        DefaultWriteQueue queue = new DefaultWriteQueue();
+
+        queue.add(request("a", WritePriority.NORMAL));
+        queue.add(request("b", WritePriority.NORMAL));
+        queue.add(request("c", WritePriority.NORMAL));
+
+        assertEquals(3, queue.size());
+        assertEquals("abc", drain(queue));
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void high_priority_overtakes() {
+        DefaultWriteQueue queue = new DefaultWriteQueue();
+
+        queue.add(request("b", WritePriority.LOW));
+        queue.add(request("n", WritePriority.NORMAL));
+        queue.add(request("h", WritePriority.HIGH));
+
+        assertEquals(1, queue.size(WritePriority.HIGH));
+        assertEquals(1, queue.size(WritePriority.LOW));
+        assertEquals("hnb", drain(queue));
+        assertEquals(0, queue.size(WritePriority.HIGH));
+    }
+
+    @Test
+    public void low_priority_is_not_starved() {
+        DefaultWriteQueue queue = new DefaultWriteQueue();
+
+        for (int i = 0; i < 20; i++) {
+            queue.add(request("h", WritePriority.HIGH));
+        }
+
+        queue.add(request("l", WritePriority.LOW));
+
+        // the low priority lane gets its share after the high priority one used its weight
+        assertEquals("hhhhhhhhlhhhhhhhhhhhh", drain(queue));
+    }
+
+    @Test
+    public void iteration_commits_nothing() {
+        DefaultWriteQueue queue = new DefaultWriteQueue();
+
+        queue.add(request("n1", WritePriority.NORMAL));
+        queue.add(request("n2", WritePriority.NORMAL));
+
+        List<WriteRequest> iterated = new ArrayList<WriteRequest>();
+
+        for (WriteRequest writeRequest : queue) {
+            iterated.add(writeRequest);
+        }
+
+        assertEquals(2, iterated.size());
+
+        // the iterated requests can still be overtaken
+        queue.add(request("h", WritePriority.HIGH));
+        assertEquals("hn1n2", drain(queue));
+    }
+
+    @Test
+    public void gathered_requests_are_dequeued_in_order() {
+        DefaultWriteQueue queue = new DefaultWriteQueue();
+
+        for (int i = 0; i < 10; i++) {
+            queue.add(request("h", WritePriority.HIGH));
+        }
+
+        queue.add(request("l", WritePriority.LOW));
+
+        WriteRequest[] requests = new WriteRequest[11];
+        assertEquals(11, queue.gather(requests, 11));
+
+        // a normal request offered after the gathering doesn't change the order of the gathered requests
+        queue.add(request("n", WritePriority.NORMAL));
+
+        for (int i = 0; i < 11; i++) {
+            assertSame(requests[i], queue.poll());
+        }
+
+        assertEquals("n", drain(queue));
+    }
+
+    @Test
+    public void gathered_requests_can_be_overtaken() {
+        DefaultWriteQueue queue = new DefaultWriteQueue();
+
+        queue.add(request("n1", WritePriority.NORMAL));
+        queue.add(request("n2", WritePriority.NORMAL));
+        queue.add(request("n3", WritePriority.NORMAL));
+
+        WriteRequest[] requests = new WriteRequest[3];
+        assertEquals(3, queue.gather(requests, 3));
+
+        // the first request has been written, the second one partially
+        assertSame(requests[0], queue.poll());
+        assertSame(requests[1], queue.commitNext());
+
+        // a high priority request only waits for the request being written
+        queue.add(request("h", WritePriority.HIGH));
+        assertEquals("n2hn3", drain(queue));
+    }
+
+    @Test
+    public void remove_contains_and_clear() {
+        DefaultWriteQueue queue = new DefaultWriteQueue();
+        WriteRequest committed = request("c", WritePriority.NORMAL);
+        WriteRequest queued = request("q", WritePriority.LOW);
+
+        queue.commit(committed);
+        queue.add(queued);
+        queue.add(request("h", WritePriority.HIGH));
+
+        assertTrue(queue.contains(committed));
+        assertTrue(queue.contains(queued));
+        assertFalse(queue.contains(request("x", WritePriority.HIGH)));
+
+        assertTrue(queue.remove(queued));
+        assertFalse(queue.contains(queued));
+        assertEquals(0, queue.size(WritePriority.LOW));
+
+        assertTrue(queue.remove(committed));
+        assertEquals(1, queue.size());
+
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void started_request_stays_ahead() {
+        DefaultWriteQueue queue = new DefaultWriteQueue();
+
+        queue.commit(request("n", WritePriority.NORMAL));
+        queue.add(request("h", WritePriority.HIGH));
+
+        assertEquals(1, queue.size(WritePriority.NORMAL));
+        assertEquals("nh", drain(queue));
+    }
+
+    @Test
+    public void poll_oldest_whatever_the_priority() throws Exception {
+        DefaultWriteQueue queue = new DefaultWriteQueue();
+
+        queue.add(request("old", WritePriority.LOW));
+
+        // make sure the next request is created later
+        Thread.sleep(5);
+
+        WriteRequest recent = request("recent", WritePriority.HIGH);
+        queue.add(recent);
+
+        assertEquals("old", queue.pollOldest(null).getMessage());
+        assertNull(queue.pollOldest(recent));
+        assertEquals(1, queue.size());
+        assertSame(recent, queue.poll());
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link IoBudget}
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class IoBudgetTest {
+
+    @Test
+    public void read_budget() {
+        IoBudget budget = new IoBudget();
+        budget.setMaxReads(2);
+        budget.setMaxReadBytes(1000);
+
+        assertTrue(budget.canRead(1, 500));
+        assertFalse(budget.canRead(2, 500));
+        assertFalse(budget.canRead(1, 1000));
+        assertEquals(2, budget.getReadBudgetExhaustedCount());
+        assertEquals(0, budget.getWriteBudgetExhaustedCount());
+    }
+
+    @Test
+    public void write_budget() {
+        IoBudget budget = new IoBudget();
+        budget.setMaxWrites(3);
+        budget.setMaxWrittenBytes(100);
+
+        assertTrue(budget.canWrite(2, 99));
+        assertFalse(budget.canWrite(3, 0));
+        assertFalse(budget.canWrite(0, 100));
+        assertEquals(2, budget.getWriteBudgetExhaustedCount());
+        assertEquals(0, budget.getReadBudgetExhaustedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid_budget() {
+        new IoBudget().setMaxWrites(0);
+    }
+}
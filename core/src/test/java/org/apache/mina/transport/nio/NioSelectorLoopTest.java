@@ -0,0 +1,197 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test the tasks executed by a {@link NioSelectorLoop}
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioSelectorLoopTest {
+
+    private static final int WAIT_TIME = 5000;
+
+    @Test
+    public void scheduled_tasks_run_in_deadline_order() throws Exception {
+        final SelectorLoop selectorLoop = new NioSelectorLoop("test");
+        final List<Integer> order = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch latch = new CountDownLatch(4);
+
+        for (int delay : new int[] { 30, 10, 20, 10 }) {
+            final int id = delay;
+
+            selectorLoop.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    assertTrue(selectorLoop.inEventLoop());
+                    order.add(id);
+                    latch.countDown();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(latch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals("[10, 10, 20, 30]", order.toString());
+    }
+
+    @Test
+    public void task_executed_later_by_the_loop_itself() throws Exception {
+        final SelectorLoop selectorLoop = new NioSelectorLoop("test");
+        final List<String> order = new CopyOnWriteArrayList<String>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        selectorLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                selectorLoop.executeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        order.add("later");
+                        latch.countDown();
+                    }
+                });
+
+                order.add("now");
+            }
+        });
+
+        assertTrue(latch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals("[now, later]", order.toString());
+    }
+
+    @Test
+    public void task_executed_inline_by_the_loop_itself() throws Exception {
+        final SelectorLoop selectorLoop = new NioSelectorLoop("test");
+        final List<String> order = new CopyOnWriteArrayList<String>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        selectorLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                order.add("before");
+
+                selectorLoop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        order.add("inline");
+                    }
+                });
+
+                order.add("after");
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals("[before, inline, after]", order.toString());
+    }
+
+    @Test
+    public void tasks_from_other_threads_are_executed_by_the_loop_in_order() throws Exception {
+        final SelectorLoop selectorLoop = new NioSelectorLoop("test");
+        final int threadCount = 4;
+        final int taskCount = 1000;
+        final CountDownLatch latch = new CountDownLatch(threadCount * taskCount);
+        final AtomicInteger errors = new AtomicInteger();
+        final int[] expected = new int[threadCount];
+        Thread[] threads = new Thread[threadCount];
+
+        for (int i = 0; i < threadCount; i++) {
+            final int thread = i;
+
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < taskCount; j++) {
+                        final int sequence = j;
+
+                        selectorLoop.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                // only the loop thread updates the expected sequences
+                                if (!selectorLoop.inEventLoop() || (expected[thread]++ != sequence)) {
+                                    errors.incrementAndGet();
+                                }
+
+                                latch.countDown();
+                            }
+                        });
+                    }
+                }
+            };
+
+            threads[i].start();
+        }
+
+        assertTrue(latch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(0, errors.get());
+    }
+
+    @Test
+    public void one_wakeup_for_a_batch_of_tasks() throws Exception {
+        final NioSelectorLoop selectorLoop = new NioSelectorLoop("test");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final int taskCount = 100;
+        final CountDownLatch executed = new CountDownLatch(taskCount);
+
+        // keep the loop busy while the tasks are submitted
+        selectorLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        long wakeups = selectorLoop.getWakeupCount();
+
+        for (int i = 0; i < taskCount; i++) {
+            selectorLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    executed.countDown();
+                }
+            });
+        }
+
+        release.countDown();
+
+        assertTrue(executed.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(1, selectorLoop.getWakeupCount() - wakeups);
+    }
+}
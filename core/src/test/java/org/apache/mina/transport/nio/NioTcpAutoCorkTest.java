@@ -0,0 +1,121 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.junit.Test;
+
+/**
+ * Test the auto-cork mode : the staged writes are held until the auto-cork delay has elapsed, or the auto-cork
+ * threshold is reached.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpAutoCorkTest {
+
+    private static final int MESSAGE_COUNT = 100;
+
+    private static final int WAIT_TIME = 5000;
+
+    @Test
+    public void held_writes_are_flushed_after_the_delay() throws Exception {
+        final int delay = 20000;
+        final AtomicLong writeTime = new AtomicLong();
+        final AtomicLong sentTime = new AtomicLong();
+        final CountDownLatch sentLatch = new CountDownLatch(MESSAGE_COUNT);
+
+        NioTcpServer server = new NioTcpServer();
+        server.getSessionConfig().setTcpNoDelay(true);
+        server.getSessionConfig().setAutoCorkDelay(delay);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                writeTime.set(System.nanoTime());
+                writeMessages(session);
+            }
+
+            @Override
+            public void messageSent(IoSession session, Object message) {
+                sentTime.compareAndSet(0L, System.nanoTime());
+                sentLatch.countDown();
+            }
+        });
+
+        readMessages(server);
+
+        assertTrue(sentLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertTrue(sentTime.get() - writeTime.get() >= TimeUnit.MICROSECONDS.toNanos(delay));
+        server.unbind();
+    }
+
+    @Test
+    public void held_writes_are_flushed_when_the_threshold_is_reached() throws Exception {
+        NioTcpServer server = new NioTcpServer();
+        server.getSessionConfig().setTcpNoDelay(true);
+
+        // the delay is far beyond the wait time of the reader
+        server.getSessionConfig().setAutoCorkDelay((int) TimeUnit.SECONDS.toMicros(60));
+        server.getSessionConfig().setAutoCorkThreshold(MESSAGE_COUNT * 4);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                writeMessages(session);
+            }
+        });
+
+        readMessages(server);
+        server.unbind();
+    }
+
+    private static void writeMessages(IoSession session) {
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            ByteBuffer message = ByteBuffer.allocate(4);
+            message.putInt(i).flip();
+            session.write(message);
+        }
+    }
+
+    private static void readMessages(NioTcpServer server) throws Exception {
+        server.bind(0);
+
+        final int port = server.getServerSocketChannel().socket().getLocalPort();
+        Socket client = new Socket("127.0.0.1", port);
+        client.setSoTimeout(WAIT_TIME);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            assertEquals(i, in.readInt());
+        }
+
+        client.close();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.service.executor.OrderedHandlerExecutor;
+import org.junit.Test;
+
+/**
+ * Test the writes done by many threads which are not the selector loop of the session : they are handed to the loop,
+ * and each writer messages must be received in the order they have been written, and not be corrupted.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpCrossThreadWriteTest {
+
+    private static final int WRITER_COUNT = 8;
+
+    private static final int MESSAGE_COUNT = 10000;
+
+    private static final int WAIT_TIME = 5000;
+
+    @Test
+    public void writes_from_many_threads_are_ordered() throws Exception {
+        final NioTcpServer server = new NioTcpServer();
+        final CountDownLatch openLatch = new CountDownLatch(1);
+        final IoSession[] sessions = new IoSession[1];
+
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                sessions[0] = session;
+                openLatch.countDown();
+            }
+        });
+
+        server.bind(0);
+
+        final int port = server.getServerSocketChannel().socket().getLocalPort();
+        Socket client = new Socket("127.0.0.1", port);
+        assertTrue(openLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        ExecutorService writers = Executors.newFixedThreadPool(WRITER_COUNT);
+
+        for (int i = 0; i < WRITER_COUNT; i++) {
+            final int writer = i;
+
+            writers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < MESSAGE_COUNT; j++) {
+                        ByteBuffer message = ByteBuffer.allocate(8);
+                        message.putInt(writer).putInt(j).flip();
+                        sessions[0].write(message);
+                    }
+                }
+            });
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+        int[] expected = new int[WRITER_COUNT];
+
+        for (int i = 0; i < WRITER_COUNT * MESSAGE_COUNT; i++) {
+            int writer = in.readInt();
+            assertEquals(expected[writer]++, in.readInt());
+        }
+
+        writers.shutdown();
+        assertTrue(writers.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(0L, ((AbstractNioSession) sessions[0]).getWriteQueueBytes());
+
+        client.close();
+        server.unbind();
+    }
+
+    @Test
+    public void received_buffer_echoed_by_executor_is_not_corrupted() throws Exception {
+        // the received buffers are pooled, and handed to the executor threads
+        final NioTcpServer server = new NioTcpServer(new FixedSelectorLoopPool("Server", 2), new OrderedHandlerExecutor(
+                2, 1024));
+
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                // the buffer is given back to the allocator once we return, before the loop writes it
+                session.write(message);
+            }
+        });
+
+        server.bind(0);
+
+        final int port = server.getServerSocketChannel().socket().getLocalPort();
+        final Socket client = new Socket("127.0.0.1", port);
+        final int size = 4 * 1024 * 1024;
+
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = client.getOutputStream();
+                    byte[] chunk = new byte[8192];
+
+                    for (int i = 0; i < size; i += chunk.length) {
+                        for (int j = 0; j < chunk.length; j++) {
+                            chunk[j] = (byte) ((i + j) % 251);
+                        }
+
+                        out.write(chunk);
+                    }
+
+                    out.flush();
+                } catch (Exception e) {
+                    // the reader will fail
+                }
+            }
+        };
+
+        writer.start();
+
+        InputStream in = new BufferedInputStream(client.getInputStream());
+
+        for (int i = 0; i < size; i++) {
+            assertEquals("byte " + i, i % 251, in.read());
+        }
+
+        writer.join(WAIT_TIME);
+        client.close();
+        server.unbind();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.security.KeyStore;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.FileRegion;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.session.DefaultFileRegion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test a file region written into a TCP session : it's transferred directly from the file into a plain session, and
+ * read and encrypted by chunks in a secured session. The client must receive the whole file, in both cases.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpFileRegionTest {
+
+    /** Several chunks of the secured file regions, the last one being partial */
+    private static final int FILE_SIZE = 100 * 1024 + 123;
+
+    private static final int WAIT_TIME = 10000;
+
+    private File file;
+
+    private byte[] content;
+
+    private NioTcpServer server;
+
+    private final CountDownLatch sentLatch = new CountDownLatch(1);
+
+    private final Object[] sentMessages = new Object[1];
+
+    private final FileRegion[] regions = new FileRegion[1];
+
+    @Before
+    public void createFile() throws IOException {
+        content = new byte[FILE_SIZE];
+
+        for (int i = 0; i < FILE_SIZE; i++) {
+            content[i] = (byte) (i % 251);
+        }
+
+        file = File.createTempFile("mina-file-region", ".bin");
+        OutputStream out = new FileOutputStream(file);
+
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+
+        server = new NioTcpServer();
+        server.setReuseAddress(true);
+
+        // the file is sent when the client asks for it
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                try {
+                    FileChannel fileChannel = new FileInputStream(file).getChannel();
+                    regions[0] = new DefaultFileRegion(fileChannel);
+                    session.write(regions[0]);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public void messageSent(IoSession session, Object message) {
+                // the handshake records are signaled too
+                if (message instanceof FileRegion) {
+                    sentMessages[0] = message;
+                    sentLatch.countDown();
+                }
+            }
+        });
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        server.unbind();
+
+        if (regions[0] != null) {
+            regions[0].getFileChannel().close();
+        }
+
+        file.delete();
+    }
+
+    @Test
+    public void file_region_is_sent_over_a_plain_session() throws Exception {
+        server.bind(0);
+
+        Socket client = new Socket("127.0.0.1", server.getServerSocketChannel().socket().getLocalPort());
+
+        try {
+            assertReceived(client);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void file_region_is_sent_over_a_secured_session() throws Exception {
+        SSLContext sslContext = createSSLContext();
+        server.getSessionConfig().setSslContext(sslContext);
+        server.bind(0);
+
+        Socket client = sslContext.getSocketFactory().createSocket("127.0.0.1",
+                server.getServerSocketChannel().socket().getLocalPort());
+
+        try {
+            assertReceived(client);
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Ask for the file, and check that the whole file is received, and that the region is signaled as sent
+     */
+    private void assertReceived(Socket client) throws Exception {
+        client.setSoTimeout(WAIT_TIME);
+        client.getOutputStream().write(1);
+        client.getOutputStream().flush();
+
+        byte[] received = new byte[FILE_SIZE];
+        new DataInputStream(client.getInputStream()).readFully(received);
+
+        assertArrayEquals(content, received);
+        assertTrue(sentLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertSame(regions[0], sentMessages[0]);
+    }
+
+    private static SSLContext createSSLContext() throws Exception {
+        char[] passphrase = "password".toCharArray();
+        String algorithm = KeyManagerFactory.getDefaultAlgorithm();
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        KeyStore ts = KeyStore.getInstance("JKS");
+        ks.load(NioTcpFileRegionTest.class.getResourceAsStream("keystore.sslTest"), passphrase);
+        ts.load(NioTcpFileRegionTest.class.getResourceAsStream("truststore.sslTest"), passphrase);
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(algorithm);
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(algorithm);
+        kmf.init(ks, passphrase);
+        tmf.init(ts);
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+
+        return sslContext;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.api.IoFuture;
+import org.apache.mina.api.IoFutureListener;
+import org.apache.mina.service.idlechecker.IdleChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the gathering writes of the queued requests of a TCP session, over a channel accepting a given number of
+ * bytes.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpGatheringWriteTest {
+
+    private final RecordingSocketChannel channel = new RecordingSocketChannel();
+
+    private final RecordingSelectorLoop selectorLoop = new RecordingSelectorLoop();
+
+    private final NioTcpServer server = new NioTcpServer(selectorLoop, null, null);
+
+    private final NioTcpSession session = new NioTcpSession(server, channel, selectorLoop, mock(IdleChecker.class));
+
+    /** the indexes of the requests which futures have been completed, in completion order */
+    private final List<Integer> completed = new ArrayList<Integer>();
+
+    /** the number of requests written so far */
+    private int requestCount;
+
+    /** the content of the requests written so far */
+    private final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+
+    @Before
+    public void connect() {
+        session.setConnected();
+    }
+
+    @After
+    public void close() throws Exception {
+        channel.close();
+    }
+
+    @Test
+    public void small_requests_are_gathered_in_a_single_write() {
+        write(10, 100);
+        session.flush();
+
+        assertEquals("[10]", channel.getWrites().toString());
+        assertCompleted(10);
+        assertWritten();
+    }
+
+    @Test
+    public void gathered_buffers_are_limited() {
+        write(100, 10);
+        session.flush();
+
+        assertEquals("[64, 36]", channel.getWrites().toString());
+        assertCompleted(100);
+        assertWritten();
+    }
+
+    @Test
+    public void gathered_bytes_are_limited() {
+        write(5, 100 * 1024);
+        session.flush();
+
+        // the requests are gathered until 256KB are reached
+        assertEquals("[3, 2]", channel.getWrites().toString());
+        assertCompleted(5);
+        assertWritten();
+    }
+
+    @Test
+    public void partial_write_completes_the_written_requests_in_order() {
+        write(5, 100);
+
+        // the socket buffer gets full in the middle of the third request
+        channel.setCapacity(250);
+        session.flush();
+
+        assertEquals("[5]", channel.getWrites().toString());
+        assertCompleted(2);
+        assertTrue(selectorLoop.isWriteInterest());
+
+        // more requests are queued behind the partially written one
+        write(2, 100);
+        session.flush();
+        assertCompleted(2);
+
+        // the socket is writable again
+        channel.setCapacity(Long.MAX_VALUE);
+        session.processWrite(selectorLoop);
+
+        assertEquals("[5, 5]", channel.getWrites().toString());
+        assertCompleted(7);
+        assertWritten();
+        assertFalse(selectorLoop.isWriteInterest());
+    }
+
+    /**
+     * Write some requests, recording the order of their completion
+     */
+    private void write(int count, int size) {
+        for (int i = 0; i < count; i++) {
+            final int index = requestCount++;
+            ByteBuffer message = ByteBuffer.allocate(size);
+
+            while (message.hasRemaining()) {
+                message.put((byte) (index + message.position()));
+            }
+
+            message.flip();
+            expected.write(message.array(), 0, size);
+
+            IoFuture<Void> future = session.writeWithFuture(message);
+
+            future.register(new IoFutureListener<Void>() {
+                @Override
+                public void exception(Throwable t) {
+                    // nothing to do
+                }
+
+                @Override
+                public void completed(Void result) {
+                    completed.add(index);
+                }
+            });
+        }
+    }
+
+    private void assertCompleted(int count) {
+        assertEquals(count, completed.size());
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, (int) completed.get(i));
+        }
+    }
+
+    private void assertWritten() {
+        byte[] written = channel.getWrittenBytes();
+        byte[] content = expected.toByteArray();
+
+        assertEquals(content.length, written.length);
+
+        for (int i = 0; i < content.length; i++) {
+            assertEquals(content[i], written[i]);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.session.AttributeKey;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Test a {@link NioTcpServer} which selector loops accept their own connections, using SO_REUSEPORT.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpReusePortTest {
+
+    private static final int CLIENT_COUNT = 20;
+
+    private static final int WAIT_TIME = 5000;
+
+    private static final AttributeKey<Thread> LOOP_THREAD = new AttributeKey<Thread>(Thread.class, "loopThread");
+
+    @Test
+    public void each_loop_accepts_and_handles_its_sessions() throws Exception {
+        Assume.assumeTrue(isReusePortSupported());
+
+        // the accepting loop of the server must not be used
+        RecordingSelectorLoop acceptSelectorLoop = new RecordingSelectorLoop();
+        final SelectorLoopPool selectorLoopPool = new FixedSelectorLoopPool("ReusePort", 2);
+        final NioTcpServer server = new NioTcpServer(acceptSelectorLoop, selectorLoopPool, null);
+        final CountDownLatch receivedLatch = new CountDownLatch(CLIENT_COUNT);
+        final AtomicInteger foreignLoopCount = new AtomicInteger();
+
+        server.setReusePort(true);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                // the session is opened by the loop which accepted it
+                session.setAttribute(LOOP_THREAD, Thread.currentThread());
+                checkLoop(session);
+            }
+
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                checkLoop(session);
+
+                // the received buffer belongs to the selector loop
+                ByteBuffer echo = ByteBuffer.allocate(1);
+                echo.put(((ByteBuffer) message).get()).flip();
+                session.write(echo);
+                receivedLatch.countDown();
+            }
+
+            private void checkLoop(IoSession session) {
+                boolean inPool = selectorLoopPool.getSelectorLoop(0).inEventLoop()
+                        || selectorLoopPool.getSelectorLoop(1).inEventLoop();
+
+                if (!inPool || (session.getAttribute(LOOP_THREAD) != Thread.currentThread())) {
+                    foreignLoopCount.incrementAndGet();
+                }
+            }
+        });
+
+        server.bind(0);
+        assertFalse(acceptSelectorLoop.isAcceptInterest());
+
+        final int port = server.getServerSocketChannel().socket().getLocalPort();
+        final Socket[] clients = new Socket[CLIENT_COUNT];
+
+        try {
+            for (int i = 0; i < CLIENT_COUNT; i++) {
+                clients[i] = new Socket("127.0.0.1", port);
+                clients[i].getOutputStream().write(i);
+            }
+
+            assertTrue(receivedLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+            for (int i = 0; i < CLIENT_COUNT; i++) {
+                InputStream in = clients[i].getInputStream();
+                clients[i].setSoTimeout(WAIT_TIME);
+                assertEquals(i, in.read());
+            }
+
+            assertEquals(0, foreignLoopCount.get());
+        } finally {
+            for (Socket client : clients) {
+                if (client != null) {
+                    client.close();
+                }
+            }
+
+            server.unbind();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the JDK and the platform provide SO_REUSEPORT for the server sockets
+     */
+    private static boolean isReusePortSupported() throws IOException {
+        SocketOption<?> reusePort;
+
+        try {
+            reusePort = (SocketOption<?>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (Exception e) {
+            return false;
+        }
+
+        ServerSocketChannel channel = ServerSocketChannel.open();
+
+        try {
+            return channel.supportedOptions().contains(reusePort);
+        } finally {
+            channel.close();
+        }
+    }
+}
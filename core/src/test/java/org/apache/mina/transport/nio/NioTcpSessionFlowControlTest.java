@@ -0,0 +1,140 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.service.idlechecker.IdleChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the interest of a TCP session in the read and write events when its reads are suspended, and its writability
+ * when its write queue crosses the watermarks.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpSessionFlowControlTest {
+
+    private final RecordingSocketChannel channel = new RecordingSocketChannel();
+
+    private final RecordingSelectorLoop selectorLoop = new RecordingSelectorLoop();
+
+    private final NioTcpServer server = new NioTcpServer(selectorLoop, null, null);
+
+    private final NioTcpSession session = new NioTcpSession(server, channel, selectorLoop, mock(IdleChecker.class));
+
+    /** the writability changes signaled to the handler */
+    private final List<Boolean> writabilityChanges = new ArrayList<Boolean>();
+
+    @Before
+    public void connect() {
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionWritabilityChanged(IoSession session, boolean writable) {
+                writabilityChanges.add(writable);
+            }
+        });
+
+        session.setConnected();
+    }
+
+    @After
+    public void close() throws Exception {
+        channel.close();
+    }
+
+    @Test
+    public void suspended_reads_are_not_selected() {
+        session.suspendRead();
+
+        assertTrue(session.isReadSuspended());
+        assertFalse(selectorLoop.isReadInterest());
+
+        session.resumeRead();
+
+        assertFalse(session.isReadSuspended());
+        assertTrue(selectorLoop.isReadInterest());
+    }
+
+    @Test
+    public void pending_writes_are_still_selected_while_the_reads_are_suspended() {
+        // the socket buffer is full
+        channel.setCapacity(0);
+        session.writeAndFlush(ByteBuffer.allocate(100));
+
+        assertTrue(selectorLoop.isReadInterest());
+        assertTrue(selectorLoop.isWriteInterest());
+
+        session.suspendRead();
+
+        assertFalse(selectorLoop.isReadInterest());
+        assertTrue(selectorLoop.isWriteInterest());
+
+        session.resumeRead();
+
+        assertTrue(selectorLoop.isReadInterest());
+        assertTrue(selectorLoop.isWriteInterest());
+    }
+
+    @Test
+    public void writability_changes_when_the_watermarks_are_crossed() {
+        session.getConfig().setWriteQueueHighWatermark(1000);
+        session.getConfig().setWriteQueueLowWatermark(200);
+        channel.setCapacity(0);
+
+        session.writeAndFlush(ByteBuffer.allocate(600));
+
+        assertTrue(session.isWritable());
+        assertTrue(writabilityChanges.isEmpty());
+
+        // above the high watermark : the reads are throttled too
+        session.writeAndFlush(ByteBuffer.allocate(600));
+
+        assertFalse(session.isWritable());
+        assertEquals("[false]", writabilityChanges.toString());
+        assertFalse(selectorLoop.isReadInterest());
+
+        // still above the low watermark
+        channel.setCapacity(900);
+        session.processWrite(selectorLoop);
+
+        assertFalse(session.isWritable());
+        assertEquals("[false]", writabilityChanges.toString());
+
+        channel.setCapacity(Long.MAX_VALUE);
+        session.processWrite(selectorLoop);
+
+        assertTrue(session.isWritable());
+        assertEquals("[false, true]", writabilityChanges.toString());
+        assertTrue(selectorLoop.isReadInterest());
+        assertFalse(selectorLoop.isWriteInterest());
+    }
+}
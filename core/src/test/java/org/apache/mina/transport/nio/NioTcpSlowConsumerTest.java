@@ -0,0 +1,230 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoFuture;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.service.slowconsumer.SlowConsumerAction;
+import org.apache.mina.service.slowconsumer.SlowConsumerException;
+import org.apache.mina.service.slowconsumer.SlowConsumerListener;
+import org.apache.mina.service.slowconsumer.SlowConsumerPolicy;
+import org.junit.Test;
+
+/**
+ * Test the {@link SlowConsumerPolicy} actions on a session which peer never reads.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpSlowConsumerTest {
+
+    private static final int MAX_PENDING_BYTES = 1024 * 1024;
+
+    private static final int MESSAGE_SIZE = 256 * 1024;
+
+    private static final int MESSAGE_COUNT = 64;
+
+    private static final int WAIT_TIME = 5000;
+
+    @Test
+    public void slow_consumer_is_closed() throws Exception {
+        final CountDownLatch actionLatch = new CountDownLatch(1);
+        final CountDownLatch closedLatch = new CountDownLatch(1);
+        SlowConsumerPolicy policy = new SlowConsumerPolicy(MAX_PENDING_BYTES, SlowConsumerAction.CLOSE);
+        policy.setCheckInterval(20);
+        policy.setListener(new SlowConsumerListener() {
+            @Override
+            public void actionTaken(IoSession session, SlowConsumerAction action, long pendingBytes) {
+                if ((action == SlowConsumerAction.CLOSE) && (pendingBytes > MAX_PENDING_BYTES)) {
+                    actionLatch.countDown();
+                }
+            }
+        });
+
+        NioTcpServer server = new NioTcpServer();
+        server.setSlowConsumerPolicy(policy);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                writeMessages(session, null);
+            }
+
+            @Override
+            public void sessionClosed(IoSession session) {
+                closedLatch.countDown();
+            }
+        });
+
+        Socket client = connect(server);
+
+        assertTrue(actionLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertTrue(closedLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(1, policy.getActionCount(SlowConsumerAction.CLOSE));
+
+        client.close();
+        server.unbind();
+    }
+
+    @Test
+    public void oldest_messages_are_dropped() throws Exception {
+        final List<IoFuture<Void>> futures = new ArrayList<IoFuture<Void>>();
+        final IoSession[] sessions = new IoSession[1];
+        SlowConsumerPolicy policy = new SlowConsumerPolicy(MAX_PENDING_BYTES, SlowConsumerAction.DROP_OLDEST);
+        policy.setCheckInterval(20);
+
+        NioTcpServer server = new NioTcpServer();
+        server.setSlowConsumerPolicy(policy);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                sessions[0] = session;
+                writeMessages(session, futures);
+            }
+        });
+
+        Socket client = connect(server);
+        waitForDrops(policy);
+
+        assertTrue(sessions[0].getWriteQueueBytes() <= MAX_PENDING_BYTES);
+
+        // the most recent message is kept, and written once the consumer catches up
+        drain(client);
+        futures.get(MESSAGE_COUNT - 1).get(WAIT_TIME, TimeUnit.MILLISECONDS);
+
+        int dropped = 0;
+
+        for (IoFuture<Void> future : futures) {
+            try {
+                future.get(WAIT_TIME, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof SlowConsumerException);
+                dropped++;
+            }
+        }
+
+        assertEquals(policy.getDroppedMessageCount(), dropped);
+        assertEquals(dropped * MESSAGE_SIZE, policy.getDroppedBytes());
+
+        client.close();
+        server.unbind();
+    }
+
+    @Test
+    public void new_messages_are_rejected() throws Exception {
+        final IoSession[] sessions = new IoSession[1];
+        SlowConsumerPolicy policy = new SlowConsumerPolicy(MAX_PENDING_BYTES, SlowConsumerAction.DROP_NEW);
+        policy.setCheckInterval(20);
+
+        NioTcpServer server = new NioTcpServer();
+        server.setSlowConsumerPolicy(policy);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                sessions[0] = session;
+                writeMessages(session, null);
+            }
+        });
+
+        Socket client = connect(server);
+        long deadline = System.currentTimeMillis() + WAIT_TIME;
+
+        while (policy.getActionCount(SlowConsumerAction.DROP_NEW) == 0) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+
+        assertDropped(sessions[0].writeWithFuture(ByteBuffer.allocate(10)));
+        assertEquals(10, policy.getDroppedBytes());
+
+        client.close();
+        server.unbind();
+    }
+
+    private static void writeMessages(IoSession session, List<IoFuture<Void>> futures) {
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            IoFuture<Void> future = session.writeWithFuture(ByteBuffer.allocate(MESSAGE_SIZE));
+
+            if (futures != null) {
+                futures.add(future);
+            }
+        }
+    }
+
+    private static Socket connect(NioTcpServer server) throws Exception {
+        server.bind(0);
+
+        // the client never reads
+        return new Socket("127.0.0.1", server.getServerSocketChannel().socket().getLocalPort());
+    }
+
+    private static void drain(final Socket client) {
+        new Thread() {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[MESSAGE_SIZE];
+
+                try {
+                    InputStream in = client.getInputStream();
+
+                    while (in.read(buffer) >= 0) {
+                        // discard
+                    }
+                } catch (IOException e) {
+                    // the client is closed
+                }
+            }
+        }.start();
+    }
+
+    private static void waitForDrops(SlowConsumerPolicy policy) throws Exception {
+        long deadline = System.currentTimeMillis() + WAIT_TIME;
+
+        while (policy.getDroppedMessageCount() == 0) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+
+        // let the loop finish the dropping
+        Thread.sleep(100);
+    }
+
+    private static void assertDropped(IoFuture<Void> future) throws Exception {
+        try {
+            future.get(WAIT_TIME, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SlowConsumerException);
+        }
+    }
+}
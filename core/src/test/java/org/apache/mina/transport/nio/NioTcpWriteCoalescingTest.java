@@ -0,0 +1,176 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoFuture;
+import org.apache.mina.api.IoSession;
+import org.junit.Test;
+
+/**
+ * Test the staged writes : the messages written by the selector loop are flushed at the end of the loop iteration,
+ * or when the session is flushed, and the small messages are coalesced when the session is configured for.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpWriteCoalescingTest {
+
+    private static final int MESSAGE_COUNT = 10000;
+
+    private static final int WAIT_TIME = 5000;
+
+    @Test
+    public void staged_writes_are_flushed_without_explicit_flush() throws Exception {
+        checkWrites(-1, false);
+    }
+
+    @Test
+    public void coalesced_writes_are_flushed_without_explicit_flush() throws Exception {
+        checkWrites(256, false);
+    }
+
+    @Test
+    public void coalesced_writes_are_flushed_by_write_and_flush() throws Exception {
+        checkWrites(100, true);
+    }
+
+    @Test
+    public void echoed_read_buffer_is_not_corrupted() throws Exception {
+        final NioTcpServer server = new NioTcpServer();
+
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                // the selector loop read buffer, which will be refilled before the staged write is flushed
+                session.write(message);
+            }
+        });
+
+        server.bind(0);
+
+        final int port = server.getServerSocketChannel().socket().getLocalPort();
+        final Socket client = new Socket("127.0.0.1", port);
+        final int size = 4 * 1024 * 1024;
+
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = client.getOutputStream();
+                    byte[] chunk = new byte[8192];
+
+                    for (int i = 0; i < size; i += chunk.length) {
+                        for (int j = 0; j < chunk.length; j++) {
+                            chunk[j] = (byte) ((i + j) % 251);
+                        }
+
+                        out.write(chunk);
+                    }
+
+                    out.flush();
+                } catch (Exception e) {
+                    // the reader will fail
+                }
+            }
+        };
+
+        writer.start();
+
+        InputStream in = new BufferedInputStream(client.getInputStream());
+
+        for (int i = 0; i < size; i++) {
+            assertEquals("byte " + i, i % 251, in.read());
+        }
+
+        writer.join(WAIT_TIME);
+        client.close();
+        server.unbind();
+    }
+
+    private void checkWrites(int threshold, final boolean flush) throws Exception {
+        final NioTcpServer server = new NioTcpServer();
+        final CountDownLatch sentLatch = new CountDownLatch(MESSAGE_COUNT);
+        final List<IoFuture<Void>> futures = new ArrayList<IoFuture<Void>>();
+        final AtomicInteger sentOrder = new AtomicInteger();
+        final AtomicInteger outOfOrder = new AtomicInteger();
+
+        server.getSessionConfig().setWriteCoalescingThreshold(threshold);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                // written by the selector loop of the session
+                for (int i = 0; i < MESSAGE_COUNT; i++) {
+                    ByteBuffer message = ByteBuffer.allocate(4);
+                    message.putInt(i).flip();
+
+                    if (flush) {
+                        session.writeAndFlush(message);
+                    } else {
+                        futures.add(session.writeWithFuture(message));
+                    }
+                }
+            }
+
+            @Override
+            public void messageSent(IoSession session, Object message) {
+                if (((ByteBuffer) message).getInt(0) != sentOrder.getAndIncrement()) {
+                    outOfOrder.incrementAndGet();
+                }
+
+                sentLatch.countDown();
+            }
+        });
+
+        server.bind(0);
+
+        final int port = server.getServerSocketChannel().socket().getLocalPort();
+        Socket client = new Socket("127.0.0.1", port);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            assertEquals(i, in.readInt());
+        }
+
+        assertTrue(sentLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(0, outOfOrder.get());
+
+        for (IoFuture<Void> future : futures) {
+            assertTrue(future.isDone());
+        }
+
+        client.close();
+        server.unbind();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoFuture;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.service.idlechecker.IdleChecker;
+import org.apache.mina.session.WriteTimeoutException;
+import org.junit.Test;
+
+/**
+ * Test the expiry of the queued write requests : a request which transmission has not started before its deadline is
+ * dropped (or its session is closed when secured), and a session which oldest queued request is too old is closed.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpWriteDeadlineTest {
+
+    /** a message big enough to fill the socket buffers */
+    private static final int BULK_SIZE = 16 * 1024 * 1024;
+
+    private static final int WAIT_TIME = 5000;
+
+    @Test
+    public void expired_write_is_dropped() throws Exception {
+        final NioTcpServer server = new NioTcpServer();
+        final CountDownLatch openLatch = new CountDownLatch(1);
+        final IoFuture<?>[] futures = new IoFuture<?>[2];
+
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                futures[0] = session.writeWithFuture(ByteBuffer.allocate(BULK_SIZE));
+                futures[1] = session.writeWithFuture(ByteBuffer.wrap(new byte[] { 1 }), 50, TimeUnit.MILLISECONDS);
+                openLatch.countDown();
+            }
+        });
+
+        server.bind(0);
+
+        final int port = server.getServerSocketChannel().socket().getLocalPort();
+        Socket client = new Socket("127.0.0.1", port);
+        assertTrue(openLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        // let the second message expire while the bulk message is stuck in the write queue
+        Thread.sleep(200);
+
+        InputStream in = client.getInputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int received = 0;
+
+        while (received < BULK_SIZE) {
+            received += in.read(buffer);
+        }
+
+        futures[0].get(WAIT_TIME, TimeUnit.MILLISECONDS);
+
+        try {
+            futures[1].get(WAIT_TIME, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof WriteTimeoutException);
+        }
+
+        // the expired message has not been sent
+        client.setSoTimeout(200);
+        assertEquals(BULK_SIZE, received);
+
+        try {
+            assertEquals(-1, in.read());
+        } catch (SocketTimeoutException e) {
+            // nothing more was sent
+        }
+
+        client.close();
+        server.unbind();
+    }
+
+    @Test
+    public void session_with_too_old_writes_is_closed() throws Exception {
+        final NioTcpServer server = new NioTcpServer();
+        final CountDownLatch closedLatch = new CountDownLatch(1);
+
+        server.getSessionConfig().setMaxWriteQueueAge(100);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                session.write(ByteBuffer.allocate(BULK_SIZE));
+            }
+
+            @Override
+            public void sessionClosed(IoSession session) {
+                closedLatch.countDown();
+            }
+        });
+
+        server.bind(0);
+
+        final int port = server.getServerSocketChannel().socket().getLocalPort();
+
+        // the client never reads
+        Socket client = new Socket("127.0.0.1", port);
+        assertTrue(closedLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        client.close();
+        server.unbind();
+    }
+
+    @Test
+    public void secured_session_with_expired_write_is_closed() throws Exception {
+        RecordingSocketChannel channel = new RecordingSocketChannel();
+        RecordingSelectorLoop selectorLoop = new RecordingSelectorLoop();
+        NioTcpServer server = new NioTcpServer(selectorLoop, null, null);
+        NioTcpSession session = new NioTcpSession(server, channel, selectorLoop, mock(IdleChecker.class));
+        session.setConnected();
+
+        // the handshake is not finished : the records are queued as they are
+        session.setAttribute(IoSession.SSL_HELPER, new SslHelper(session, null));
+
+        // the socket buffer is full
+        channel.setCapacity(0);
+        session.writeWithFuture(ByteBuffer.allocate(100), 50, TimeUnit.MILLISECONDS);
+        session.flush();
+        assertTrue(selectorLoop.isWriteInterest());
+
+        Thread.sleep(100);
+
+        // the expired record can't be skipped : nothing is written, and the session is closed
+        channel.setCapacity(Long.MAX_VALUE);
+        session.processWrite(selectorLoop);
+        assertEquals(0, channel.getWrittenBytes().length);
+        assertFalse(session.isClosing());
+
+        selectorLoop.runTasks();
+        assertTrue(session.isClosing());
+        assertFalse(channel.isOpen());
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ReceiveSizePredictor}
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ReceiveSizePredictorTest {
+
+    @Test
+    public void grow_on_full_read() {
+        ReceiveSizePredictor predictor = new ReceiveSizePredictor(64, 1024, 4096);
+        assertEquals(1024, predictor.nextReadSize());
+
+        predictor.record(1024);
+        assertEquals(2048, predictor.nextReadSize());
+
+        predictor.record(2048);
+        predictor.record(4096);
+        // bounded by the maximum
+        assertEquals(4096, predictor.nextReadSize());
+    }
+
+    @Test
+    public void shrink_after_two_small_reads() {
+        ReceiveSizePredictor predictor = new ReceiveSizePredictor(64, 1024, 4096);
+
+        predictor.record(20);
+        assertEquals(1024, predictor.nextReadSize());
+
+        predictor.record(20);
+        assertEquals(512, predictor.nextReadSize());
+
+        // a medium read resets the shrinking
+        predictor.record(20);
+        predictor.record(300);
+        predictor.record(20);
+        assertEquals(512, predictor.nextReadSize());
+
+        for (int i = 0; i < 20; i++) {
+            predictor.record(20);
+        }
+
+        // bounded by the minimum
+        assertEquals(64, predictor.nextReadSize());
+    }
+
+    @Test
+    public void statistics() {
+        ReceiveSizePredictor predictor = new ReceiveSizePredictor();
+        assertEquals(0, predictor.getAverageReadSize());
+
+        predictor.record(100);
+        predictor.record(300);
+        predictor.record(-1);
+        predictor.record(0);
+
+        assertEquals(2, predictor.getReadCount());
+        assertEquals(400, predictor.getReadBytes());
+        assertEquals(200, predictor.getAverageReadSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid_sizes() {
+        new ReceiveSizePredictor(1024, 64, 4096);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import java.nio.channels.SelectableChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.service.idlechecker.TimingWheel;
+
+/**
+ * A selector loop run by the test thread : the tasks are executed when the test asks for, and the registrations are
+ * only recorded.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+class RecordingSelectorLoop implements SelectorLoop {
+
+    private final IoBudget budget = new IoBudget();
+
+    private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    /** the interest in connection accepts of the last registration */
+    private boolean acceptInterest;
+
+    /** the interest in reads of the last registration */
+    private boolean readInterest;
+
+    /** the interest in writes of the last registration */
+    private boolean writeInterest;
+
+    /**
+     * Run the tasks submitted so far, and the ones they submit
+     */
+    void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    boolean isAcceptInterest() {
+        return acceptInterest;
+    }
+
+    boolean isReadInterest() {
+        return readInterest;
+    }
+
+    boolean isWriteInterest() {
+        return writeInterest;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void register(boolean accept, boolean connect, boolean read, boolean write, SelectorListener listener,
+            SelectableChannel channel, RegistrationCallback callback) {
+        acceptInterest = accept;
+        readInterest = read;
+        writeInterest = write;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void modifyRegistration(boolean accept, boolean read, boolean write, SelectorListener listener,
+            SelectableChannel channel, boolean wakeup) {
+        acceptInterest = accept;
+        readInterest = read;
+        writeInterest = write;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void unregister(SelectorListener listener, SelectableChannel channel) {
+        acceptInterest = false;
+        readInterest = false;
+        writeInterest = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void wakeup() {
+        // nothing to wake up
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Runnable task) {
+        task.run();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void executeLater(Runnable task) {
+        tasks.add(task);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+        tasks.add(task);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean inEventLoop() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IoBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addTimingWheel(TimingWheel timingWheel) {
+        // no idle events
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeTimingWheel(TimingWheel timingWheel) {
+        // no idle events
+    }
+}
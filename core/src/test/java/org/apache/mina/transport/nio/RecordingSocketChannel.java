@@ -0,0 +1,183 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A socket channel which is not connected to anything : it records the written bytes and the number of buffers
+ * passed to each write, and accepts a limited number of bytes, like a socket which send buffer gets full.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+class RecordingSocketChannel extends SocketChannel {
+
+    private final Socket socket = new Socket();
+
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    /** the number of buffers passed to each write call */
+    private final List<Integer> writes = new ArrayList<Integer>();
+
+    /** the number of bytes the channel still accepts */
+    private long capacity = Long.MAX_VALUE;
+
+    RecordingSocketChannel() {
+        super(SelectorProvider.provider());
+    }
+
+    /**
+     * Set the number of bytes the channel will accept, until the next call
+     */
+    void setCapacity(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the number of buffers passed to each write call
+     */
+    List<Integer> getWrites() {
+        return writes;
+    }
+
+    /**
+     * @return the bytes written so far
+     */
+    byte[] getWrittenBytes() {
+        return written.toByteArray();
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[] { src }, 0, 1);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        writes.add(length);
+        long count = 0;
+
+        for (int i = offset; (i < offset + length) && (capacity > 0); i++) {
+            while (srcs[i].hasRemaining() && (capacity > 0)) {
+                written.write(srcs[i].get());
+                capacity--;
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        return 0;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        return 0;
+    }
+
+    @Override
+    public Socket socket() {
+        return socket;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public boolean isConnectionPending() {
+        return false;
+    }
+
+    @Override
+    public boolean connect(SocketAddress remote) throws IOException {
+        return true;
+    }
+
+    @Override
+    public boolean finishConnect() throws IOException {
+        return true;
+    }
+
+    @Override
+    public SocketChannel bind(SocketAddress local) throws IOException {
+        return this;
+    }
+
+    @Override
+    public <T> SocketChannel setOption(SocketOption<T> name, T value) throws IOException {
+        return this;
+    }
+
+    @Override
+    public <T> T getOption(SocketOption<T> name) throws IOException {
+        return null;
+    }
+
+    @Override
+    public Set<SocketOption<?>> supportedOptions() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public SocketChannel shutdownInput() throws IOException {
+        return this;
+    }
+
+    @Override
+    public SocketChannel shutdownOutput() throws IOException {
+        return this;
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() throws IOException {
+        return null;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() throws IOException {
+        return null;
+    }
+
+    @Override
+    protected void implCloseSelectableChannel() throws IOException {
+        socket.close();
+    }
+
+    @Override
+    protected void implConfigureBlocking(boolean block) throws IOException {
+        // nothing to do
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import org.apache.mina.api.IdleStatus;
+import org.apache.mina.transport.tcp.DefaultTcpSessionConfig;
+import org.apache.mina.transport.tcp.TcpSessionConfig;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link TcpSessionConfigTemplate}
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TcpSessionConfigTemplateTest {
+
+    @Test
+    public void nothing_configured() {
+        TcpSessionConfig sessionConfig = mock(TcpSessionConfig.class);
+
+        new TcpSessionConfigTemplate(new DefaultTcpSessionConfig()).apply(sessionConfig);
+
+        verify(sessionConfig).setIdleTimeInMillis(IdleStatus.READ_IDLE, -1);
+        verify(sessionConfig).setIdleTimeInMillis(IdleStatus.WRITE_IDLE, -1);
+        verify(sessionConfig, never()).setKeepAlive(anyBoolean());
+        verify(sessionConfig, never()).setTcpNoDelay(anyBoolean());
+        verify(sessionConfig, never()).setSoLinger(anyInt());
+    }
+
+    @Test
+    public void default_values_are_skipped() {
+        DefaultTcpSessionConfig config = new DefaultTcpSessionConfig();
+        // a new socket has Nagle's algorithm enabled and no keep-alive
+        config.setTcpNoDelay(false);
+        config.setKeepAlive(true);
+        config.setIdleTimeInMillis(IdleStatus.READ_IDLE, 1000);
+
+        TcpSessionConfig sessionConfig = mock(TcpSessionConfig.class);
+
+        new TcpSessionConfigTemplate(config).apply(sessionConfig);
+
+        verify(sessionConfig).setIdleTimeInMillis(IdleStatus.READ_IDLE, 1000);
+        verify(sessionConfig).setKeepAlive(true);
+        verify(sessionConfig, never()).setTcpNoDelay(anyBoolean());
+    }
+
+    @Test
+    public void buffer_sizes_and_linger_are_always_applied() throws IOException {
+        Socket socket = new Socket();
+        DefaultTcpSessionConfig config = new DefaultTcpSessionConfig();
+
+        try {
+            // the values of a new socket
+            config.setReadBufferSize(socket.getReceiveBufferSize());
+            config.setSendBufferSize(socket.getSendBufferSize());
+            config.setSoLinger(socket.getSoLinger());
+        } finally {
+            socket.close();
+        }
+
+        TcpSessionConfig sessionConfig = new DefaultTcpSessionConfig();
+
+        new TcpSessionConfigTemplate(config).apply(sessionConfig);
+
+        assertEquals(config.getReadBufferSize(), sessionConfig.getReadBufferSize());
+        assertEquals(config.getSendBufferSize(), sessionConfig.getSendBufferSize());
+        assertEquals(config.getSoLinger(), sessionConfig.getSoLinger());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link Clock}
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ClockTest {
+
+    @After
+    public void tearDown() {
+        Clock.setHighResolution(false);
+    }
+
+    @Test
+    public void cached_time_is_updated() throws Throwable {
+        final Throwable[] failure = new Throwable[1];
+
+        // only a thread refreshing the clock reads the cached time
+        Thread refresher = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    long before = System.currentTimeMillis();
+                    Clock.startRefreshing();
+                    long cached = Clock.currentTimeMillis();
+                    assertTrue(cached >= before);
+
+                    Thread.sleep(20);
+                    assertEquals(cached, Clock.currentTimeMillis());
+
+                    long updated = Clock.update();
+                    assertTrue(updated >= cached + 20);
+                    assertEquals(updated, Clock.currentTimeMillis());
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        };
+
+        refresher.start();
+        refresher.join();
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    @Test
+    public void other_threads_read_the_system_clock() throws InterruptedException {
+        Clock.update();
+        long cached = Clock.currentTimeMillis();
+
+        Thread.sleep(20);
+        assertTrue(Clock.currentTimeMillis() >= cached + 20);
+    }
+
+    @Test
+    public void high_resolution() throws InterruptedException {
+        Clock.update();
+        Clock.setHighResolution(true);
+        long cached = Clock.currentTimeMillis();
+
+        Thread.sleep(20);
+        assertTrue(Clock.currentTimeMillis() >= cached + 20);
+    }
+}
@@ -28,6 +28,8 @@ import java.util.Locale;
 import java.util.TimeZone;
 import java.util.regex.Pattern;
 
+import org.apache.mina.util.Clock;
+
 /**
  * 
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
@@ -53,13 +55,40 @@ public class DateUtil {
     /** Pattern to find digits only. */
     private static final Pattern DIGIT_PATTERN = Pattern.compile("^\\d+$");
 
+    /** The current date, formatted once per second */
+    private static volatile CachedDate currentDate = new CachedDate(-1L, null);
+
     /**
      * Returns the current date as String
      *
      * @return Current Date as String, in the format <i>EEE, dd MMM yyyy HH:mm:ss zzz</i>
      */
     public static String getCurrentAsString() {
-        return RFC_1123_FORMAT.get().format(new Date());
+        long now = Clock.currentTimeMillis();
+        long second = now / 1000L;
+        CachedDate cached = currentDate;
+
+        if (cached.second != second) {
+            // HTTP dates have a one second resolution, format the date only once per second
+            cached = new CachedDate(second, RFC_1123_FORMAT.get().format(new Date(second * 1000L)));
+            currentDate = cached;
+        }
+
+        return cached.formattedDate;
+    }
+
+    /**
+     * A formatted date, and the second it represents
+     */
+    private static final class CachedDate {
+        private final long second;
+
+        private final String formattedDate;
+
+        private CachedDate(long second, String formattedDate) {
+            this.second = second;
+            this.formattedDate = formattedDate;
+        }
     }
 
     /**